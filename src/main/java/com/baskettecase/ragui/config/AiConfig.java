@@ -1,9 +1,13 @@
 package com.baskettecase.ragui.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.beans.factory.annotation.Value;
@@ -11,13 +15,16 @@ import java.util.Map;
 // Removed explicit OpenAI imports as we'll rely on auto-configuration
 
 /**
- * AiConfig configures beans for Spring AI integration, primarily the ChatClient.
+ * AiConfig configures beans for Spring AI integration: one ChatClient per pipeline stage
+ * (rewrite, expansion, answer), each with its own model and options.
  * ChatModel is expected to be auto-configured by Spring AI based on properties
  * or VCAP services if running in Cloud Foundry.
  */
 @Configuration
 public class AiConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(AiConfig.class);
+
     // These @Value annotations are primarily for local development clarity
     // or if you need to directly access these properties for other reasons.
     // Spring AI auto-configuration will use similar properties from application.properties
@@ -30,25 +37,69 @@ public class AiConfig {
     @Value("${spring.ai.openai.chat.options.model:gpt-3.5-turbo}")
     private String modelName; // Used by auto-configuration
 
+    /**
+     * ChatClient for answer generation (primary). Model, max-tokens and temperature are configurable
+     * via ragui.llm.answer.*; the model defaults to the auto-configured one.
+     */
     @Bean
-    public ChatClient chatClient(ChatModel chatModel) {
+    @Primary
+    public ChatClient chatClient(ChatModel chatModel,
+                                 @Value("${ragui.llm.answer.model:}") String model,
+                                 @Value("${ragui.llm.answer.max-tokens:4096}") int maxTokens,
+                                 @Value("${ragui.llm.answer.temperature:0.3}") double temperature) {
         // Spring AI auto-configures the ChatModel bean (e.g., OpenAiChatModel)
         // based on classpath dependencies and properties (application.properties or VCAP).
-        
+        // Max tokens accommodate thinking + answer; lower temperature for more focused responses
+        return buildChatClient(chatModel, "answer", model, maxTokens, temperature);
+    }
+
+    /**
+     * ChatClient for query cleaning / combined pre-processing. Point ragui.llm.rewrite.model at a
+     * small, fast (non-reasoning) model; these are trivial rewrites.
+     */
+    @Bean
+    public ChatClient rewriteChatClient(ChatModel chatModel,
+                                        @Value("${ragui.llm.rewrite.model:}") String model,
+                                        @Value("${ragui.llm.rewrite.max-tokens:4096}") int maxTokens,
+                                        @Value("${ragui.llm.rewrite.temperature:0.3}") double temperature) {
+        return buildChatClient(chatModel, "rewrite", model, maxTokens, temperature);
+    }
+
+    /**
+     * ChatClient for query expansion (alternative search queries).
+     */
+    @Bean
+    public ChatClient expansionChatClient(ChatModel chatModel,
+                                          @Value("${ragui.llm.expansion.model:}") String model,
+                                          @Value("${ragui.llm.expansion.max-tokens:4096}") int maxTokens,
+                                          @Value("${ragui.llm.expansion.temperature:0.3}") double temperature) {
+        return buildChatClient(chatModel, "expansion", model, maxTokens, temperature);
+    }
+
+    private ChatClient buildChatClient(ChatModel chatModel, String stage, String model, int maxTokens, double temperature) {
+        boolean defaultModel = model == null || model.isBlank();
+        logger.info("ChatClient for stage '{}' - model: {}, max-tokens: {}, temperature: {}",
+                   stage, defaultModel ? modelName + " (default)" : model, maxTokens, temperature);
+
         // If this is an OpenAI model, configure it to disable thinking mode
-        if (chatModel instanceof OpenAiChatModel openAiChatModel) {
-            // Create default options optimized for thinking + complete answers
-            OpenAiChatOptions defaultOptions = OpenAiChatOptions.builder()
-                .maxTokens(4096) // Increase max tokens significantly to accommodate thinking + answer
-                .temperature(0.3) // Lower temperature for more focused responses
-                .topP(0.9) // Focus probability mass
-                .build();
+        if (chatModel instanceof OpenAiChatModel) {
+            OpenAiChatOptions.Builder options = OpenAiChatOptions.builder()
+                .maxTokens(maxTokens)
+                .temperature(temperature)
+                .topP(0.9); // Focus probability mass
+            if (!defaultModel) options.model(model);
+            OpenAiChatOptions defaultOptions = options.build();
             
             return ChatClient.builder(chatModel)
                 .defaultOptions(defaultOptions)
                 .build();
         }
         
-        return ChatClient.builder(chatModel).build();
+        if (defaultModel) {
+            return ChatClient.builder(chatModel).build();
+        }
+        return ChatClient.builder(chatModel)
+            .defaultOptions(ChatOptions.builder().model(model).maxTokens(maxTokens).temperature(temperature).build())
+            .build();
     }
 }
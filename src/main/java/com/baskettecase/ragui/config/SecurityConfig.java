@@ -3,6 +3,8 @@ package com.baskettecase.ragui.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -27,6 +29,7 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/css/**", "/js/**", "/images/**", "/webjars/**").permitAll()
                         .requestMatchers("/*.css", "/*.js", "/*.png", "/*.jpg", "/*.ico").permitAll()
+                        .requestMatchers(HttpMethod.POST, "/api/debug/**").hasRole("USER") // Cache invalidate/toggle change server state
                         .requestMatchers("/api/**").permitAll() // Keep API endpoints accessible
                         .requestMatchers("/actuator/**").permitAll() // Keep actuator accessible
                         .requestMatchers("/embed-status").permitAll() // Allow embed status dashboard
@@ -35,6 +38,7 @@ public class SecurityConfig {
                     .loginPage("/login")
                     .defaultSuccessUrl("/", true) // Always redirect to root after login
                     .permitAll()) // Enable form login
+                .httpBasic(Customizer.withDefaults()) // For scripted calls to the protected debug endpoints
                 .csrf(csrf -> csrf.disable()) // Keep CSRF disabled for API calls
                 .logout(logout -> logout
                     .logoutSuccessUrl("/")
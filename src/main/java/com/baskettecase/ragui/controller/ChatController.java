@@ -3,10 +3,21 @@ package com.baskettecase.ragui.controller;
 import com.baskettecase.ragui.dto.ChatRequest;
 import com.baskettecase.ragui.dto.ChatResponse;
 import com.baskettecase.ragui.service.RagService;
+import com.baskettecase.ragui.service.RequestContext;
 import com.baskettecase.ragui.service.AppStatus;
+import com.baskettecase.ragui.service.LlmAdmissionGate;
+import com.baskettecase.ragui.service.LlmOverloadedException;
+import com.baskettecase.ragui.service.PipelineMetrics;
+import com.baskettecase.ragui.service.QueryRewriteCache;
+import com.baskettecase.ragui.service.RetrievalCache;
+import com.baskettecase.ragui.service.VectorSearchLimiter;
+import com.baskettecase.ragui.service.VectorStoreOverloadedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.ai.vectorstore.VectorStore;
@@ -16,6 +27,7 @@ import org.springframework.ai.document.Document;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api")
@@ -35,13 +47,38 @@ public class ChatController {
     @Autowired
     private VectorStore vectorStore;
 
+    @Autowired
+    private RetrievalCache retrievalCache;
+
+    @Autowired
+    private QueryRewriteCache queryRewriteCache;
+
+    @Autowired
+    private LlmAdmissionGate llmAdmissionGate;
+
+    @Autowired
+    private VectorSearchLimiter vectorSearchLimiter;
+
+    @Value("${ragui.request.deadline-seconds:180}")
+    private long deadlineSeconds;
+
     @PostMapping("/chat")
     public ResponseEntity<ChatResponse> chat(@RequestBody ChatRequest request) {
         logger.info("Received chat request: {}", request.getMessage());
         
         try {
-            ChatResponse response = ragService.chat(request, (status, progress) -> appStatus.setStatus(status));
+            llmAdmissionGate.checkAdmission(PipelineMetrics.LLM);
+            RequestContext context = new RequestContext(TimeUnit.SECONDS.toMillis(deadlineSeconds));
+            ChatResponse response = context.call(() -> ragService.chat(request, (status, progress) -> appStatus.setStatus(status)));
             return ResponseEntity.ok(response);
+        } catch (LlmOverloadedException e) {
+            logger.warn("Chat request rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ChatResponse.Builder()
+                    .answer("The service is busy, please retry in " + e.getRetryAfterSeconds() + " seconds.")
+                    .source("OVERLOADED")
+                    .build());
         } catch (Exception e) {
             logger.error("Error processing chat request", e);
             return ResponseEntity.status(500).body(
@@ -73,7 +110,7 @@ public class ChatController {
                 .topK(topK)
                 .build();
             
-            List<Document> docs = vectorStore.similaritySearch(searchRequest);
+            List<Document> docs = vectorSearchLimiter.execute(() -> vectorStore.similaritySearch(searchRequest));
             
             result.put("query", query);
             result.put("threshold", threshold);
@@ -91,6 +128,11 @@ public class ChatController {
             logger.info("DEBUG: Vector search returned {} documents", docs.size());
             return ResponseEntity.ok(result);
             
+        } catch (VectorStoreOverloadedException e) {
+            result.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(result);
         } catch (Exception e) {
             logger.error("DEBUG: Vector search failed", e);
             result.put("error", e.getMessage());
@@ -123,7 +165,7 @@ public class ChatController {
                     .topK(5)
                     .build();
                 
-                List<Document> docs = vectorStore.similaritySearch(searchRequest);
+                List<Document> docs = vectorSearchLimiter.execute(() -> vectorStore.similaritySearch(searchRequest));
                 
                 Map<String, Object> queryResult = new HashMap<>();
                 queryResult.put("documentsFound", docs.size());
@@ -142,4 +184,49 @@ public class ChatController {
         
         return ResponseEntity.ok(results);
     }
+
+    /**
+     * Debug endpoint to inspect the retrieval result cache
+     */
+    @GetMapping("/debug/retrieval-cache")
+    public ResponseEntity<Map<String, Object>> retrievalCacheStats() {
+        return ResponseEntity.ok(retrievalCache.getStats());
+    }
+
+    /**
+     * Drops all cached retrieval results, e.g. after new documents were ingested.
+     * Requires an authenticated user (see SecurityConfig).
+     */
+    @PostMapping("/debug/retrieval-cache/invalidate")
+    public ResponseEntity<Map<String, Object>> invalidateRetrievalCache() {
+        logger.info("DEBUG: Invalidating retrieval cache");
+        retrievalCache.invalidateAll();
+        Map<String, Object> result = new HashMap<>();
+        result.put("message", "Retrieval cache invalidated");
+        result.put("timestamp", java.time.Instant.now().toString());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Debug endpoint to inspect the query cleaning/expansion cache
+     */
+    @GetMapping("/debug/query-rewrite-cache")
+    public ResponseEntity<Map<String, Object>> queryRewriteCacheStats() {
+        return ResponseEntity.ok(queryRewriteCache.getStats());
+    }
+
+    /**
+     * Turns the query cleaning/expansion cache on or off; turning it off clears it.
+     * Use this when prompts or models are being changed. Requires an authenticated user (see SecurityConfig).
+     */
+    @PostMapping("/debug/query-rewrite-cache")
+    public ResponseEntity<Map<String, Object>> setQueryRewriteCache(@RequestBody Map<String, Boolean> body) {
+        if (!body.containsKey("enabled")) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Missing 'enabled' field");
+            return ResponseEntity.badRequest().body(error);
+        }
+        queryRewriteCache.setEnabled(body.get("enabled"));
+        return ResponseEntity.ok(queryRewriteCache.getStats());
+    }
 }
@@ -3,17 +3,33 @@ package com.baskettecase.ragui.controller;
 import com.baskettecase.ragui.dto.ChatRequest;
 import com.baskettecase.ragui.dto.ChatResponse;
 import com.baskettecase.ragui.model.Job;
+import com.baskettecase.ragui.service.JobCancellationMonitor;
 import com.baskettecase.ragui.service.JobService;
+import com.baskettecase.ragui.service.LlmAdmissionGate;
+import com.baskettecase.ragui.service.LlmOverloadedException;
+import com.baskettecase.ragui.service.PipelineExecutor;
+import com.baskettecase.ragui.service.PipelineMetrics;
 import com.baskettecase.ragui.service.RagService;
+import com.baskettecase.ragui.service.RequestCoalescer;
+import com.baskettecase.ragui.service.RequestContext;
+import com.baskettecase.ragui.service.StreamMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
+import java.util.Locale;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 @RestController
 @RequestMapping("/api")
@@ -22,7 +38,24 @@ public class JobController {
     private JobService jobService;
     @Autowired
     private RagService ragService;
-    private final ExecutorService executor = Executors.newCachedThreadPool();
+    @Autowired
+    private PipelineExecutor pipelineExecutor;
+    @Autowired
+    private StreamMetrics streamMetrics;
+    @Autowired
+    private LlmAdmissionGate llmAdmissionGate;
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+    @Autowired
+    private JobCancellationMonitor jobCancellationMonitor;
+    @Value("${ragui.jobs.heartbeat-seconds:5}")
+    private long heartbeatSeconds;
+    @Value("${ragui.request.deadline-seconds:180}")
+    private long deadlineSeconds;
+
+    // SSE writes run here, on a short-lived virtual thread per subscriber with pending output,
+    // so a slow client never blocks the thread appending chunks (or any other subscriber)
+    private final Executor sseWriter = Executors.newVirtualThreadPerTaskExecutor();
 
     @PostMapping("/job")
     public ResponseEntity<?> submitJob(@RequestBody ChatRequest request) {
@@ -47,68 +80,120 @@ public class JobController {
 
         // For streaming modes, proceed with async job creation
         Job job = jobService.createJob();
+        job.setMode(PipelineMetrics.mode(ragService.determineResponseMode(request)));
         // job.setStatus(Job.Status.QUEUED); // Status is set by Job constructor with an event
+
+        // Identical in-flight requests share one pipeline run; followers only receive its updates
+        RequestCoalescer.Flight flight = requestCoalescer.join(job.getMode(), request.getMessage(), job);
+        if (!flight.isLeader(job)) {
+            return ResponseEntity.ok(new JobIdResponse(job.getJobId()));
+        }
+
+        // Shed load up front when the answer stage cannot even queue another call. Only a leader
+        // costs an LLM call; if it is turned away, its flight is failed so no follower waits on it.
+        try {
+            llmAdmissionGate.checkAdmission(PipelineMetrics.LLM);
+        } catch (LlmOverloadedException e) {
+            String busyMsg = "The service is busy, please retry in " + e.getRetryAfterSeconds() + " seconds.";
+            flight.cancel(j -> {
+                j.setError(busyMsg);
+                j.setStatus(Job.Status.FAILED);
+                j.addStatusEvent(Job.Status.FAILED.name(), busyMsg, 100);
+            });
+            requestCoalescer.complete(flight, null);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ChatResponse.Builder()
+                    .answer(busyMsg)
+                    .source("OVERLOADED")
+                    .build());
+        }
+
+        // The request deadline starts now, so time spent queued for the executor counts against it
+        RequestContext context = new RequestContext(TimeUnit.SECONDS.toMillis(deadlineSeconds));
+
         // Async process
-        executor.submit(() -> {
-            job.setStatus(Job.Status.RUNNING);
+        pipelineExecutor.execute(() -> {
             org.slf4j.LoggerFactory.getLogger(JobController.class).debug("Job {} started", job.getJobId());
-            job.setStatus(Job.Status.RUNNING); // Initial status after queue
-            job.addStatusEvent(Job.Status.RUNNING.name(), "Processing started", 5);
+            flight.publish(j -> {
+                j.setStatus(Job.Status.RUNNING); // Initial status after queue
+                j.addStatusEvent(Job.Status.RUNNING.name(), "Processing started", 5);
+            });
             org.slf4j.LoggerFactory.getLogger(JobController.class).debug("Job {} processing started", job.getJobId());
             try {
-                RagService.RagStatusListener ragStatusListener = (statusMsg, progressVal) -> {
-                    boolean isError = statusMsg.startsWith("LLM stream error:") || statusMsg.startsWith("Stream processing error:") || statusMsg.startsWith("Error during streaming:");
-                    boolean isComplete = ("LLM stream complete".equals(statusMsg) || "COMPLETED".equals(statusMsg)) && progressVal == 100;
-
-                    if (isComplete) {
-                        job.setStatus(Job.Status.COMPLETED);
-                        job.setStatusMessage(statusMsg);
-                        job.setProgress(progressVal);
-                        job.addStatusEvent(Job.Status.COMPLETED.name(), statusMsg, progressVal);
-                        org.slf4j.LoggerFactory.getLogger(JobController.class).debug("Job {} stream completed, status set to COMPLETED by listener", job.getJobId());
-                    } else if (isError) {
-                        job.setError(statusMsg);
-                        job.setStatus(Job.Status.FAILED);
-                        job.setStatusMessage(statusMsg);
-                        job.setProgress(progressVal); // Usually 100 for errors
-                        job.addStatusEvent(Job.Status.FAILED.name(), statusMsg, progressVal);
-                        org.slf4j.LoggerFactory.getLogger(JobController.class).error("Job {} stream failed via listener: {}", job.getJobId(), statusMsg);
-                    } else {
-                        // For intermediate RUNNING statuses
-                        if (job.getStatus() != Job.Status.FAILED && job.getStatus() != Job.Status.COMPLETED) { // Don't override terminal states
-                           job.setStatus(Job.Status.RUNNING);
-                        }
-                        job.setStatusMessage(statusMsg);
-                        job.setProgress(progressVal);
-                        job.addStatusEvent(Job.Status.RUNNING.name(), statusMsg, progressVal);
-                    }
-                    // Small delay to help SSE polling, consider if essential
-                    // try { Thread.sleep(10); } catch (InterruptedException ignored) {}
-                };
-
-                java.util.function.Consumer<String> chunkConsumer = chunk -> {
-                    job.addStreamChunk(chunk);
-                };
-
-                ragService.chatStream(request, ragStatusListener, chunkConsumer);
-                // chatStream is non-blocking (returns Flux). The actual job completion is signaled by ragStatusListener.
-                // The executor thread for submitJob will complete after chatStream returns, 
-                // but the job itself continues until the stream finishes or errors out.
+                RagService.RagStatusListener ragStatusListener = (statusMsg, progressVal) ->
+                    flight.publish(j -> applyStatus(j, statusMsg, progressVal));
+
+                java.util.function.Consumer<String> chunkConsumer = chunk -> flight.publish(j -> {
+                    if (j.isFinished()) return;
+                    long sinceNanos = j.addStreamChunk(chunk);
+                    streamMetrics.recordChunk(j, sinceNanos);
+                });
+
+                // Cancelled (and the model call aborted) if every client disconnects for the grace period
+                jobCancellationMonitor.watch(flight, context);
+                context.run(() -> ragService.chatStream(request, ragStatusListener, chunkConsumer));
+                // chatStream blocks until the answer has been streamed. The actual job completion is signaled by ragStatusListener.
 
             } catch (Exception e) {
+                if (context.isCancelled()) {
+                    org.slf4j.LoggerFactory.getLogger(JobController.class).debug("Job {} stopped after cancellation: {}", job.getJobId(), e.getMessage());
+                    return;
+                }
                 // This catch is for synchronous errors during chatStream setup.
                 String errorMsg = "Failed to initiate stream: " + e.getMessage();
-                job.setError(errorMsg);
-                job.setStatus(Job.Status.FAILED);
-                job.addStatusEvent(Job.Status.FAILED.name(), errorMsg, 100);
+                flight.publish(j -> {
+                    j.setError(errorMsg);
+                    j.setStatus(Job.Status.FAILED);
+                    j.addStatusEvent(Job.Status.FAILED.name(), errorMsg, 100);
+                });
                 org.slf4j.LoggerFactory.getLogger(JobController.class).error("Job {} failed to initiate stream: {}", job.getJobId(), e.getMessage(), e);
+            } finally {
+                jobCancellationMonitor.unwatch(flight);
+                requestCoalescer.complete(flight, context);
             }
-            // jobService.updateJob(job); // Status updates and chunk additions are handled within Job methods using thread-safe collections.
-                                        // Final job state (COMPLETED/FAILED) is set by the listener.
+            // Status updates and chunk additions are handled within Job methods using thread-safe collections.
+            // Final job state (COMPLETED/FAILED) is set by the listener, CANCELLED by JobCancellationMonitor.
         });
         return ResponseEntity.ok(new JobIdResponse(job.getJobId()));
     }
 
+    /**
+     * Applies one pipeline status update to a job: terminal messages complete or fail it, anything
+     * else is a RUNNING progress event.
+     */
+    private void applyStatus(Job job, String statusMsg, int progressVal) {
+        if (job.getStatus() == Job.Status.CANCELLED) return; // late updates from an aborted pipeline
+        boolean isError = statusMsg.startsWith("LLM stream error:") || statusMsg.startsWith("Stream processing error:") || statusMsg.startsWith("Error during streaming:");
+        boolean isComplete = ("LLM stream complete".equals(statusMsg) || "COMPLETED".equals(statusMsg)) && progressVal == 100;
+
+        if (isComplete || isError) {
+            streamMetrics.recordCompletion(job); // before the terminal status so the SSE summary sees it
+        }
+        if (isComplete) {
+            job.setStatus(Job.Status.COMPLETED);
+            job.setStatusMessage(statusMsg);
+            job.setProgress(progressVal);
+            job.addStatusEvent(Job.Status.COMPLETED.name(), statusMsg, progressVal);
+            org.slf4j.LoggerFactory.getLogger(JobController.class).debug("Job {} stream completed, status set to COMPLETED by listener", job.getJobId());
+        } else if (isError) {
+            job.setError(statusMsg);
+            job.setStatus(Job.Status.FAILED);
+            job.setStatusMessage(statusMsg);
+            job.setProgress(progressVal); // Usually 100 for errors
+            job.addStatusEvent(Job.Status.FAILED.name(), statusMsg, progressVal);
+            org.slf4j.LoggerFactory.getLogger(JobController.class).error("Job {} stream failed via listener: {}", job.getJobId(), statusMsg);
+        } else {
+            // For intermediate RUNNING statuses
+            if (job.getStatus() != Job.Status.FAILED && job.getStatus() != Job.Status.COMPLETED) { // Don't override terminal states
+               job.setStatus(Job.Status.RUNNING);
+            }
+            job.setStatusMessage(statusMsg);
+            job.setProgress(progressVal);
+            job.addStatusEvent(Job.Status.RUNNING.name(), statusMsg, progressVal);
+        }
+    }
+
     @GetMapping(value = "/events/{jobId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamJob(@PathVariable String jobId) {
         org.slf4j.LoggerFactory.getLogger(JobController.class).debug("SSE connection opened for job {}", jobId);
@@ -123,132 +208,231 @@ public class JobController {
             return emitter;
         }
 
-        final long[] lastStatusSeq = {0L};
-        final long[] lastChunkSeq = {0L};
+        // Replay history and then push new status events and chunks as the job appends them.
+        // No thread is parked per connection: appends only signal the subscriber's writer.
+        SseSubscriber subscriber = new SseSubscriber(job, emitter, streamMetrics, TimeUnit.SECONDS.toNanos(heartbeatSeconds), sseWriter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        job.addListener(subscriber);
+        // Initial drain replays everything appended before the listener was registered
+        subscriber.signal();
+        return emitter;
+    }
+
+    /**
+     * Pushes one job's status events and stream chunks to one SSE emitter.
+     * Job updates only signal the subscriber; the sends run on the writer executor, one drain at a
+     * time, and signals that arrive during a drain are coalesced into one more pass. Sequence numbers
+     * track what has already been sent, so replay and live pushes never duplicate events. While the job is quiet, heartbeats send a
+     * keep-alive comment so a disconnected client is noticed (and unsubscribed) without waiting for
+     * the next chunk; the comment goes out through the same drain, never on the heartbeat thread.
+     */
+    static class SseSubscriber implements Job.JobListener {
+        private final Job job;
+        private final SseEmitter emitter;
+        private final StreamMetrics streamMetrics;
+        private final long keepAliveNanos;
+        private final Executor writer;
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+        // Not synchronized: a send blocked on a slow client would pin the writer's carrier thread
+        private final ReentrantLock sendLock = new ReentrantLock();
+        private volatile long lastSendNanos = System.nanoTime();
+        private volatile boolean keepAliveDue = false;
+        private long lastStatusSeq = 0L;
+        private long lastChunkSeq = 0L;
+        // Append-to-write delay of the chunks this subscriber delivered
+        private long deliveredChunks = 0L;
+        private long totalDeliveryNanos = 0L;
+        private long maxDeliveryNanos = 0L;
+        private volatile boolean closed = false;
 
-        // 1. Replay historical events. It's important to send them in order.
-        // First, status events, then chunk events, maintaining their original sequence relative to each other if possible,
-        // or at least replaying all of one type then all of another if Job model stores them separately.
-        // For simplicity here, replaying all status then all chunks.
+        SseSubscriber(Job job, SseEmitter emitter, StreamMetrics streamMetrics, long keepAliveNanos, Executor writer) {
+            this.job = job;
+            this.emitter = emitter;
+            this.streamMetrics = streamMetrics;
+            this.keepAliveNanos = keepAliveNanos;
+            this.writer = writer;
+        }
+
+        @Override
+        public void onJobUpdated(Job job) {
+            signal();
+        }
 
-        // Replay status events
-        for (Job.StatusEvent event : job.getAllEvents()) {
+        /** Schedules a drain on the writer. Never blocks, so it is safe on the producer thread. */
+        void signal() {
+            if (closed || pendingSignals.getAndIncrement() != 0) return; // a drain is already pending
             try {
-                StringBuilder json = new StringBuilder();
-                json.append("{\"status\":\"").append(event.status).append("\"");
-                if (event.statusMessage != null) {
-                    json.append(",\"statusMessage\":\"").append(escape(event.statusMessage)).append("\"");
-                }
-                json.append(",\"progress\":").append(event.progress);
-                json.append("}");
-                emitter.send(SseEmitter.event().data(json.toString()));
-                lastStatusSeq[0] = event.seq;
-            } catch (IOException e) {
-                org.slf4j.LoggerFactory.getLogger(JobController.class).warn("SSE status event replay failed for job {}: {}", jobId, e.getMessage());
-                // If replay fails, client might miss some history. Consider if emitter should be completed.
+                writer.execute(this::writeLoop);
+            } catch (RejectedExecutionException e) {
+                pendingSignals.set(0);
+                close();
             }
         }
-        // Replay chunk events
-        for (Job.StreamChunkEvent chunkEvent : job.getAllChunkEvents()) {
+
+        private void writeLoop() {
+            int missed = 1;
+            do {
+                try {
+                    drain();
+                } catch (RuntimeException e) {
+                    // Never leave a signal pending: the subscriber would silently stop receiving updates
+                    org.slf4j.LoggerFactory.getLogger(JobController.class).warn("SSE delivery failed for job {}, closing subscriber: {}", job.getJobId(), e.getMessage());
+                    close();
+                    try { emitter.completeWithError(e); } catch (Exception ignored) {}
+                }
+                missed = pendingSignals.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Called on the shared heartbeat thread. Only flags the keep-alive and signals, so one slow
+         * client cannot hold up the heartbeats of every other subscriber; the next drain sends it.
+         */
+        @Override
+        public void onHeartbeat(Job job) {
+            if (closed || System.nanoTime() - lastSendNanos < keepAliveNanos) return;
+            keepAliveDue = true;
+            signal();
+        }
+
+        private void drain() {
+            sendLock.lock();
             try {
-                emitter.send(SseEmitter.event().data(chunkEvent.chunk)); // Send raw chunk
-                lastChunkSeq[0] = chunkEvent.seq;
-            } catch (IOException e) {
-                org.slf4j.LoggerFactory.getLogger(JobController.class).warn("SSE chunk event replay failed for job {}: {}", jobId, e.getMessage());
+                drainLocked();
+            } finally {
+                sendLock.unlock();
             }
         }
 
-        // 2. Start background thread to stream new events and chunks
-        executor.submit((Runnable) () -> { // Explicit cast to Runnable
+        private void drainLocked() {
+            if (closed) return;
+            String jobId = job.getJobId();
+            // Read before the events: a job that finishes during this pass has appended events this
+            // pass may miss, so it is only ended by the pass its final signal schedules
+            Job.Status currentStatus = job.getStatus();
+            boolean finished = currentStatus == Job.Status.COMPLETED || currentStatus == Job.Status.FAILED
+                || currentStatus == Job.Status.CANCELLED;
+            boolean keepAlive = keepAliveDue;
+            keepAliveDue = false;
+            boolean sent = false;
             try {
-                while (true) {
-                    Job currentJobState = jobService.getJob(jobId); // Get fresh job state
-                    if (currentJobState == null) {
-                        org.slf4j.LoggerFactory.getLogger(JobController.class).warn("Job {} disappeared during SSE streaming.", jobId);
-                        if (!emitter.toString().contains("completed")) emitter.completeWithError(new IllegalStateException("Job disappeared"));
-                        break;
-                    }
-
-                    // Send new status events
-                    var newStatusEvents = currentJobState.getEventsSince(lastStatusSeq[0]);
-                    for (Job.StatusEvent event : newStatusEvents) {
-                        try {
-                            StringBuilder json = new StringBuilder();
-                            json.append("{\"status\":\"").append(event.status).append("\"");
-                            if (event.statusMessage != null) {
-                                json.append(",\"statusMessage\":\"").append(escape(event.statusMessage)).append("\"");
-                            }
-                            json.append(",\"progress\":").append(event.progress);
-                            json.append("}");
-                            emitter.send(SseEmitter.event().data(json.toString()));
-                            lastStatusSeq[0] = event.seq;
-                        } catch (IOException e) {
-                            org.slf4j.LoggerFactory.getLogger(JobController.class).warn("IOException sending status event for job {}: {}", jobId, e.getMessage());
-                            // Optional: if (e.getMessage().contains("Broken pipe")) { emitter.complete(); break; }
-                        }
-                    }
-
-                    // Send new chunk events
-                    var newChunkEvents = currentJobState.getChunkEventsSince(lastChunkSeq[0]);
-                    for (Job.StreamChunkEvent chunkEvent : newChunkEvents) {
-                        try {
-                            emitter.send(SseEmitter.event().data(chunkEvent.chunk)); // Send raw chunk
-                            lastChunkSeq[0] = chunkEvent.seq;
-                        } catch (IOException e) {
-                             org.slf4j.LoggerFactory.getLogger(JobController.class).warn("IOException sending chunk event for job {}: {}", jobId, e.getMessage());
-                             // Optional: if (e.getMessage().contains("Broken pipe")) { emitter.complete(); break; }
-                        }
-                    }
-
-                    // Check job status for completion or failure
-                    Job.Status currentStatus = currentJobState.getStatus();
-                    if (currentStatus == Job.Status.COMPLETED || currentStatus == Job.Status.FAILED) {
-                        String finalMessage = currentJobState.getStatusMessage();
-                        if (currentStatus == Job.Status.COMPLETED && (finalMessage == null || finalMessage.trim().isEmpty())) finalMessage = "Job completed successfully";
-                        if (currentStatus == Job.Status.FAILED && (finalMessage == null || finalMessage.trim().isEmpty())) finalMessage = currentJobState.getError() != null ? currentJobState.getError() : "Job processing failed";
-                        
-                        int finalProgress = currentJobState.getProgress();
-                        if (finalProgress < 100 && (currentStatus == Job.Status.COMPLETED || currentStatus == Job.Status.FAILED)) {
-                            finalProgress = 100;
-                        }
-
-                        StringBuilder finalJson = new StringBuilder();
-                        finalJson.append("{\"status\":\"").append(currentStatus.name()).append("\"");
-                        finalJson.append(",\"statusMessage\":\"").append(escape(finalMessage)).append("\"");
-                        finalJson.append(",\"progress\":").append(finalProgress);
-                        if (currentStatus == Job.Status.FAILED) {
-                            finalJson.append(",\"error\":\"").append(escape(currentJobState.getError() != null ? currentJobState.getError() : "Unknown error")).append("\"");
-                        }
-                        finalJson.append("}");
-                        
-                        try {
-                            if (!emitter.toString().contains("completed")) emitter.send(SseEmitter.event().data(finalJson.toString()));
-                            org.slf4j.LoggerFactory.getLogger(JobController.class).debug("Sent final {} JSON status for job {}", currentStatus.name(), jobId);
-                        } catch (IOException e) {
-                            org.slf4j.LoggerFactory.getLogger(JobController.class).warn("Failed to send final {} JSON status for job {}: {}", currentStatus.name(), jobId, e.getMessage());
-                        }
-                        
-                        if (!emitter.toString().contains("completed")) emitter.complete();
-                        org.slf4j.LoggerFactory.getLogger(JobController.class).debug("SSE stream for job {} ended with status {}", jobId, currentStatus.name());
-                        break; // Exit while loop
-                    }
-                    Thread.sleep(100); // Poll frequency
-                } // end while
-            } catch (InterruptedException e) {
-                org.slf4j.LoggerFactory.getLogger(JobController.class).info("SSE polling thread interrupted for job {}", jobId);
-                Thread.currentThread().interrupt(); // Preserve interrupt status
-                if (!emitter.toString().contains("completed")) emitter.completeWithError(e);
-            } catch (Exception e) {
-                org.slf4j.LoggerFactory.getLogger(JobController.class).error("Exception in SSE polling loop for job {}: {}", jobId, e.getMessage(), e);
+                // Send new status events first, then chunks
+                for (Job.StatusEvent event : job.getEventsSince(lastStatusSeq)) {
+                    emitter.send(SseEmitter.event().data(statusJson(event)));
+                    lastStatusSeq = event.seq;
+                    sent = true;
+                }
+                for (Job.StreamChunkEvent chunkEvent : job.getChunkEventsSince(lastChunkSeq)) {
+                    emitter.send(SseEmitter.event().data(chunkEvent.chunk)); // Send raw chunk
+                    lastChunkSeq = chunkEvent.seq;
+                    sent = true;
+                    long delayNanos = System.nanoTime() - chunkEvent.nanos;
+                    streamMetrics.recordDelivery(job.getMode(), delayNanos);
+                    deliveredChunks++;
+                    totalDeliveryNanos += delayNanos;
+                    maxDeliveryNanos = Math.max(maxDeliveryNanos, delayNanos);
+                }
+                // Any event already proves the connection; the keep-alive is only for a quiet job
+                if (keepAlive && !sent && !finished) {
+                    emitter.send(SseEmitter.event().comment("keepalive"));
+                    sent = true;
+                }
+                if (sent) lastSendNanos = System.nanoTime();
+            } catch (IOException | IllegalStateException e) {
+                // Client went away (or emitter already completed); stop pushing to it
+                org.slf4j.LoggerFactory.getLogger(JobController.class).warn("SSE send failed for job {}, closing subscriber: {}", jobId, e.getMessage());
+                close();
+                try { emitter.completeWithError(e); } catch (Exception ignored) {}
+                return;
+            }
+
+            // End the stream once the job had completed, failed or been cancelled before this pass
+            if (finished) {
                 try {
-                    if (!emitter.toString().contains("completed")) emitter.send(SseEmitter.event().data("{\"error\":\"SSE streaming error: " + escape(e.getMessage()) + "\"}"));
-                } catch (IOException ioe) {
-                    org.slf4j.LoggerFactory.getLogger(JobController.class).warn("IOException while trying to send error event on SSE for job {}: {}", jobId, ioe.getMessage());
+                    emitter.send(SseEmitter.event().data(terminalJson(job, currentStatus, summaryJson())));
+                    org.slf4j.LoggerFactory.getLogger(JobController.class).debug("Sent final {} JSON status for job {}", currentStatus.name(), jobId);
+                } catch (IOException | IllegalStateException e) {
+                    org.slf4j.LoggerFactory.getLogger(JobController.class).warn("Failed to send final {} JSON status for job {}: {}", currentStatus.name(), jobId, e.getMessage());
                 }
-                if (!emitter.toString().contains("completed")) emitter.completeWithError(e);
+                close();
+                try { emitter.complete(); } catch (Exception ignored) {}
+                org.slf4j.LoggerFactory.getLogger(JobController.class).debug("SSE stream for job {} ended with status {}", jobId, currentStatus.name());
             }
-        }); // end executor.submit lambda
-        return emitter;
+        }
+
+        void close() {
+            closed = true;
+            job.removeListener(this);
+        }
+
+        /** Streaming timings for the terminal event: generation from the job, delivery from this subscriber. */
+        private String summaryJson() {
+            StringBuilder json = new StringBuilder("{");
+            json.append("\"mode\":\"").append(escape(job.getMode())).append("\"");
+            json.append(",\"chunks\":").append(job.getChunkCount());
+            if (job.getFirstChunkNanos() != 0L) {
+                json.append(",\"ttftMs\":").append(millis(job.getFirstChunkNanos() - job.getCreatedNanos()));
+                long gaps = job.getChunkCount() - 1;
+                if (gaps > 0) {
+                    json.append(",\"avgChunkGapMs\":").append(millis((job.getLastChunkNanos() - job.getFirstChunkNanos()) / gaps));
+                    json.append(",\"maxChunkGapMs\":").append(millis(job.getMaxChunkGapNanos()));
+                }
+            }
+            if (job.getStreamTokens() >= 0) {
+                json.append(",\"tokens\":").append(job.getStreamTokens());
+                json.append(",\"tokensPerSecond\":").append(String.format(Locale.ROOT, "%.1f", StreamMetrics.tokensPerSecond(job)));
+            }
+            if (deliveredChunks > 0) {
+                json.append(",\"avgDeliveryDelayMs\":").append(millis(totalDeliveryNanos / deliveredChunks));
+                json.append(",\"maxDeliveryDelayMs\":").append(millis(maxDeliveryNanos));
+            }
+            return json.append("}").toString();
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static String statusJson(Job.StatusEvent event) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"status\":\"").append(event.status).append("\"");
+        if (event.statusMessage != null) {
+            json.append(",\"statusMessage\":\"").append(escape(event.statusMessage)).append("\"");
+        }
+        json.append(",\"progress\":").append(event.progress);
+        json.append("}");
+        return json.toString();
+    }
+
+    private static String terminalJson(Job job, Job.Status currentStatus, String summaryJson) {
+        String finalMessage = job.getStatusMessage();
+        if (currentStatus == Job.Status.COMPLETED && (finalMessage == null || finalMessage.trim().isEmpty())) finalMessage = "Job completed successfully";
+        if (currentStatus == Job.Status.FAILED && (finalMessage == null || finalMessage.trim().isEmpty())) finalMessage = job.getError() != null ? job.getError() : "Job processing failed";
+        if (currentStatus == Job.Status.CANCELLED && (finalMessage == null || finalMessage.trim().isEmpty())) finalMessage = "Job cancelled";
+
+        int finalProgress = Math.max(job.getProgress(), 100);
+
+        StringBuilder finalJson = new StringBuilder();
+        finalJson.append("{\"status\":\"").append(currentStatus.name()).append("\"");
+        finalJson.append(",\"statusMessage\":\"").append(escape(finalMessage)).append("\"");
+        finalJson.append(",\"progress\":").append(finalProgress);
+        if (currentStatus == Job.Status.FAILED) {
+            finalJson.append(",\"error\":\"").append(escape(job.getError() != null ? job.getError() : "Unknown error")).append("\"");
+        }
+        finalJson.append(",\"summary\":").append(summaryJson);
+        finalJson.append("}");
+        return finalJson.toString();
+    }
+
+    /**
+     * Job store statistics (live jobs, retained bytes, evictions).
+     */
+    @GetMapping("/jobs/stats")
+    public ResponseEntity<java.util.Map<String, Object>> jobStats() {
+        return ResponseEntity.ok(jobService.getStats());
     }
 
     private static String escape(String s) {
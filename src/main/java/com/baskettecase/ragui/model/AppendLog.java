@@ -0,0 +1,72 @@
+package com.baskettecase.ragui.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Append-only log addressed by 1-based sequence number.
+ *
+ * Entries are stored in fixed-size segments, so an append never copies existing entries
+ * (only the small segment directory is occasionally doubled) and lookup by sequence number is O(1).
+ * Appends are serialized; readers take no locks and always see a consistent prefix because the
+ * entry is written before the volatile size is published.
+ */
+public class AppendLog<T> {
+    private static final int SEGMENT_SHIFT = 7; // 128 entries per segment
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private volatile Object[][] segments = new Object[4][];
+    private volatile int size = 0;
+
+    /**
+     * Appends the entry built by the factory, which receives the sequence number assigned to it.
+     * @return the sequence number of the new entry
+     */
+    public synchronized long append(LongFunction<T> factory) {
+        int index = size;
+        int segmentIndex = index >>> SEGMENT_SHIFT;
+        Object[][] directory = segments;
+        if (segmentIndex >= directory.length) {
+            directory = Arrays.copyOf(directory, directory.length * 2);
+        }
+        if (directory[segmentIndex] == null) {
+            directory[segmentIndex] = new Object[SEGMENT_SIZE];
+        }
+        long seq = index + 1L;
+        directory[segmentIndex][index & SEGMENT_MASK] = factory.apply(seq);
+        segments = directory;
+        size = index + 1; // publish after the entry is in place
+        return seq;
+    }
+
+    /** Sequence number of the latest entry, or 0 if the log is empty. */
+    public long lastSeq() {
+        return size;
+    }
+
+    /** Entry with the given sequence number, or null if it has not been appended yet. */
+    @SuppressWarnings("unchecked")
+    public T get(long seq) {
+        int end = size;
+        if (seq < 1 || seq > end) return null;
+        int index = (int) (seq - 1);
+        return (T) segments[index >>> SEGMENT_SHIFT][index & SEGMENT_MASK];
+    }
+
+    /** Snapshot of all entries with a sequence number greater than afterSeq, in order. */
+    @SuppressWarnings("unchecked")
+    public List<T> since(long afterSeq) {
+        int end = size; // read size before the directory so every index below it is visible
+        int start = (int) Math.max(0L, Math.min(afterSeq, end));
+        if (start >= end) return List.of();
+        Object[][] directory = segments;
+        List<T> result = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            result.add((T) directory[i >>> SEGMENT_SHIFT][i & SEGMENT_MASK]);
+        }
+        return result;
+    }
+}
@@ -1,12 +1,18 @@
 package com.baskettecase.ragui.model;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class Job {
-    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+    private static final Logger logger = LoggerFactory.getLogger(Job.class);
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
     private final String jobId;
     private final AtomicReference<Status> status = new AtomicReference<>(Status.QUEUED);
     private volatile String result;
@@ -14,7 +20,23 @@ public class Job {
     private volatile String statusMessage;
     private volatile int progress;
 
-    // FIFO event buffer for status events
+    // Bookkeeping for JobService eviction (TTL, LRU and retained-bytes budget)
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long lastAccessedAt = createdAt;
+    private volatile long finishedAt = 0L;
+    private final AtomicLong retainedChunkBytes = new AtomicLong();
+
+    // Streaming timings (System.nanoTime); chunks are appended by a single producer thread
+    private final long createdNanos = System.nanoTime();
+    private volatile String mode;
+    private volatile long firstChunkNanos = 0L;
+    private volatile long lastChunkNanos = 0L;
+    private volatile long maxChunkGapNanos = 0L;
+    private volatile int streamTokens = -1;
+    // When the last SSE subscriber left (creation time until the first one connects), 0 while subscribed
+    private volatile long unsubscribedSinceNanos = createdNanos;
+
+    // Append-only, seq-indexed log of status events
     public static class StatusEvent {
         public final long seq;
         public final String status;
@@ -29,53 +51,145 @@ public class Job {
             this.timestamp = timestamp;
         }
     }
-    private final List<StatusEvent> eventBuffer = new CopyOnWriteArrayList<>();
-    private volatile long eventSeq = 0;
+    private final AppendLog<StatusEvent> eventLog = new AppendLog<>();
 
-    // FIFO event buffer for stream chunks
+    // Append-only, seq-indexed log of stream chunks
     public static class StreamChunkEvent {
         public final long seq;
         public final String chunk;
         public final long timestamp;
-        public StreamChunkEvent(long seq, String chunk, long timestamp) {
+        public final long nanos; // System.nanoTime() at append, for delivery delay
+        public StreamChunkEvent(long seq, String chunk, long timestamp, long nanos) {
             this.seq = seq;
             this.chunk = chunk;
             this.timestamp = timestamp;
+            this.nanos = nanos;
+        }
+    }
+    private final AppendLog<StreamChunkEvent> chunkLog = new AppendLog<>();
+
+    /**
+     * Notified on the appending thread whenever a status event or stream chunk is added,
+     * so SSE subscribers can push new events without polling.
+     */
+    public interface JobListener {
+        void onJobUpdated(Job job);
+        /**
+         * Periodic tick while the job runs, e.g. to detect a disconnected client with a keep-alive.
+         * Called on a thread shared by all jobs, so it must not block.
+         */
+        default void onHeartbeat(Job job) {}
+    }
+    private final List<JobListener> listeners = new CopyOnWriteArrayList<>();
+
+    public synchronized void addListener(JobListener listener) {
+        listeners.add(listener);
+        unsubscribedSinceNanos = 0L;
+    }
+    public synchronized void removeListener(JobListener listener) {
+        if (listeners.remove(listener) && listeners.isEmpty()) unsubscribedSinceNanos = System.nanoTime();
+    }
+    /** How long the job has had no subscriber, or 0 while one is connected. */
+    public long getUnsubscribedNanos() {
+        long since = unsubscribedSinceNanos;
+        return since == 0L ? 0L : System.nanoTime() - since;
+    }
+    public void heartbeat() {
+        for (JobListener listener : listeners) {
+            try {
+                listener.onHeartbeat(this);
+            } catch (Exception e) {
+                logger.warn("Job {} heartbeat failed: {}", jobId, e.getMessage());
+            }
+        }
+    }
+    private void notifyListeners() {
+        for (JobListener listener : listeners) {
+            try {
+                listener.onJobUpdated(this);
+            } catch (Exception e) {
+                // A misbehaving subscriber must never break the producer
+                logger.warn("Job {} listener failed: {}", jobId, e.getMessage());
+            }
         }
     }
-    private final List<StreamChunkEvent> chunkBuffer = new CopyOnWriteArrayList<>();
-    private volatile long chunkEventSeq = 0;
 
     public void addStatusEvent(String status, String statusMessage, int progress) {
-        eventBuffer.add(new StatusEvent(++eventSeq, status, statusMessage, progress, System.currentTimeMillis()));
+        long timestamp = System.currentTimeMillis();
+        eventLog.append(seq -> new StatusEvent(seq, status, statusMessage, progress, timestamp));
+        notifyListeners();
     }
     public List<StatusEvent> getAllEvents() {
-        return eventBuffer;
+        return eventLog.since(0);
     }
     public List<StatusEvent> getEventsSince(long lastSeq) {
-        return eventBuffer.stream().filter(e -> e.seq > lastSeq).toList();
+        return eventLog.since(lastSeq);
     }
 
-    public void addStreamChunk(String chunk) {
-        chunkBuffer.add(new StreamChunkEvent(++chunkEventSeq, chunk, System.currentTimeMillis()));
+    /**
+     * Appends a stream chunk and notifies subscribers.
+     * @return nanoseconds since the previous chunk, or since the job was created for the first chunk
+     */
+    public long addStreamChunk(String chunk) {
+        long timestamp = System.currentTimeMillis();
+        long nanos = System.nanoTime();
+        long previous = lastChunkNanos;
+        long sinceNanos = nanos - (previous == 0L ? createdNanos : previous);
+        if (previous == 0L) {
+            firstChunkNanos = nanos;
+        } else if (sinceNanos > maxChunkGapNanos) {
+            maxChunkGapNanos = sinceNanos;
+        }
+        lastChunkNanos = nanos;
+        chunkLog.append(seq -> new StreamChunkEvent(seq, chunk, timestamp, nanos));
+        if (chunk != null) retainedChunkBytes.addAndGet((long) chunk.length() * Character.BYTES);
+        notifyListeners();
+        return sinceNanos;
     }
     public List<StreamChunkEvent> getAllChunkEvents() {
-        return chunkBuffer;
+        return chunkLog.since(0);
     }
     public List<StreamChunkEvent> getChunkEventsSince(long lastChunkSeq) {
-        return chunkBuffer.stream().filter(c -> c.seq > lastChunkSeq).toList();
+        return chunkLog.since(lastChunkSeq);
     }
 
     public Job(String jobId) {
         this.jobId = jobId;
         this.statusMessage = null;
         this.progress = 0;
-        // Add initial status event
-        addStatusEvent(Status.QUEUED.name(), null, 0);
+        // Add initial status event; nobody can be listening yet
+        long timestamp = System.currentTimeMillis();
+        eventLog.append(seq -> new StatusEvent(seq, Status.QUEUED.name(), null, 0, timestamp));
     }
     public String getJobId() { return jobId; }
     public Status getStatus() { return status.get(); }
-    public void setStatus(Status status) { this.status.set(status); }
+    public void setStatus(Status status) {
+        this.status.set(status);
+        if (isFinished() && finishedAt == 0L) finishedAt = System.currentTimeMillis();
+    }
+    public boolean isFinished() {
+        Status current = status.get();
+        return current == Status.COMPLETED || current == Status.FAILED || current == Status.CANCELLED;
+    }
+    public long getCreatedAt() { return createdAt; }
+    public long getLastAccessedAt() { return lastAccessedAt; }
+    public void touch() { this.lastAccessedAt = System.currentTimeMillis(); }
+    /** Time the job reached COMPLETED/FAILED/CANCELLED, or 0 while it is still active. */
+    public long getFinishedAt() { return finishedAt; }
+    /** Response mode tag (raw_rag, rag_with_fallback, rag_only, pure_llm). */
+    public String getMode() { return mode; }
+    public void setMode(String mode) { this.mode = mode; }
+    public long getCreatedNanos() { return createdNanos; }
+    /** System.nanoTime() of the first/last stream chunk, or 0 before the first chunk. */
+    public long getFirstChunkNanos() { return firstChunkNanos; }
+    public long getLastChunkNanos() { return lastChunkNanos; }
+    public long getMaxChunkGapNanos() { return maxChunkGapNanos; }
+    public long getChunkCount() { return chunkLog.lastSeq(); }
+    /** Tokens streamed, counted once when the job finishes; -1 until then. */
+    public int getStreamTokens() { return streamTokens; }
+    public void setStreamTokens(int streamTokens) { this.streamTokens = streamTokens; }
+    /** Approximate heap held by this job's chunk text (UTF-16 chars). */
+    public long getRetainedChunkBytes() { return retainedChunkBytes.get(); }
     public String getResult() { return result; }
     public void setResult(String result) { this.result = result; }
     public String getError() { return error; }
@@ -0,0 +1,156 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-request max-tokens for answer generation, passed to the LLM as per-call options.
+ *
+ * The budget is the smallest of: the mode's response limit (short for RAG Only summaries), the
+ * room left in {@code ragui.token.max-total-tokens} after the actual prompt, and, when the user
+ * asked for a length ("in 20 words"), an estimate for that length plus a reserve for reasoning
+ * tokens. It is never raised above the room the prompt leaves, and a prompt that leaves no room
+ * fails the call rather than asking the provider for tokens the context window cannot hold. Budget
+ * and actual output tokens are recorded per mode.
+ */
+@Component
+public class AnswerTokenBudget {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnswerTokenBudget.class);
+    private static final int PROMPT_OVERHEAD_TOKENS = 200; // chat formatting, same as validateAndAdjustPrompt
+    private static final int ANSWER_SUFFIX_TOKENS = 64;    // mode label appended to every answer
+    private static final int MIN_BUDGET = 64;
+    private static final Pattern CONSTRAINT = Pattern.compile(
+        "(\\d{1,6}|single|one|two|three|four|five|six|seven|eight|nine|ten|fifteen|twenty|fifty|hundred)\\s*[- ]?\\s*(word|sentence|paragraph|line|bullet|point|character)",
+        Pattern.CASE_INSENSITIVE);
+    private static final Map<String, Integer> NUMBER_WORDS = Map.ofEntries(
+        Map.entry("single", 1), Map.entry("one", 1), Map.entry("two", 2), Map.entry("three", 3), Map.entry("four", 4), Map.entry("five", 5),
+        Map.entry("six", 6), Map.entry("seven", 7), Map.entry("eight", 8), Map.entry("nine", 9), Map.entry("ten", 10),
+        Map.entry("fifteen", 15), Map.entry("twenty", 20), Map.entry("fifty", 50), Map.entry("hundred", 100));
+    // Rough tokens per requested unit
+    private static final Map<String, Double> TOKENS_PER_UNIT = Map.of(
+        "word", 1.5, "sentence", 40.0, "paragraph", 160.0, "line", 30.0, "bullet", 30.0, "point", 30.0, "character", 0.3);
+
+    private final TokenCounter tokenCounter;
+    private final MeterRegistry meterRegistry;
+    private final int maxTotalTokens;
+    private final int answerMaxTokens;
+    private final int maxResponseTokens;
+    private final int summaryMaxResponseTokens;
+    private final int reasoningReserve;
+    private final String model;
+    private final double temperature;
+
+    public AnswerTokenBudget(TokenCounter tokenCounter, MeterRegistry meterRegistry,
+                             @Value("${ragui.token.max-total-tokens:8000}") int maxTotalTokens,
+                             @Value("${ragui.token.max-response-tokens:2000}") int maxResponseTokens,
+                             @Value("${ragui.token.summary-max-response-tokens:2048}") int summaryMaxResponseTokens,
+                             @Value("${ragui.token.reasoning-reserve:512}") int reasoningReserve,
+                             @Value("${ragui.llm.answer.max-tokens:4096}") int answerMaxTokens,
+                             @Value("${ragui.llm.answer.model:}") String model,
+                             @Value("${ragui.llm.answer.temperature:0.3}") double temperature) {
+        this.tokenCounter = tokenCounter;
+        this.meterRegistry = meterRegistry;
+        this.maxTotalTokens = maxTotalTokens;
+        this.answerMaxTokens = answerMaxTokens;
+        // Never exceed the answer client's configured ceiling
+        this.maxResponseTokens = Math.min(maxResponseTokens, answerMaxTokens);
+        this.summaryMaxResponseTokens = Math.min(summaryMaxResponseTokens, this.maxResponseTokens);
+        this.reasoningReserve = reasoningReserve;
+        this.model = model;
+        this.temperature = temperature;
+    }
+
+    /**
+     * Max output tokens for one answer call.
+     * @param modeTag "Pure", "RAG+Fallback" or "RAG Only"
+     * @param lengthConstraint extracted constraint such as "in 20 words", or null
+     */
+    public int budgetFor(String modeTag, String lengthConstraint, String systemPrompt, String userPrompt) {
+        int budget = "RAG Only".equals(modeTag) ? summaryMaxResponseTokens : maxResponseTokens;
+        int remaining = promptRoom(systemPrompt, userPrompt);
+        Integer constrained = constraintTokens(lengthConstraint);
+        if (constrained != null) {
+            budget = Math.min(budget, constrained + ANSWER_SUFFIX_TOKENS + reasoningReserve);
+        }
+        // The floor keeps a tiny constraint usable, but never asks for more than the window has left
+        budget = Math.min(Math.max(budget, MIN_BUDGET), remaining);
+        logger.info("[{}] Answer max-tokens: {} (constraint: {}, prompt room: {})", modeTag, budget, lengthConstraint, remaining);
+        return budget;
+    }
+
+    /**
+     * The largest budget a retry can ask for: the answer client's configured max-tokens, capped by the
+     * room the prompt leaves.
+     */
+    public int ceilingFor(String systemPrompt, String userPrompt) {
+        return Math.min(answerMaxTokens, promptRoom(systemPrompt, userPrompt));
+    }
+
+    /**
+     * Tokens left in {@code max-total-tokens} after the prompt.
+     * @throws IllegalStateException when the prompt leaves no room for an answer
+     */
+    private int promptRoom(String systemPrompt, String userPrompt) {
+        int promptTokens = tokenCounter.count(systemPrompt) + tokenCounter.count(userPrompt) + PROMPT_OVERHEAD_TOKENS;
+        int remaining = maxTotalTokens - promptTokens;
+        if (remaining < 1) {
+            throw new IllegalStateException("Prompt of " + promptTokens + " tokens leaves no room for an answer within "
+                + maxTotalTokens + " max-total-tokens");
+        }
+        return remaining;
+    }
+
+    /** Per-call options for the answer client carrying the budget; keeps the stage's model and temperature. */
+    public ChatOptions options(int maxTokens) {
+        ChatOptions.Builder builder = ChatOptions.builder()
+            .maxTokens(maxTokens)
+            .temperature(temperature)
+            .topP(0.9);
+        if (model != null && !model.isBlank()) builder.model(model);
+        return builder.build();
+    }
+
+    /**
+     * Records the budget against the tokens actually generated (including any reasoning).
+     * @return true when the output used the whole budget
+     */
+    public boolean recordUsage(String modeTag, int budget, String output) {
+        int actual = tokenCounter.count(output);
+        summary("ragui.llm.answer.tokens.budget", "Max output tokens granted per answer call", modeTag).record(budget);
+        summary("ragui.llm.answer.tokens.actual", "Output tokens generated per answer call", modeTag).record(actual);
+        if (actual >= budget) {
+            logger.warn("[{}] Answer reached its max-tokens budget ({} tokens), output may be cut off", modeTag, budget);
+            return true;
+        }
+        return false;
+    }
+
+    private DistributionSummary summary(String name, String description, String modeTag) {
+        return DistributionSummary.builder(name)
+            .description(description)
+            .baseUnit("tokens")
+            .tag("mode", PipelineMetrics.mode(modeTag))
+            .register(meterRegistry);
+    }
+
+    static Integer constraintTokens(String lengthConstraint) {
+        if (lengthConstraint == null || lengthConstraint.isBlank()) return null;
+        Matcher matcher = CONSTRAINT.matcher(lengthConstraint);
+        if (!matcher.find()) return null;
+        String number = matcher.group(1).toLowerCase(Locale.ROOT);
+        int count = Character.isDigit(number.charAt(0)) ? Integer.parseInt(number) : NUMBER_WORDS.get(number);
+        double perUnit = TOKENS_PER_UNIT.get(matcher.group(2).toLowerCase(Locale.ROOT));
+        return (int) Math.ceil(count * perUnit);
+    }
+}
@@ -0,0 +1,13 @@
+package com.baskettecase.ragui.service;
+
+/**
+ * Container for cleaned query and optional constraint.
+ */
+class CleanedQueryResult {
+    public final String cleanedQuery;
+    public final String lengthConstraint;
+    public CleanedQueryResult(String cleanedQuery, String lengthConstraint) {
+        this.cleanedQuery = cleanedQuery;
+        this.lengthConstraint = lengthConstraint;
+    }
+}
@@ -0,0 +1,192 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Packs retrieved documents into the LLM context as a multiple-choice knapsack: each document can be
+ * left out, included whole, or included truncated at a sentence boundary, within both the token and
+ * the character budget. Every token is worth its document's relevance, so the selection spends the
+ * budget on the most relevant text and a truncated variant is worth only the tokens it keeps; a stub
+ * of every document never outweighs the full text of the best one. The most relevant document is
+ * always included, whole or truncated, when any variant of it fits. Relevance comes from the
+ * {@code distance} metadata (1 - distance), falling back to the document score and then to rank.
+ *
+ * Costs are bucketed to at most {@value #BUDGET_BUCKETS} units per budget so the dynamic program stays
+ * small. Selected documents keep their retrieval order in the prompt.
+ */
+@Component
+public class ContextPacker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextPacker.class);
+    private static final int BUDGET_BUCKETS = 512;
+    private static final double[] TRUNCATION_FRACTIONS = {0.75, 0.5, 0.25};
+    private static final Pattern SENTENCE_END = Pattern.compile("[.!?](?=\\s|$)");
+    static final String SEPARATOR = "\n\n";
+
+    private final TokenCounter tokenCounter;
+    private final DistributionSummary tokensUsed;
+    private final DistributionSummary budgetUtilization;
+    private final Counter included;
+    private final Counter truncated;
+    private final Counter dropped;
+
+    public ContextPacker(TokenCounter tokenCounter, MeterRegistry meterRegistry) {
+        this.tokenCounter = tokenCounter;
+        this.tokensUsed = DistributionSummary.builder("ragui.context.tokens.used")
+            .description("Tokens of retrieved context sent to the LLM")
+            .baseUnit("tokens")
+            .register(meterRegistry);
+        this.budgetUtilization = DistributionSummary.builder("ragui.context.budget.utilization")
+            .description("Fraction of the context token budget used")
+            .register(meterRegistry);
+        this.included = documentCounter(meterRegistry, "included");
+        this.truncated = documentCounter(meterRegistry, "truncated");
+        this.dropped = documentCounter(meterRegistry, "dropped");
+    }
+
+    private static Counter documentCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("ragui.context.documents").tag("outcome", outcome)
+            .description("Retrieved documents by how they were packed into the context")
+            .register(meterRegistry);
+    }
+
+    /** One way of including a document: its text, costs and value. */
+    private record Variant(String text, int tokens, int chars, double value, boolean truncated) {}
+
+    /**
+     * Returns the packed context, or an empty string when nothing fits.
+     */
+    public String pack(List<Document> docs, int maxTokens, int maxChars, int minDocChars) {
+        int separatorTokens = tokenCounter.count(SEPARATOR);
+        int tokenBucket = Math.max(1, (int) Math.ceil((double) maxTokens / BUDGET_BUCKETS));
+        int charBucket = Math.max(1, (int) Math.ceil((double) maxChars / BUDGET_BUCKETS));
+        int capacity = Math.min(maxTokens / tokenBucket, maxChars / charBucket);
+
+        int n = docs.size();
+        List<List<Variant>> options = new ArrayList<>(n);
+        int top = 0;
+        double topRelevance = -1.0;
+        for (int i = 0; i < n; i++) {
+            double relevance = relevance(docs.get(i), i);
+            options.add(variants(docs.get(i), relevance, separatorTokens, minDocChars));
+            if (relevance > topRelevance) {
+                topRelevance = relevance;
+                top = i;
+            }
+        }
+        // The most relevant document goes last, so its variant can be chosen against the best packing
+        // of all the others
+        int[] order = new int[n];
+        for (int i = 0, k = 0; i < n; i++) {
+            if (i != top) order[k++] = i;
+        }
+        if (n > 0) order[n - 1] = top;
+
+        // best[i][c]: max value from the first i documents of order within c cost units
+        double[][] best = new double[n + 1][capacity + 1];
+        int[][] choice = new int[n + 1][capacity + 1];
+        for (int i = 1; i <= n; i++) {
+            List<Variant> variants = options.get(order[i - 1]);
+            boolean required = i == n;
+            for (int c = 0; c <= capacity; c++) {
+                best[i][c] = required ? Double.NEGATIVE_INFINITY : best[i - 1][c];
+                choice[i][c] = -1;
+                for (int v = 0; v < variants.size(); v++) {
+                    Variant variant = variants.get(v);
+                    int cost = cost(variant, tokenBucket, charBucket);
+                    if (cost <= c && best[i - 1][c - cost] + variant.value() > best[i][c]) {
+                        best[i][c] = best[i - 1][c - cost] + variant.value();
+                        choice[i][c] = v;
+                    }
+                }
+                if (choice[i][c] < 0) best[i][c] = best[i - 1][c]; // no variant of it fits
+            }
+        }
+
+        Variant[] selected = new Variant[n];
+        for (int i = n, c = capacity; i > 0; i--) {
+            int v = choice[i][c];
+            if (v >= 0) {
+                int doc = order[i - 1];
+                selected[doc] = options.get(doc).get(v);
+                c -= cost(selected[doc], tokenBucket, charBucket);
+            }
+        }
+
+        StringBuilder context = new StringBuilder();
+        int tokens = 0;
+        int includedCount = 0;
+        int truncatedCount = 0;
+        for (Variant variant : selected) {
+            if (variant == null) continue;
+            if (context.length() > 0) context.append(SEPARATOR);
+            context.append(variant.text());
+            tokens += variant.tokens();
+            if (variant.truncated()) truncatedCount++; else includedCount++;
+        }
+        int droppedCount = n - includedCount - truncatedCount;
+
+        included.increment(includedCount);
+        truncated.increment(truncatedCount);
+        dropped.increment(droppedCount);
+        tokensUsed.record(tokens);
+        budgetUtilization.record(maxTokens > 0 ? (double) tokens / maxTokens : 0.0);
+        logger.info("Context packed: {} of {} tokens, {} chars - {} documents whole, {} truncated, {} dropped",
+                   tokens, maxTokens, context.length(), includedCount, truncatedCount, droppedCount);
+        return context.toString();
+    }
+
+    private List<Variant> variants(Document doc, double relevance, int separatorTokens, int minDocChars) {
+        String text = doc.getFormattedContent();
+        int fullTokens = tokenCounter.count(text);
+        List<Variant> variants = new ArrayList<>();
+        variants.add(new Variant(text, fullTokens + separatorTokens, text.length() + SEPARATOR.length(), relevance * fullTokens, false));
+        String previous = text;
+        for (double fraction : TRUNCATION_FRACTIONS) {
+            String cut = cutAtSentence(tokenCounter.truncate(text, (int) (fullTokens * fraction)));
+            if (cut.length() < minDocChars || cut.length() >= previous.length()) continue;
+            int tokens = tokenCounter.count(cut);
+            variants.add(new Variant(cut, tokens + separatorTokens, cut.length() + SEPARATOR.length(), relevance * tokens, true));
+            previous = cut;
+        }
+        return variants;
+    }
+
+    private static String cutAtSentence(String text) {
+        Matcher matcher = SENTENCE_END.matcher(text);
+        int end = -1;
+        while (matcher.find()) end = matcher.end();
+        return end > 0 ? text.substring(0, end) : "";
+    }
+
+    private static int cost(Variant variant, int tokenBucket, int charBucket) {
+        int tokenCost = (variant.tokens() + tokenBucket - 1) / tokenBucket;
+        int charCost = (variant.chars() + charBucket - 1) / charBucket;
+        return Math.max(tokenCost, charCost);
+    }
+
+    private static double relevance(Document doc, int rank) {
+        Object distance = doc.getMetadata() != null ? doc.getMetadata().get("distance") : null;
+        double relevance;
+        if (distance instanceof Number number) {
+            relevance = 1.0 - number.doubleValue();
+        } else if (doc.getScore() != null) {
+            relevance = doc.getScore();
+        } else {
+            relevance = 1.0 / (rank + 1);
+        }
+        // Keep every document worth something so spare budget is still used
+        return Math.max(relevance, 0.01);
+    }
+}
@@ -0,0 +1,185 @@
+package com.baskettecase.ragui.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Hybrid retriever over the pgvector table: HNSW nearest-neighbour search and Postgres full-text
+ * search ({@code ts_rank_cd}) run as CTEs of one SQL statement, are unioned with a FULL OUTER JOIN and
+ * ranked server-side by {@code vector-weight * cosine similarity + lexical-weight * normalized ts_rank}.
+ *
+ * A row is returned when its cosine similarity reaches the similarity threshold or when it matches the
+ * full-text query, so exact product names and error codes are found even when their embedding is not
+ * close enough. Each document carries {@code distance}, {@code vector_score}, {@code lexical_score} and
+ * {@code hybrid_score} metadata.
+ *
+ * The lexical CTE benefits from an expression index matching the configured text search config:
+ * {@code CREATE INDEX ON vector_store USING gin (to_tsvector('english', content))}, which is created at
+ * startup when {@code ragui.retrieval.hybrid.initialize-index=true}.
+ */
+@Component
+public class HybridDocumentRetriever implements DocumentRetriever {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridDocumentRetriever.class);
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final int topK;
+    private final int candidateMultiplier;
+    private final double vectorWeight;
+    private final double lexicalWeight;
+    private final String sql;
+
+    public HybridDocumentRetriever(JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel,
+                                   @Value("${ragui.retrieval.hybrid.enabled:false}") boolean enabled,
+                                   @Value("${ragui.vector.similarity-threshold:0.5}") double similarityThreshold,
+                                   @Value("${ragui.vector.top-k:5}") int topK,
+                                   @Value("${ragui.retrieval.hybrid.candidate-multiplier:4}") int candidateMultiplier,
+                                   @Value("${ragui.retrieval.hybrid.vector-weight:0.7}") double vectorWeight,
+                                   @Value("${ragui.retrieval.hybrid.lexical-weight:0.3}") double lexicalWeight,
+                                   @Value("${ragui.retrieval.hybrid.text-search-config:english}") String textSearchConfig,
+                                   @Value("${ragui.retrieval.hybrid.initialize-index:false}") boolean initializeIndex,
+                                   @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+                                   @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingModel = embeddingModel;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.topK = topK;
+        this.candidateMultiplier = Math.max(1, candidateMultiplier);
+        this.vectorWeight = vectorWeight;
+        this.lexicalWeight = lexicalWeight;
+
+        // Identifiers and the text search config are inlined (not bound) so the GIN expression index matches
+        String table = identifier(schemaName) + "." + identifier(tableName);
+        String tsConfig = "'" + identifier(textSearchConfig) + "'";
+        this.sql = """
+            WITH vector_hits AS (
+                SELECT id, embedding <=> ?::vector AS distance
+                FROM %1$s
+                ORDER BY embedding <=> ?::vector
+                LIMIT ?
+            ),
+            lexical_hits AS (
+                SELECT id, ts_rank_cd(to_tsvector(%2$s, content), q, 32) AS lexical_score
+                FROM %1$s, websearch_to_tsquery(%2$s, ?) q
+                WHERE to_tsvector(%2$s, content) @@ q
+                ORDER BY lexical_score DESC
+                LIMIT ?
+            ),
+            candidates AS (
+                SELECT COALESCE(v.id, l.id) AS id, v.distance, COALESCE(l.lexical_score, 0) AS lexical_score
+                FROM vector_hits v FULL OUTER JOIN lexical_hits l ON v.id = l.id
+            ),
+            scored AS (
+                SELECT s.id, s.content, s.metadata::text AS metadata,
+                       COALESCE(c.distance, s.embedding <=> ?::vector) AS distance, c.lexical_score
+                FROM candidates c JOIN %1$s s ON s.id = c.id
+            )
+            SELECT id, content, metadata, distance, 1 - distance AS vector_score, lexical_score,
+                   ? * (1 - distance) + ? * lexical_score AS hybrid_score
+            FROM scored
+            WHERE 1 - distance >= ? OR lexical_score > 0
+            ORDER BY hybrid_score DESC
+            LIMIT ?
+            """.formatted(table, tsConfig);
+
+        if (enabled && initializeIndex) {
+            createFullTextIndex(table, tableName, tsConfig);
+        }
+        logger.info("HybridDocumentRetriever initialized - enabled: {}, table: {}, weights: {}/{}, candidates: {}x top-K",
+                   enabled, table, vectorWeight, lexicalWeight, this.candidateMultiplier);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        return retrieve(query, topK);
+    }
+
+    /** Retrieves with an explicit result limit, e.g. to over-fetch candidates for de-duplication. */
+    public List<Document> retrieve(Query query, int topK) {
+        String text = query.text();
+        String embedding = toVectorLiteral(embeddingModel.embed(text));
+        int candidates = topK * candidateMultiplier;
+        long start = System.currentTimeMillis();
+        List<Document> docs = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Map<String, Object> metadata = parseMetadata(rs.getString("metadata"));
+            double distance = rs.getDouble("distance");
+            double hybridScore = rs.getDouble("hybrid_score");
+            metadata.put("distance", distance);
+            metadata.put("vector_score", rs.getDouble("vector_score"));
+            metadata.put("lexical_score", rs.getDouble("lexical_score"));
+            metadata.put("hybrid_score", hybridScore);
+            return Document.builder()
+                .id(rs.getString("id"))
+                .text(rs.getString("content"))
+                .metadata(metadata)
+                .score(hybridScore)
+                .build();
+        }, embedding, embedding, candidates, text, candidates, embedding,
+            vectorWeight, lexicalWeight, similarityThreshold, topK);
+        logger.debug("Hybrid retrieval returned {} documents in {} ms", docs.size(), System.currentTimeMillis() - start);
+        return docs;
+    }
+
+    private void createFullTextIndex(String table, String tableName, String tsConfig) {
+        String ddl = "CREATE INDEX IF NOT EXISTS " + tableName + "_content_fts_idx ON " + table
+            + " USING gin (to_tsvector(" + tsConfig + ", content))";
+        try {
+            jdbcTemplate.execute(ddl);
+            logger.info("Full-text index ensured: {}", ddl);
+        } catch (DataAccessException e) {
+            logger.warn("Could not create full-text index, lexical search will scan the table: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, Object> parseMetadata(String json) {
+        if (json == null || json.isBlank()) return new HashMap<>();
+        try {
+            return new HashMap<>(objectMapper.readValue(json, METADATA_TYPE));
+        } catch (Exception e) {
+            logger.warn("Could not parse document metadata: {}", e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    private static String toVectorLiteral(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String identifier(String name) {
+        if (name == null || !IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid SQL identifier for hybrid retrieval: " + name);
+        }
+        return name;
+    }
+}
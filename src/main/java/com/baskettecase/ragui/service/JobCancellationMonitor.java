@@ -0,0 +1,117 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.model.Job;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels pipeline runs nobody is listening to any more. A disconnected SSE client is only noticed
+ * when a write fails, so running jobs get a heartbeat that lets idle subscribers send a keep-alive
+ * comment. Once every job fed by a flight has had no subscriber for {@code ragui.jobs.cancel-grace-seconds}
+ * (covering a page reload or a slow first connect), the jobs are marked CANCELLED and the flight's
+ * {@link RequestContext} is cancelled, which drops pending futures and aborts the model HTTP call.
+ */
+@Component
+public class JobCancellationMonitor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobCancellationMonitor.class);
+
+    private final boolean enabled;
+    private final long graceNanos;
+    private final Map<RequestCoalescer.Flight, RequestContext> watched = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter cancelledJobs;
+    private final Counter abortedLlmCalls;
+    private final Counter abortedTasks;
+
+    public JobCancellationMonitor(MeterRegistry meterRegistry,
+                                  @Value("${ragui.jobs.cancel-on-disconnect:true}") boolean enabled,
+                                  @Value("${ragui.jobs.cancel-grace-seconds:15}") long graceSeconds) {
+        this.enabled = enabled;
+        this.graceNanos = TimeUnit.SECONDS.toNanos(graceSeconds);
+        this.cancelledJobs = Counter.builder("ragui.jobs.cancelled")
+            .description("Jobs cancelled because no client was connected")
+            .register(meterRegistry);
+        this.abortedLlmCalls = Counter.builder("ragui.jobs.cancelled.aborted")
+            .description("Work aborted by cancelling jobs without a connected client")
+            .tag("kind", "llm_call")
+            .register(meterRegistry);
+        this.abortedTasks = Counter.builder("ragui.jobs.cancelled.aborted")
+            .description("Work aborted by cancelling jobs without a connected client")
+            .tag("kind", "task")
+            .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "job-cancellation");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.SECONDS);
+        logger.info("JobCancellationMonitor initialized - enabled: {}, grace: {}s", enabled, graceSeconds);
+    }
+
+    /** Starts watching a flight while its pipeline runs. */
+    public void watch(RequestCoalescer.Flight flight, RequestContext context) {
+        watched.put(flight, context);
+    }
+
+    public void unwatch(RequestCoalescer.Flight flight) {
+        watched.remove(flight);
+    }
+
+    private void sweep() {
+        for (Map.Entry<RequestCoalescer.Flight, RequestContext> entry : watched.entrySet()) {
+            try {
+                check(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                logger.warn("Cancellation check failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void check(RequestCoalescer.Flight flight, RequestContext context) {
+        List<Job> jobs = flight.jobs();
+        long idleNanos = Long.MAX_VALUE;
+        for (Job job : jobs) {
+            job.heartbeat(); // queues keep-alives; a failed one removes the dead subscriber by a later sweep
+            idleNanos = Math.min(idleNanos, job.getUnsubscribedNanos());
+        }
+        if (!enabled || jobs.isEmpty() || idleNanos < graceNanos) return;
+
+        long idleSeconds = TimeUnit.NANOSECONDS.toSeconds(idleNanos);
+        flight.cancel(job -> {
+            if (job.isFinished()) return;
+            String message = "Cancelled: no client connected for " + idleSeconds + "s";
+            job.setStatus(Job.Status.CANCELLED);
+            job.setStatusMessage(message);
+            job.addStatusEvent(Job.Status.CANCELLED.name(), message, job.getProgress());
+            cancelledJobs.increment();
+        });
+        watched.remove(flight);
+        RequestContext.Cancellation cancellation = context.cancel();
+        if (cancellation != null) {
+            abortedLlmCalls.increment(cancellation.activeLlmCalls());
+            abortedTasks.increment(cancellation.pendingTasks());
+            logger.info("Cancelled {} job(s) with no client for {}s: aborted {} LLM call(s), {} pending task(s)",
+                       jobs.size(), idleSeconds, cancellation.activeLlmCalls(), cancellation.pendingTasks());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
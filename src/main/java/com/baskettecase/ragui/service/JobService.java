@@ -1,15 +1,91 @@
 package com.baskettecase.ragui.service;
 
 import com.baskettecase.ragui.model.Job;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * In-memory job store bounded by job count, a TTL for finished jobs and a byte budget for
+ * retained chunk text. Eviction runs on a background sweeper so createJob/getJob never block.
+ */
 @Service
-public class JobService {
+public class JobService implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(JobService.class);
+
     private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictionScheduler;
+
+    private final int maxJobs;
+    private final long finishedTtlMillis;
+    private final long maxRetainedBytes;
+    private final long evictionIntervalSeconds;
+    private final MeterRegistry meterRegistry;
+
+    private final Counter ttlEvictions;
+    private final Counter countEvictions;
+    private final Counter bytesEvictions;
+
+    public JobService(MeterRegistry meterRegistry,
+                      @Value("${ragui.jobs.max-count:1000}") int maxJobs,
+                      @Value("${ragui.jobs.finished-ttl-seconds:600}") long finishedTtlSeconds,
+                      @Value("${ragui.jobs.max-retained-bytes:67108864}") long maxRetainedBytes,
+                      @Value("${ragui.jobs.eviction-interval-seconds:15}") long evictionIntervalSeconds) {
+        this.maxJobs = maxJobs;
+        this.finishedTtlMillis = TimeUnit.SECONDS.toMillis(finishedTtlSeconds);
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.evictionIntervalSeconds = evictionIntervalSeconds;
+        this.meterRegistry = meterRegistry;
+
+        this.ttlEvictions = evictionCounter(meterRegistry, "ttl");
+        this.countEvictions = evictionCounter(meterRegistry, "count");
+        this.bytesEvictions = evictionCounter(meterRegistry, "bytes");
+
+        this.evictionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "job-eviction");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.info("JobService initialized with max-count: {}, finished-ttl: {}s, max-retained-bytes: {}, eviction-interval: {}s",
+                   maxJobs, finishedTtlSeconds, maxRetainedBytes, evictionIntervalSeconds);
+    }
+
+    /** Registers the store gauges and starts the eviction sweeper once the service is constructed. */
+    @PostConstruct
+    public void start() {
+        Gauge.builder("ragui.jobs.live", jobs, Map::size)
+            .description("Jobs currently held in the job store")
+            .register(meterRegistry);
+        Gauge.builder("ragui.jobs.retained.bytes", this, JobService::retainedBytes)
+            .description("Approximate bytes of chunk text retained by stored jobs")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        evictionScheduler.scheduleWithFixedDelay(this::evictJobs, evictionIntervalSeconds, evictionIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("ragui.jobs.evictions")
+            .description("Jobs evicted from the job store")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
 
     public Job createJob() {
         String jobId = UUID.randomUUID().toString();
@@ -19,10 +95,83 @@ public class JobService {
     }
 
     public Job getJob(String jobId) {
-        return jobs.get(jobId);
+        Job job = jobs.get(jobId);
+        if (job != null) job.touch();
+        return job;
     }
 
     public void updateJob(Job job) {
         jobs.put(job.getJobId(), job);
     }
+
+    private long retainedBytes() {
+        long total = 0L;
+        for (Job job : jobs.values()) {
+            total += job.getRetainedChunkBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Background sweep: drop finished jobs past their TTL, then evict least-recently-used jobs
+     * until the count and byte budgets are met. Finished jobs go first; active jobs are only
+     * evicted to enforce the count limit (e.g. jobs stuck in RUNNING).
+     */
+    void evictJobs() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Job job : jobs.values()) {
+                long finishedAt = job.getFinishedAt();
+                if (finishedAt > 0L && now - finishedAt > finishedTtlMillis && jobs.remove(job.getJobId(), job)) {
+                    ttlEvictions.increment();
+                }
+            }
+
+            int count = jobs.size();
+            long bytes = retainedBytes();
+            if (count <= maxJobs && bytes <= maxRetainedBytes) {
+                return;
+            }
+
+            List<Job> candidates = new ArrayList<>(jobs.values());
+            candidates.sort(Comparator.comparing((Job j) -> !j.isFinished())
+                .thenComparingLong(Job::getLastAccessedAt));
+            for (Job job : candidates) {
+                boolean overCount = count > maxJobs;
+                boolean overBytes = bytes > maxRetainedBytes;
+                if (!overCount && !overBytes) break;
+                if (!job.isFinished() && !overCount) break; // never evict active jobs just for bytes
+                if (jobs.remove(job.getJobId(), job)) {
+                    count--;
+                    bytes -= job.getRetainedChunkBytes();
+                    if (overCount) countEvictions.increment(); else bytesEvictions.increment();
+                    logger.debug("Evicted job {} (status: {}, reason: {})", job.getJobId(), job.getStatus(), overCount ? "count" : "bytes");
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Job eviction sweep failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get job store statistics for debugging/monitoring.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("liveJobs", jobs.size());
+        stats.put("retainedBytes", retainedBytes());
+        stats.put("maxJobs", maxJobs);
+        stats.put("maxRetainedBytes", maxRetainedBytes);
+        stats.put("finishedTtlMillis", finishedTtlMillis);
+        stats.put("evictions", Map.of(
+            "ttl", (long) ttlEvictions.count(),
+            "count", (long) countEvictions.count(),
+            "bytes", (long) bytesEvictions.count()));
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        evictionScheduler.shutdownNow();
+    }
 }
@@ -0,0 +1,197 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for LLM calls. Each stage (query cleaning, expansion, answer, and the answer
+ * cache's query embedding) has its own
+ * concurrency limit and a bounded FIFO wait queue (a fair semaphore). A call that finds the queue
+ * full, or waits longer than {@code ragui.llm.admission.max-queue-wait-ms}, is rejected with
+ * {@link LlmOverloadedException} instead of piling onto the model endpoint, so a spike is shed
+ * early rather than slowing every request down to the stage timeout. Callers also pass what is left
+ * of their request deadline, so a request never queues past it.
+ *
+ * Retry-After is estimated from the stage's recent call duration and the current queue depth.
+ */
+@Component
+public class LlmAdmissionGate {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmAdmissionGate.class);
+    private static final long MAX_RETRY_AFTER_SECONDS = 120;
+
+    private final boolean enabled;
+    private final int maxQueue;
+    private final long maxQueueWaitMs;
+    private final Map<String, StageGate> gates;
+
+    /** A granted slot; release exactly once when the LLM call has finished. Extra releases are ignored. */
+    public static final class Permit {
+        private final StageGate gate;
+        private final long grantedNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(StageGate gate) {
+            this.gate = gate;
+        }
+
+        public void release() {
+            if (gate != null && released.compareAndSet(false, true)) {
+                gate.release(System.nanoTime() - grantedNanos);
+            }
+        }
+    }
+
+    private static final Permit UNLIMITED = new Permit(null);
+
+    private final class StageGate {
+        final String stage;
+        final int limit;
+        final Semaphore permits;
+        final AtomicInteger waiting = new AtomicInteger();
+        final Timer waitTimer;
+        final Counter rejectedQueueFull;
+        final Counter rejectedQueueTimeout;
+        // Recent time a call holds its permit (EWMA), for Retry-After
+        volatile double holdNanosEwma = 0.0;
+
+        StageGate(String stage, int limit, MeterRegistry meterRegistry) {
+            this.stage = stage;
+            this.limit = Math.max(1, limit);
+            this.permits = new Semaphore(this.limit, true);
+            Gauge.builder("ragui.llm.admission.queue.depth", waiting, AtomicInteger::get)
+                .description("LLM calls waiting for admission")
+                .tag("stage", stage)
+                .register(meterRegistry);
+            Gauge.builder("ragui.llm.admission.in.flight", permits, p -> this.limit - p.availablePermits())
+                .description("LLM calls currently admitted")
+                .tag("stage", stage)
+                .register(meterRegistry);
+            this.waitTimer = Timer.builder("ragui.llm.admission.wait")
+                .description("Time LLM calls waited for admission")
+                .tag("stage", stage)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+            this.rejectedQueueFull = Counter.builder("ragui.llm.admission.rejected")
+                .description("LLM calls rejected by admission control")
+                .tag("stage", stage).tag("reason", "queue_full")
+                .register(meterRegistry);
+            this.rejectedQueueTimeout = Counter.builder("ragui.llm.admission.rejected")
+                .description("LLM calls rejected by admission control")
+                .tag("stage", stage).tag("reason", "queue_timeout")
+                .register(meterRegistry);
+        }
+
+        Permit acquire(long maxWaitNanos) throws InterruptedException, TimeoutException {
+            long start = System.nanoTime();
+            // Timed tryAcquire honours fairness, so an immediate grant never jumps the queue
+            if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return new Permit(this);
+            }
+            if (maxWaitNanos <= 0L) {
+                throw new TimeoutException("request deadline reached before admission to the " + stage + " stage");
+            }
+            if (waiting.incrementAndGet() > maxQueue) {
+                waiting.decrementAndGet();
+                rejectedQueueFull.increment();
+                throw reject("queue full");
+            }
+            long queueWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMs);
+            boolean deadlineFirst = maxWaitNanos < queueWaitNanos;
+            try {
+                if (!permits.tryAcquire(Math.min(maxWaitNanos, queueWaitNanos), TimeUnit.NANOSECONDS)) {
+                    waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    if (deadlineFirst) {
+                        throw new TimeoutException("request deadline reached after waiting "
+                            + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms for admission to the " + stage + " stage");
+                    }
+                    rejectedQueueTimeout.increment();
+                    throw reject("waited " + maxQueueWaitMs + " ms");
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return new Permit(this);
+        }
+
+        void release(long holdNanos) {
+            double previous = holdNanosEwma;
+            holdNanosEwma = previous == 0.0 ? holdNanos : previous * 0.8 + holdNanos * 0.2;
+            permits.release();
+        }
+
+        boolean isQueueFull() {
+            return permits.availablePermits() == 0 && waiting.get() >= maxQueue;
+        }
+
+        long retryAfterSeconds() {
+            double seconds = holdNanosEwma / 1_000_000_000.0 * (waiting.get() + 1) / limit;
+            return Math.max(1L, Math.min(MAX_RETRY_AFTER_SECONDS, (long) Math.ceil(seconds)));
+        }
+
+        LlmOverloadedException reject(String reason) {
+            long retryAfter = retryAfterSeconds();
+            logger.warn("LLM {} call rejected: {} (limit {}, queue {}), Retry-After {}s", stage, reason, limit, maxQueue, retryAfter);
+            return new LlmOverloadedException(stage, reason, retryAfter);
+        }
+    }
+
+    public LlmAdmissionGate(MeterRegistry meterRegistry,
+                            @Value("${ragui.llm.admission.enabled:true}") boolean enabled,
+                            @Value("${ragui.llm.admission.max-queue:32}") int maxQueue,
+                            @Value("${ragui.llm.admission.max-queue-wait-ms:10000}") long maxQueueWaitMs,
+                            @Value("${ragui.llm.rewrite.max-concurrent:8}") int rewriteMaxConcurrent,
+                            @Value("${ragui.llm.expansion.max-concurrent:8}") int expansionMaxConcurrent,
+                            @Value("${ragui.llm.answer.max-concurrent:4}") int answerMaxConcurrent,
+                            @Value("${ragui.llm.embedding.max-concurrent:8}") int embeddingMaxConcurrent) {
+        this.enabled = enabled;
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxQueueWaitMs = maxQueueWaitMs;
+        this.gates = Map.of(
+            PipelineMetrics.QUERY_CLEANING, new StageGate(PipelineMetrics.QUERY_CLEANING, rewriteMaxConcurrent, meterRegistry),
+            PipelineMetrics.EXPANSION, new StageGate(PipelineMetrics.EXPANSION, expansionMaxConcurrent, meterRegistry),
+            PipelineMetrics.LLM, new StageGate(PipelineMetrics.LLM, answerMaxConcurrent, meterRegistry),
+            PipelineMetrics.EMBEDDING, new StageGate(PipelineMetrics.EMBEDDING, embeddingMaxConcurrent, meterRegistry));
+        logger.info("LlmAdmissionGate initialized - enabled: {}, max-concurrent rewrite/expansion/answer/embedding: {}/{}/{}/{}, max-queue: {}, max-queue-wait: {} ms",
+                   enabled, rewriteMaxConcurrent, expansionMaxConcurrent, answerMaxConcurrent, embeddingMaxConcurrent, maxQueue, maxQueueWaitMs);
+    }
+
+    /**
+     * Waits in the stage's FIFO queue for a slot.
+     * @param stage a {@link PipelineMetrics} LLM stage (query_cleaning, expansion, llm, embedding)
+     * @param maxWaitNanos longest the caller can wait, normally what is left of its request deadline
+     * @throws LlmOverloadedException when the queue is full or the maximum queue time passes
+     * @throws TimeoutException when {@code maxWaitNanos} passes first
+     */
+    public Permit acquire(String stage, long maxWaitNanos) throws InterruptedException, TimeoutException {
+        StageGate gate = gates.get(stage);
+        if (!enabled || gate == null) return UNLIMITED;
+        return gate.acquire(maxWaitNanos);
+    }
+
+    /**
+     * Fails fast at request submission when the stage could not even queue the call.
+     * @throws LlmOverloadedException when the stage's wait queue is full
+     */
+    public void checkAdmission(String stage) {
+        StageGate gate = gates.get(stage);
+        if (!enabled || gate == null || !gate.isQueueFull()) return;
+        gate.rejectedQueueFull.increment();
+        throw gate.reject("queue full at submission");
+    }
+}
@@ -0,0 +1,27 @@
+package com.baskettecase.ragui.service;
+
+/**
+ * Thrown when an LLM call cannot be admitted: the stage's wait queue is full or the call waited
+ * longer than the maximum queue time. Controllers map it to 429 with a Retry-After header.
+ */
+public class LlmOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String stage;
+    private final long retryAfterSeconds;
+
+    public LlmOverloadedException(String stage, String reason, long retryAfterSeconds) {
+        super("LLM " + stage + " stage overloaded (" + reason + "), retry after " + retryAfterSeconds + "s");
+        this.stage = stage;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,149 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Drops near-duplicate retrieved chunks, e.g. overlapping sliding-window chunks of the same source.
+ *
+ * Each document gets a {@value #NUM_HASHES}-value MinHash signature over 3-word shingles; the share of
+ * matching signature slots estimates the Jaccard similarity of the shingle sets. Candidates are kept in
+ * rank order unless they reach the similarity cutoff against an already kept document, until the limit
+ * is reached, so an over-fetched candidate list back-fills the slots freed by duplicates.
+ */
+@Component
+public class NearDuplicateFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(NearDuplicateFilter.class);
+    private static final int NUM_HASHES = 64;
+    private static final int SHINGLE_WORDS = 3;
+
+    private final boolean enabled;
+    private final double similarityCutoff;
+    private final int overFetchFactor;
+    private final long[] seedsA = new long[NUM_HASHES];
+    private final long[] seedsB = new long[NUM_HASHES];
+    private final Counter removed;
+
+    public NearDuplicateFilter(MeterRegistry meterRegistry,
+                               @Value("${ragui.retrieval.dedup.enabled:true}") boolean enabled,
+                               @Value("${ragui.retrieval.dedup.similarity-cutoff:0.6}") double similarityCutoff,
+                               @Value("${ragui.retrieval.dedup.over-fetch-factor:2}") int overFetchFactor) {
+        this.enabled = enabled;
+        this.similarityCutoff = similarityCutoff;
+        this.overFetchFactor = Math.max(1, overFetchFactor);
+        SplittableRandom random = new SplittableRandom(42L);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            seedsA[i] = random.nextLong() | 1L; // odd multiplier
+            seedsB[i] = random.nextLong();
+        }
+        this.removed = Counter.builder("ragui.retrieval.duplicates.removed")
+            .description("Retrieved chunks dropped as near-duplicates of a higher-ranked chunk")
+            .register(meterRegistry);
+        logger.info("NearDuplicateFilter initialized - enabled: {}, similarity-cutoff: {}, over-fetch-factor: {}",
+                   enabled, similarityCutoff, this.overFetchFactor);
+    }
+
+    /** Number of candidates to retrieve so that duplicates can be replaced and topK still reached. */
+    public int candidateCount(int topK) {
+        return enabled ? topK * overFetchFactor : topK;
+    }
+
+    /**
+     * Returns at most limit documents from the ranked candidates with near-duplicates removed.
+     */
+    public List<Document> filter(List<Document> candidates, int limit) {
+        if (candidates == null) return List.of();
+        if (!enabled || candidates.size() <= 1) {
+            return candidates.size() <= limit ? candidates : candidates.subList(0, limit);
+        }
+        List<Document> kept = new ArrayList<>(Math.min(limit, candidates.size()));
+        List<long[]> keptSignatures = new ArrayList<>();
+        int duplicates = 0;
+        for (Document candidate : candidates) {
+            if (kept.size() >= limit) break;
+            long[] signature = signature(candidate.getText());
+            boolean duplicate = false;
+            for (long[] other : keptSignatures) {
+                if (similarity(signature, other) >= similarityCutoff) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (duplicate) {
+                duplicates++;
+                continue;
+            }
+            kept.add(candidate);
+            keptSignatures.add(signature);
+        }
+        if (duplicates > 0) {
+            removed.increment(duplicates);
+            logger.info("Removed {} near-duplicate chunks, kept {} of {} candidates", duplicates, kept.size(), candidates.size());
+        }
+        return kept;
+    }
+
+    long[] signature(String text) {
+        long[] signature = new long[NUM_HASHES];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        if (text == null) return signature;
+
+        // Rolling window of the last SHINGLE_WORDS word hashes, without building substrings
+        long[] window = new long[SHINGLE_WORDS];
+        int words = 0;
+        long wordHash = 0L;
+        int wordLength = 0;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char ch = i < length ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(ch)) {
+                wordHash = wordHash * 31 + Character.toLowerCase(ch);
+                wordLength++;
+                continue;
+            }
+            if (wordLength == 0) continue;
+            window[words % SHINGLE_WORDS] = mix(wordHash);
+            words++;
+            wordHash = 0L;
+            wordLength = 0;
+            if (words >= SHINGLE_WORDS) addShingle(signature, window, words);
+        }
+        if (words > 0 && words < SHINGLE_WORDS) addShingle(signature, window, words); // very short text
+        return signature;
+    }
+
+    private void addShingle(long[] signature, long[] window, int words) {
+        // Order-sensitive combination of the window, oldest word first (window[words % n] is the oldest)
+        long shingle = 0L;
+        for (int j = 0; j < SHINGLE_WORDS; j++) shingle = shingle * 0x9E3779B97F4A7C15L + window[(words + j) % SHINGLE_WORDS];
+        for (int i = 0; i < NUM_HASHES; i++) {
+            long hash = mix(shingle * seedsA[i] + seedsB[i]);
+            if (hash < signature[i]) signature[i] = hash;
+        }
+    }
+
+    static double similarity(long[] a, long[] b) {
+        int matches = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) matches++;
+        }
+        return (double) matches / a.length;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
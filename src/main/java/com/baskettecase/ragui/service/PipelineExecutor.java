@@ -0,0 +1,172 @@
+package com.baskettecase.ragui.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Shared execution model for the RAG pipeline and job submission.
+ *
+ * In platform mode (default) tasks run on a cached thread pool and each stage timeout is enforced
+ * by waiting on a future; a stage that times out has its worker interrupted so a blocking model
+ * call does not keep running past its deadline. In virtual-thread mode ({@code ragui.execution.virtual-threads=true})
+ * jobs run on virtual threads and a stage runs inline on the calling thread; its timeout is enforced by
+ * a single shared watchdog thread that interrupts the caller, which aborts blocking socket I/O on
+ * virtual threads. No second thread is needed per stage.
+ *
+ * Stages started on another thread run with the caller's {@link RequestContext}, and their futures
+ * are registered with it so a cancelled request stops its pending work.
+ */
+@Component
+public class PipelineExecutor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineExecutor.class);
+
+    private final boolean virtualThreads;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService watchdog;
+
+    public PipelineExecutor(@Value("${ragui.execution.virtual-threads:false}") boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rag-vt-", 0).factory());
+        } else {
+            this.executor = Executors.newCachedThreadPool();
+        }
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rag-stage-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.info("PipelineExecutor initialized in {} mode", virtualThreads ? "virtual-thread" : "platform-thread (newCachedThreadPool)");
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /** Runs a fire-and-forget task, e.g. a submitted job. */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /** Starts a task asynchronously, for stages that run in parallel. */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        return RequestContext.track(CompletableFuture.supplyAsync(RequestContext.propagate(task), executor));
+    }
+
+    /**
+     * Runs one pipeline stage with a timeout. Exceptions follow {@link java.util.concurrent.Future#get}:
+     * task failures are wrapped in ExecutionException.
+     */
+    public <T> T call(Callable<T> task, long timeout, TimeUnit unit)
+            throws TimeoutException, InterruptedException, ExecutionException {
+        if (!virtualThreads || !Thread.currentThread().isVirtual()) {
+            AtomicReference<RunningStage> running = new AtomicReference<>();
+            CompletableFuture<T> future = RequestContext.track(CompletableFuture.supplyAsync(RequestContext.propagate(() -> {
+                RunningStage stage = new RunningStage(Thread.currentThread());
+                running.set(stage);
+                try {
+                    return task.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new java.util.concurrent.CompletionException(e);
+                } finally {
+                    if (stage.finish()) Thread.interrupted(); // keep the timeout interrupt out of the pooled thread
+                }
+            }), executor));
+            try {
+                return future.get(timeout, unit);
+            } catch (TimeoutException te) {
+                future.cancel(true); // CompletableFuture never interrupts a task that is already running
+                RunningStage stage = running.get();
+                if (stage != null) stage.expire();
+                throw te;
+            }
+        }
+        return callInline(task, timeout, unit);
+    }
+
+    private <T> T callInline(Callable<T> task, long timeout, TimeUnit unit)
+            throws TimeoutException, InterruptedException, ExecutionException {
+        RunningStage stage = new RunningStage(Thread.currentThread());
+        ScheduledFuture<?> timer = watchdog.schedule(stage::expire, timeout, unit);
+        T result;
+        Exception failure = null;
+        try {
+            result = task.call();
+        } catch (Exception e) {
+            result = null;
+            failure = e;
+        } finally {
+            timer.cancel(false);
+        }
+        if (stage.finish()) {
+            // The watchdog fired: clear its interrupt so it does not leak into the next stage
+            Thread.interrupted();
+            throw new TimeoutException("Stage timed out after " + unit.toMillis(timeout) + " ms");
+        }
+        if (failure instanceof InterruptedException ie) throw ie;
+        if (failure != null) throw new ExecutionException(failure);
+        return result;
+    }
+
+    /** Coordinates the timeout interrupt with stage completion so an interrupt never arrives late. */
+    static final class RunningStage {
+        private final Thread thread;
+        private boolean finished;
+        private boolean expired;
+
+        RunningStage(Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void expire() {
+            if (!finished) {
+                expired = true;
+                thread.interrupt();
+            }
+        }
+
+        /** Marks the stage finished; returns true if it had already expired. */
+        synchronized boolean finish() {
+            finished = true;
+            return expired;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        watchdog.shutdownNow();
+        if (!executor.isShutdown()) {
+            logger.info("Shutting down pipeline executor as part of DisposableBean.destroy()");
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logger.warn("Pipeline executor did not terminate in 10 seconds, forcing shutdown.");
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException ie) {
+                logger.warn("Interrupted while waiting for pipeline executor to terminate, forcing shutdown.");
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Pipeline executor shutdown process completed.");
+        }
+    }
+}
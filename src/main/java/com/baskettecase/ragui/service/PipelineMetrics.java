@@ -0,0 +1,79 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage latency timers for the RAG pipeline: {@code ragui.pipeline.stage} tagged with stage
+ * (query_cleaning, expansion, retrieval, context_formatting, llm, streaming), response mode and
+ * outcome (ok, timeout, error), publishing p50/p95/p99 plus a histogram for Prometheus.
+ *
+ * Timers are created once per tag combination and cached, so recording on the hot path is a map
+ * lookup and a lock-free histogram update.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String QUERY_CLEANING = "query_cleaning";
+    public static final String EXPANSION = "expansion";
+    public static final String RETRIEVAL = "retrieval";
+    public static final String CONTEXT_FORMATTING = "context_formatting";
+    public static final String LLM = "llm";
+    public static final String STREAMING = "streaming";
+    /** Query embedding for the semantic answer cache; an admission stage only, not timed here. */
+    public static final String EMBEDDING = "embedding";
+
+    public static final String OK = "ok";
+    public static final String TIMEOUT = "timeout";
+    public static final String ERROR = "error";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public PipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void record(String stage, String modeTag, String outcome, long nanos) {
+        String mode = mode(modeTag);
+        timers.computeIfAbsent(stage + '|' + mode + '|' + outcome, key -> Timer.builder("ragui.pipeline.stage")
+                .description("RAG pipeline stage latency")
+                .tag("stage", stage)
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry))
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Outcome tag for a failure. */
+    public static String outcomeOf(Throwable failure) {
+        Throwable cause = failure;
+        while (cause != null) {
+            if (cause instanceof java.util.concurrent.TimeoutException) return TIMEOUT;
+            cause = cause.getCause();
+        }
+        return ERROR;
+    }
+
+    /**
+     * Maps the log tags used across RagService ("RAG ONLY STREAM", "RAG+Fallback", "RAW RAG", "Pure", ...)
+     * to a small fixed set of mode tag values.
+     */
+    public static String mode(String modeTag) {
+        if (modeTag == null) return "unknown";
+        String tag = modeTag.toUpperCase(Locale.ROOT);
+        if (tag.contains("RAW")) return "raw_rag";
+        if (tag.contains("FALLBACK")) return "rag_with_fallback";
+        if (tag.contains("RAG ONLY") || tag.contains("RAG_ONLY")) return "rag_only";
+        if (tag.contains("PURE")) return "pure_llm";
+        return "unknown";
+    }
+}
@@ -0,0 +1,199 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process replacement for the query-cleaning LLM call: normalizes whitespace and casing, fixes
+ * common typos from {@code query-typos.properties} and extracts length constraints ("in 20 words",
+ * "under 3 sentences", "in one paragraph") with compiled patterns.
+ *
+ * Each result carries a confidence score; below {@code ragui.query.preprocessor.min-confidence} the
+ * caller falls back to the LLM. Inputs that look garbled, very long or carry a length hint the patterns
+ * could not parse score low.
+ */
+@Component
+public class QueryPreprocessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryPreprocessor.class);
+
+    private static final String NUMBER = "(\\d+|one|two|three|four|five|six|seven|eight|nine|ten|fifteen|twenty|fifty|hundred)";
+    private static final String UNIT = "(words?|sentences?|paragraphs?|lines?|bullet points?|bullets?|points?|characters?)";
+    private static final Pattern[] CONSTRAINT_PATTERNS = {
+        Pattern.compile("[,;]?\\s*\\b(?:in|using|with)\\s+(?:about\\s+|around\\s+|roughly\\s+)?(?:less than\\s+|fewer than\\s+|under\\s+|at most\\s+|no more than\\s+)?" + NUMBER + "\\s+" + UNIT + "\\b(?:\\s+or\\s+(?:less|fewer))?", Pattern.CASE_INSENSITIVE),
+        Pattern.compile("[,;]?\\s*\\b(?:under|within|max(?:imum)?(?:\\s+of)?|at most|no more than|less than|fewer than)\\s+" + NUMBER + "\\s+" + UNIT + "\\b", Pattern.CASE_INSENSITIVE),
+        Pattern.compile("[,;]?\\s*\\b(?:in|as)\\s+(?:a\\s+)?(?:one|single)[- ](sentence|paragraph|line)(?:\\s+(?:answer|summary|response))?\\b", Pattern.CASE_INSENSITIVE)
+    };
+    private static final Pattern LENGTH_HINT = Pattern.compile("\\b(words?|sentences?|paragraphs?|briefly|brief|short|concise|tl;?dr)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern QUESTION_START = Pattern.compile("^(what|how|why|when|where|who|which|is|are|can|could|does|do|should|will|would)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WORD_EDGE = Pattern.compile("^([^\\p{L}\\p{Nd}]*)(.*?)([^\\p{L}\\p{Nd}']*)$");
+    private static final Pattern VOWEL = Pattern.compile("[aeiouy]", Pattern.CASE_INSENSITIVE);
+
+    private final boolean enabled;
+    private final double minConfidence;
+    private final Map<String, String> typos = new HashMap<>();
+
+    private final Counter localAccepted;
+    private final Counter llmFallbacks;
+    private final Timer savedLatency;
+    // Recent LLM cleaning latency (EWMA), used to estimate the time saved by local results
+    private volatile double llmLatencyNanosEwma = 0.0;
+
+    /** Locally cleaned query with its confidence score. */
+    public static final class Result {
+        final CleanedQueryResult cleaned;
+        public final double confidence;
+
+        Result(CleanedQueryResult cleaned, double confidence) {
+            this.cleaned = cleaned;
+            this.confidence = confidence;
+        }
+    }
+
+    public QueryPreprocessor(MeterRegistry meterRegistry,
+                             @Value("${ragui.query.preprocessor.enabled:true}") boolean enabled,
+                             @Value("${ragui.query.preprocessor.min-confidence:0.7}") double minConfidence) {
+        this.enabled = enabled;
+        this.minConfidence = minConfidence;
+        loadTypos();
+        this.localAccepted = Counter.builder("ragui.query.preprocessor").tag("outcome", "local")
+            .description("Query pre-processing outcomes: handled locally or sent to the LLM")
+            .register(meterRegistry);
+        this.llmFallbacks = Counter.builder("ragui.query.preprocessor").tag("outcome", "llm")
+            .description("Query pre-processing outcomes: handled locally or sent to the LLM")
+            .register(meterRegistry);
+        this.savedLatency = Timer.builder("ragui.query.preprocessor.saved")
+            .description("Estimated LLM query-cleaning latency avoided by local pre-processing")
+            .register(meterRegistry);
+        logger.info("QueryPreprocessor initialized - enabled: {}, min-confidence: {}, typo dictionary: {} entries",
+                   enabled, minConfidence, typos.size());
+    }
+
+    private void loadTypos() {
+        Properties properties = new Properties();
+        try (InputStream in = new ClassPathResource("query-typos.properties").getInputStream()) {
+            properties.load(in);
+        } catch (IOException e) {
+            logger.warn("Could not load query-typos.properties, typo correction disabled: {}", e.getMessage());
+        }
+        properties.forEach((k, v) -> typos.put(k.toString().toLowerCase(Locale.ROOT), v.toString()));
+    }
+
+    /**
+     * Cleans the query locally. Returns the result only when it is confident enough, otherwise null
+     * so the caller uses the LLM.
+     */
+    CleanedQueryResult tryPreprocess(String query, String modeTag) {
+        if (!enabled || query == null) return null;
+        Result result = preprocess(query);
+        if (result.confidence >= minConfidence) {
+            localAccepted.increment();
+            savedLatency.record((long) llmLatencyNanosEwma, TimeUnit.NANOSECONDS);
+            logger.info("[{}] Query pre-processed locally (confidence {}): '{}'{}", modeTag,
+                       String.format("%.2f", result.confidence), result.cleaned.cleanedQuery,
+                       result.cleaned.lengthConstraint != null ? " [" + result.cleaned.lengthConstraint + "]" : "");
+            return result.cleaned;
+        }
+        llmFallbacks.increment();
+        logger.info("[{}] Local pre-processing confidence {} below {}, using the LLM", modeTag,
+                   String.format("%.2f", result.confidence), minConfidence);
+        return null;
+    }
+
+    /** Feeds the latency of an LLM cleaning call into the saved-latency estimate. */
+    void recordLlmLatency(long nanos) {
+        double previous = llmLatencyNanosEwma;
+        llmLatencyNanosEwma = previous == 0.0 ? nanos : previous * 0.8 + nanos * 0.2;
+    }
+
+    /**
+     * The length constraint of the query as {@link #preprocess} extracts it, "" when it has none, or
+     * null when it asks for a length the patterns cannot parse ("briefly", "in short"). Answers to the
+     * same question under different constraints differ, so this is part of the answer cache key.
+     */
+    static String lengthConstraintKey(String query) {
+        String text = query.strip().replaceAll("\\s+", " ");
+        Matcher matcher = findConstraint(text);
+        if (matcher != null) text = text.substring(0, matcher.start()) + text.substring(matcher.end());
+        if (LENGTH_HINT.matcher(text).find()) return null;
+        return matcher != null ? constraint(matcher) : "";
+    }
+
+    public Result preprocess(String query) {
+        String text = query.strip().replaceAll("\\s+", " ");
+        double confidence = 1.0;
+
+        // Length constraints
+        String constraint = null;
+        Matcher matcher = findConstraint(text);
+        if (matcher != null) {
+            constraint = constraint(matcher);
+            text = (text.substring(0, matcher.start()) + text.substring(matcher.end())).trim();
+        }
+        if (LENGTH_HINT.matcher(text).find()) confidence -= 0.4; // a length request the patterns missed
+
+        // Casing: all-caps input is lowered before sentence-casing
+        boolean shouting = text.length() > 3 && text.equals(text.toUpperCase(Locale.ROOT)) && !text.equals(text.toLowerCase(Locale.ROOT));
+        if (shouting) text = text.toLowerCase(Locale.ROOT);
+
+        // Typos, word by word, keeping surrounding punctuation
+        String[] words = text.split(" ");
+        int garbled = 0;
+        int symbols = 0;
+        for (int i = 0; i < words.length; i++) {
+            Matcher edge = WORD_EDGE.matcher(words[i]);
+            if (!edge.matches()) continue;
+            String core = edge.group(2);
+            String fix = typos.get(core.toLowerCase(Locale.ROOT));
+            if (fix != null) {
+                words[i] = edge.group(1) + fix + edge.group(3);
+            } else if (core.length() >= 5 && core.chars().allMatch(Character::isLetter)
+                && !core.equals(core.toUpperCase(Locale.ROOT)) && !VOWEL.matcher(core).find()) {
+                garbled++; // e.g. "kbrnts", not an acronym
+            }
+            symbols += edge.group(1).length() + edge.group(3).length();
+        }
+        text = String.join(" ", words).trim();
+        confidence -= 0.35 * garbled;
+
+        if (text.isEmpty()) return new Result(new CleanedQueryResult(query, constraint), 0.0);
+        if (words.length < 2 || text.length() < 4) confidence -= 0.4;   // too little to go on
+        if (words.length > 40) confidence -= 0.4;                        // long, rambling input
+        if (symbols > text.length() / 4) confidence -= 0.4;              // mostly punctuation
+
+        // Sentence case and a question mark for questions
+        text = Character.toUpperCase(text.charAt(0)) + text.substring(1);
+        if (QUESTION_START.matcher(text).find() && !text.matches(".*[.?!]$")) text = text + "?";
+
+        return new Result(new CleanedQueryResult(text, constraint), Math.max(0.0, confidence));
+    }
+
+    /** The first constraint pattern that matches, positioned on its match, or null. */
+    private static Matcher findConstraint(String text) {
+        for (Pattern pattern : CONSTRAINT_PATTERNS) {
+            Matcher matcher = pattern.matcher(text);
+            if (matcher.find()) return matcher;
+        }
+        return null;
+    }
+
+    private static String constraint(Matcher matcher) {
+        return matcher.group().replaceFirst("^[,;]?\\s*", "").trim().toLowerCase(Locale.ROOT);
+    }
+}
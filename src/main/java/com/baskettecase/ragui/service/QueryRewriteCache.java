@@ -0,0 +1,144 @@
+package com.baskettecase.ragui.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounded caches for the LLM query-cleaning, query-expansion and combined pre-processing results.
+ *
+ * Keys combine the name of the model that produced the entry (the rewrite model for cleaning and
+ * the combined call, the expansion model for expansion), a fingerprint of the system prompt and the user prompt, so editing
+ * a prompt or switching models never serves a stale rewrite. Only successful LLM results are
+ * stored; fallbacks to the original query are not. The cache can be switched off at runtime,
+ * which also clears it.
+ */
+@Service
+public class QueryRewriteCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryRewriteCache.class);
+
+    private final AtomicBoolean enabled;
+    private final String rewriteModel;
+    private final String expansionModel;
+    private final Cache<String, CleanedQueryResult> cleaned;
+    private final Cache<String, String> expanded;
+    private final Cache<String, Preprocessed> combined;
+
+    /** Result of the combined cleaning + expansion call; searchQueries starts with the cleaned query. */
+    record Preprocessed(String cleanedQuery, String lengthConstraint, List<String> searchQueries) {}
+
+    public QueryRewriteCache(MeterRegistry meterRegistry,
+                             @Value("${ragui.cache.query-rewrite.enabled:true}") boolean enabled,
+                             @Value("${ragui.cache.query-rewrite.max-entries:5000}") long maxEntries,
+                             @Value("${ragui.cache.query-rewrite.ttl-minutes:60}") long ttlMinutes,
+                             @Value("${ragui.llm.rewrite.model:}") String rewriteModel,
+                             @Value("${ragui.llm.expansion.model:}") String expansionModel,
+                             @Value("${spring.ai.openai.chat.options.model:default}") String defaultModel) {
+        this.enabled = new AtomicBoolean(enabled);
+        this.rewriteModel = rewriteModel.isBlank() ? defaultModel : rewriteModel;
+        this.expansionModel = expansionModel.isBlank() ? defaultModel : expansionModel;
+        this.cleaned = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+            .recordStats()
+            .build();
+        this.expanded = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+            .recordStats()
+            .build();
+        this.combined = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cleaned, "query-cleaning");
+        CaffeineCacheMetrics.monitor(meterRegistry, expanded, "query-expansion");
+        CaffeineCacheMetrics.monitor(meterRegistry, combined, "query-preprocessing");
+        logger.info("QueryRewriteCache initialized - enabled: {}, max-entries: {}, ttl: {}m, models: {}/{}",
+                   enabled, maxEntries, ttlMinutes, this.rewriteModel, this.expansionModel);
+    }
+
+    CleanedQueryResult getCleaned(String systemPrompt, String userPrompt) {
+        return enabled.get() ? cleaned.getIfPresent(key(rewriteModel, systemPrompt, userPrompt)) : null;
+    }
+
+    void putCleaned(String systemPrompt, String userPrompt, CleanedQueryResult result) {
+        if (enabled.get() && result != null) cleaned.put(key(rewriteModel, systemPrompt, userPrompt), result);
+    }
+
+    String getExpanded(String systemPrompt, String userPrompt) {
+        return enabled.get() ? expanded.getIfPresent(key(expansionModel, systemPrompt, userPrompt)) : null;
+    }
+
+    void putExpanded(String systemPrompt, String userPrompt, String expandedQuery) {
+        if (enabled.get() && expandedQuery != null) expanded.put(key(expansionModel, systemPrompt, userPrompt), expandedQuery);
+    }
+
+    /** The combined call runs on the rewrite client, so it is keyed by the rewrite model. */
+    Preprocessed getCombined(String systemPrompt, String userPrompt) {
+        return enabled.get() ? combined.getIfPresent(key(rewriteModel, systemPrompt, userPrompt)) : null;
+    }
+
+    void putCombined(String systemPrompt, String userPrompt, Preprocessed result) {
+        if (enabled.get() && result != null) combined.put(key(rewriteModel, systemPrompt, userPrompt), result);
+    }
+
+    public boolean isEnabled() {
+        return enabled.get();
+    }
+
+    public void setEnabled(boolean value) {
+        enabled.set(value);
+        if (!value) invalidateAll();
+        logger.info("Query rewrite cache {}", value ? "enabled" : "disabled and cleared");
+    }
+
+    public void invalidateAll() {
+        cleaned.invalidateAll();
+        expanded.invalidateAll();
+        combined.invalidateAll();
+    }
+
+    /**
+     * Get cache statistics for debugging/monitoring.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled.get());
+        result.put("rewriteModel", rewriteModel);
+        result.put("expansionModel", expansionModel);
+        result.put("cleaning", statsOf(cleaned));
+        result.put("expansion", statsOf(expanded));
+        result.put("preprocessing", statsOf(combined));
+        return result;
+    }
+
+    private static Map<String, Object> statsOf(Cache<String, ?> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("entries", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+
+    private static String key(String model, String systemPrompt, String userPrompt) {
+        return model + '\u0000' + Integer.toHexString(systemPrompt.hashCode()) + '\u0000' + userPrompt.trim();
+    }
+}
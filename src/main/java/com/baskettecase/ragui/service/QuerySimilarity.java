@@ -0,0 +1,51 @@
+package com.baskettecase.ragui.service;
+
+import java.util.Locale;
+
+/**
+ * Cheap lexical comparison of query strings, used to decide whether a rewritten query is still
+ * "the same question" as the one the user typed.
+ */
+final class QuerySimilarity {
+
+    private QuerySimilarity() {
+    }
+
+    /** Lowercases, drops punctuation and collapses whitespace. */
+    static String normalize(String text) {
+        if (text == null) return "";
+        return text.toLowerCase(Locale.ROOT)
+            .replaceAll("[^\\p{L}\\p{Nd}\\s]", " ")
+            .replaceAll("\\s+", " ")
+            .trim();
+    }
+
+    /**
+     * 1 - (Levenshtein distance / longer length) over the normalized strings; 1.0 means identical.
+     */
+    static double normalizedSimilarity(String a, String b) {
+        String x = normalize(a);
+        String y = normalize(b);
+        int maxLength = Math.max(x.length(), y.length());
+        if (maxLength == 0) return 1.0;
+        return 1.0 - (double) levenshtein(x, y) / maxLength;
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (ca == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j] + 1, current[j - 1] + 1));
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -5,30 +5,43 @@ import com.baskettecase.ragui.dto.ChatResponse;
 import java.util.ArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Service;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
 import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
 import org.springframework.ai.rag.Query;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 
 import java.util.List;
 import java.util.concurrent.*;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import com.baskettecase.ragui.controller.QueryExpansionController;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Service
-public class RagService implements DisposableBean {
+public class RagService {
 
     private static final Logger logger = LoggerFactory.getLogger(RagService.class);
-    private final ChatClient chatClient;
-    private final VectorStoreDocumentRetriever documentRetriever;
-    private final ExecutorService timeoutExecutor; // Shared executor for all async tasks
-    private static final int TIMEOUT_SECONDS = 180;
+    private final ChatClient chatClient; // answer generation
+    private final ChatClient rewriteChatClient; // query cleaning and combined pre-processing
+    private final ChatClient expansionChatClient;
+    private final DocumentRetriever documentRetriever;
+    private final PipelineExecutor pipelineExecutor; // Shared execution model for all pipeline stages
+    // An optional stage with less time than this left is skipped rather than started
+    private static final long MIN_OPTIONAL_STAGE_NANOS = TimeUnit.SECONDS.toNanos(1);
 
     // Make similarity threshold configurable
     @Value("${ragui.vector.similarity-threshold:0.5}")
@@ -40,6 +53,36 @@ public class RagService implements DisposableBean {
     @Value("${ragui.debug.skip-query-cleaning:false}")
     private boolean skipQueryCleaning;
 
+    @Value("${ragui.retrieval.timeout-seconds:30}")
+    private long retrievalTimeoutSeconds;
+
+    @Value("${ragui.retrieval.speculative.enabled:false}")
+    private boolean speculativeRetrievalEnabled;
+
+    @Value("${ragui.retrieval.speculative.min-similarity:0.8}")
+    private double speculativeMinSimilarity;
+
+    @Value("${ragui.query.expansion.fan-out:3}")
+    private int fanOutWidth;
+
+    @Value("${ragui.query.expansion.branch-timeout-ms:1500}")
+    private long fanOutBranchTimeoutMs;
+
+    @Value("${ragui.retrieval.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${ragui.llm.rewrite.timeout-seconds:180}")
+    private long rewriteTimeoutSeconds;
+
+    @Value("${ragui.llm.expansion.timeout-seconds:180}")
+    private long expansionTimeoutSeconds;
+
+    @Value("${ragui.llm.answer.timeout-seconds:180}")
+    private long answerTimeoutSeconds;
+
+    @Value("${ragui.request.answer-reserve-seconds:30}")
+    private long answerReserveSeconds;
+
     @Value("${ragui.context.max-chars:6000}")
     private int maxContextChars;
 
@@ -57,23 +100,82 @@ public class RagService implements DisposableBean {
     private int maxResponseTokens;
 
     private final QueryExpansionController queryExpansionController;
+    private final SemanticAnswerCache answerCache;
+    private final RetrievalCache retrievalCache;
+    private final QueryRewriteCache queryRewriteCache;
+    private final TokenCounter tokenCounter;
+    private final ContextPacker contextPacker;
+    private final NearDuplicateFilter nearDuplicateFilter;
+    private final QueryPreprocessor queryPreprocessor;
+    private final AnswerTokenBudget answerTokenBudget;
+    private final PipelineMetrics pipelineMetrics;
+    private final LlmAdmissionGate llmAdmissionGate;
+    private final VectorSearchLimiter vectorSearchLimiter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Counter speculativeUsed;
+    private final Counter speculativeDiscarded;
+    private final Timer speculativeSaved;
 
-    public RagService(ChatClient chatClient, VectorStore vectorStore,
+    public RagService(ChatClient chatClient,
+                      @Qualifier("rewriteChatClient") ChatClient rewriteChatClient,
+                      @Qualifier("expansionChatClient") ChatClient expansionChatClient,
+                      VectorStore vectorStore,
                       @Value("${ragui.vector.similarity-threshold:0.5}") double similarityThreshold,
                       @Value("${ragui.vector.top-k:5}") int topK,
-                      QueryExpansionController queryExpansionController) {
+                      QueryExpansionController queryExpansionController,
+                      PipelineExecutor pipelineExecutor,
+                      SemanticAnswerCache answerCache,
+                      RetrievalCache retrievalCache,
+                      QueryRewriteCache queryRewriteCache,
+                      HybridDocumentRetriever hybridRetriever,
+                      TokenCounter tokenCounter,
+                      ContextPacker contextPacker,
+                      NearDuplicateFilter nearDuplicateFilter,
+                      QueryPreprocessor queryPreprocessor,
+                      AnswerTokenBudget answerTokenBudget,
+                      PipelineMetrics pipelineMetrics,
+                      LlmAdmissionGate llmAdmissionGate,
+                      VectorSearchLimiter vectorSearchLimiter,
+                      MeterRegistry meterRegistry) {
         this.chatClient = chatClient;
+        this.rewriteChatClient = rewriteChatClient;
+        this.expansionChatClient = expansionChatClient;
         this.similarityThreshold = similarityThreshold;
         this.topK = topK;
         this.queryExpansionController = queryExpansionController;
-        this.documentRetriever = VectorStoreDocumentRetriever.builder()
-            .similarityThreshold(similarityThreshold) // Use configurable threshold
-            .topK(topK) // Make top-k configurable too
-            .vectorStore(vectorStore)
-            .build();
-        this.timeoutExecutor = Executors.newCachedThreadPool();
-        logger.info("RagService initialized with similarity threshold: {}, top-K: {}, skip-query-cleaning: {}, max-context-chars: {}, min-doc-chars: {}, token-limits: {}/{}/{}, and newCachedThreadPool for timeoutExecutor.", 
-                   similarityThreshold, topK, skipQueryCleaning, maxContextChars, minDocChars, maxContextTokens, maxResponseTokens, maxTotalTokens);
+        this.nearDuplicateFilter = nearDuplicateFilter;
+        this.queryPreprocessor = queryPreprocessor;
+        this.answerTokenBudget = answerTokenBudget;
+        this.pipelineMetrics = pipelineMetrics;
+        this.llmAdmissionGate = llmAdmissionGate;
+        this.vectorSearchLimiter = vectorSearchLimiter;
+        // Over-fetch so that near-duplicate chunks can be dropped and top-K still back-filled
+        int candidateCount = nearDuplicateFilter.candidateCount(topK);
+        this.documentRetriever = hybridRetriever.isEnabled()
+            ? query -> hybridRetriever.retrieve(query, candidateCount) // Full-text + vector search in one SQL round trip
+            : VectorStoreDocumentRetriever.builder()
+                .similarityThreshold(similarityThreshold) // Use configurable threshold
+                .topK(candidateCount) // Make top-k configurable too
+                .vectorStore(vectorStore)
+                .build();
+        this.pipelineExecutor = pipelineExecutor;
+        this.answerCache = answerCache;
+        this.retrievalCache = retrievalCache;
+        this.queryRewriteCache = queryRewriteCache;
+        this.tokenCounter = tokenCounter;
+        this.contextPacker = contextPacker;
+        this.speculativeUsed = Counter.builder("ragui.retrieval.speculative").tag("outcome", "used")
+            .description("Speculative raw-query vector searches, by whether their results were used")
+            .register(meterRegistry);
+        this.speculativeDiscarded = Counter.builder("ragui.retrieval.speculative").tag("outcome", "discarded")
+            .description("Speculative raw-query vector searches, by whether their results were used")
+            .register(meterRegistry);
+        this.speculativeSaved = Timer.builder("ragui.retrieval.speculative.saved")
+            .description("Retrieval latency hidden behind query pre-processing when speculative results were used")
+            .register(meterRegistry);
+        logger.info("RagService initialized with similarity threshold: {}, top-K: {}, skip-query-cleaning: {}, max-context-chars: {}, min-doc-chars: {}, token-limits: {}/{}/{}, virtual-threads: {}.", 
+                   similarityThreshold, topK, skipQueryCleaning, maxContextChars, minDocChars, maxContextTokens, maxResponseTokens, maxTotalTokens, pipelineExecutor.isVirtualThreads());
     }
 
     public interface RagStatusListener {
@@ -84,71 +186,88 @@ public class RagService implements DisposableBean {
         String responseMode = determineResponseMode(request);
         logger.info("Processing stream request - Mode: {}, Message: {}", responseMode, request.getMessage());
 
+        SemanticAnswerCache.Lookup cached = lookupAnswer("stream", responseMode, request.getMessage());
+        if (cached != null && cached.isHit()) {
+            // Replay the stored answer through the normal status/chunk path
+            if (statusListener != null) statusListener.onStatus("Received stream request", 10);
+            if (statusListener != null) statusListener.onStatus(String.format("Answer served from semantic cache (similarity %.3f)", cached.similarity), 90);
+            chunkConsumer.accept(cached.answer);
+            if (statusListener != null) statusListener.onStatus("COMPLETED", 100);
+            return;
+        }
+
+        String answer = streamPipeline(request, responseMode, statusListener, chunkConsumer);
+        if (cached != null && answer != null) {
+            answerCache.put(cached, answer);
+        }
+    }
+
+    /**
+     * Looks up a cached answer. chat() and chatStream() store answers in different formats, so the
+     * call kind is part of the cache variant, and so is the length constraint: "explain X in 20 words"
+     * must not replay the answer to "explain X". A message with a length request the local patterns
+     * cannot parse skips the cache, since the LLM may still read a constraint from it.
+     * @return the lookup, or null when the cache is not used for this message
+     */
+    private SemanticAnswerCache.Lookup lookupAnswer(String callKind, String responseMode, String message) {
+        if (!answerCache.isEnabled() || message == null) return null;
+        String constraint = QueryPreprocessor.lengthConstraintKey(message);
+        if (constraint == null) {
+            logger.debug("[ANSWER CACHE] Skipping cache for a length request that could not be parsed: {}", message);
+            return null;
+        }
+        String variant = constraint.isEmpty() ? callKind : callKind + ':' + constraint;
+        return answerCache.lookup(responseMode, variant, message);
+    }
+
+    /**
+     * Runs the streaming pipeline for the request's mode.
+     * @return the generated answer if it is worth caching, or null (no context, errors)
+     */
+    private String streamPipeline(ChatRequest request, String responseMode, RagStatusListener statusListener, Consumer<String> chunkConsumer) {
+        String cacheableAnswer = null;
         try {
             if (statusListener != null) statusListener.onStatus("Received stream request", 10);
             logger.info("[{}] Job stream started for message: {}", Instant.now(), request.getMessage());
 
             if (request.isUsePureLlm()) {
-                if (statusListener != null) statusListener.onStatus("Calling LLM (no RAG) for clean response", 30);
+                if (statusListener != null) statusListener.onStatus("Calling LLM (no RAG), streaming response", 30);
                 logger.debug("Using Pure LLM mode for stream: {}", request.getMessage());
-                logger.info("[{}] LLM (Pure) call started", Instant.now());
-                
-                                                // Use non-streaming call with direct prompting for quality
-                String llmResponse;
-                try {
-                    llmResponse = CompletableFuture.supplyAsync(() -> {
-                        return chatClient.prompt()
-                            .system("You are a helpful AI assistant. Answer the user's question directly and clearly using your knowledge. Always end your response with '**<span style=\"color: #007bff; font-weight: bold;\">(Pure LLM)</span>**'.")
-                            .user(request.getMessage())
-                            .call()
-                            .content();
-                    }, this.timeoutExecutor)
-                    .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                    logger.info("[{}] LLM (Pure) call finished", Instant.now());
-                } catch (TimeoutException te) {
-                    logger.error("LLM (Pure) call timed out after {}s", TIMEOUT_SECONDS);
-                    throw new RuntimeException("LLM (Pure) call timed out");
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("LLM (Pure) call failed: {}", e.getMessage(), e);
-                    throw new RuntimeException("LLM (Pure) call failed: " + e.getMessage());
-                }
-                
-                // Extract clean answer and simulate streaming
-                String cleanAnswer = extractAnswer(llmResponse);
-                                    String responseWithMode = cleanAnswer;
-                if (statusListener != null) statusListener.onStatus("Streaming clean response", 90);
-                simulateStreamingResponse(responseWithMode, chunkConsumer);
+                String systemPrompt = "You are a helpful AI assistant. Answer the user's question directly and clearly using your knowledge. Always end your response with '**<span style=\"color: #007bff; font-weight: bold;\">(Pure LLM)</span>**'.";
+                cacheableAnswer = streamLlmAnswer("Pure", null, systemPrompt, request.getMessage(), statusListener, chunkConsumer);
+                reportDegradations(statusListener, 95);
                 if (statusListener != null) statusListener.onStatus("LLM stream complete", 100);
 
             } else             if (request.isIncludeLlmFallback()) { // RAG + LLM Fallback
                 if (statusListener != null) statusListener.onStatus("Querying database for relevant context (stream)", 20);
                 
                 // Apply query expansion if enabled
-                String searchQuery = request.getMessage();
+                List<String> searchQueries = List.of(request.getMessage());
                 if (queryExpansionController.isEnabled()) {
                     if (statusListener != null) statusListener.onStatus("Expanding query for better retrieval", 15);
-                    searchQuery = expandQueryWithLLM(request.getMessage());
+                    searchQueries = expandQueryWithLLM(request.getMessage(), "RAG+FALLBACK STREAM");
+                    reportDegradations(statusListener, 15);
                 }
                 
-                logger.debug("Checking for context (threshold {}) for stream message: {}", similarityThreshold, searchQuery);
-                Query query = new Query(searchQuery);
+                logger.debug("Checking for context (threshold {}) for stream message: {}", similarityThreshold, searchQueries);
                 List<Document> docs;
+                long retrievalBudgetMillis = TimeUnit.NANOSECONDS.toMillis(retrievalBudgetNanos());
                 try {
                     logger.info("[{}] Vector DB (RAG+Fallback Stream) call started", Instant.now());
-                    docs = CompletableFuture.supplyAsync(() -> documentRetriever.retrieve(query), this.timeoutExecutor)
-                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    docs = retrieveForQueries(null, searchQueries, "RAG+FALLBACK STREAM");
                     logger.info("[{}] Vector DB (RAG+Fallback Stream) call finished", Instant.now());
                 } catch (TimeoutException te) {
-                    logger.error("Vector DB (RAG+Fallback Stream) call timed out after {}s", TIMEOUT_SECONDS);
+                    logger.error("Vector DB (RAG+Fallback Stream) call timed out after {} ms", retrievalBudgetMillis);
                     throw new RuntimeException("Vector DB (RAG+Fallback Stream) call timed out");
                 } catch (InterruptedException | ExecutionException e) {
                     logger.error("Vector DB (RAG+Fallback Stream) call failed: {}", e.getMessage(), e);
                     throw new RuntimeException("Vector DB (RAG+Fallback Stream) call failed: " + e.getMessage());
                 }
                 logger.info("Vector DB query (RAG+Fallback Stream) returned {} documents.", docs != null ? docs.size() : 0);
+                reportDegradations(statusListener, 40);
                 if (statusListener != null) statusListener.onStatus("Vector DB query complete: " + (docs != null ? docs.size() : 0) + " results", 40);
 
-                String contextText = formatDocumentsToContext(docs);
+                String contextText = formatDocumentsToContext(docs, "RAG+FALLBACK STREAM");
 
                 // Use token-aware prompt validation
                 String systemPrompt = "You are a helpful AI assistant. Use the provided context and expand on it using your vast knowledge to answer the question thoroughly with supporting information. Always end your response with '**<span style=\"color: #007bff; font-weight: bold;\">(RAG + LLM Fallback)</span>**'.";
@@ -156,85 +275,52 @@ public class RagService implements DisposableBean {
                 String llmPrompt = validateAndAdjustPrompt(contextText, request.getMessage(), systemPrompt);
                 
                 if (contextText != null && !contextText.isEmpty()) {
-                    if (statusListener != null) statusListener.onStatus("Calling LLM with context for clean response", 70);
+                    if (statusListener != null) statusListener.onStatus("Calling LLM with context, streaming response", 70);
                 } else {
-                    if (statusListener != null) statusListener.onStatus("Calling LLM without context for clean response", 70);
+                    if (statusListener != null) statusListener.onStatus("Calling LLM without context, streaming response", 70);
                 }
                 logger.debug("LLM Prompt (RAG+Fallback Mode): User: [{}]", llmPrompt);
-                logger.info("[{}] LLM (RAG+Fallback) call started", Instant.now());
-
-                                // Use non-streaming call with direct prompting for quality
-                String llmResponse;
-                try {
-                    llmResponse = CompletableFuture.supplyAsync(() -> {
-                        return chatClient.prompt()
-                            .system("You are a helpful AI assistant. Use the provided context and expand on it using your vast knowledge to answer the question thoroughly with supporting information. Always end your response with '**<span style=\"color: #007bff; font-weight: bold;\">(RAG + LLM Fallback)</span>**'.")
-                            .user(llmPrompt)
-                            .call()
-                            .content();
-                    }, this.timeoutExecutor)
-                    .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                    logger.info("[{}] LLM (RAG+Fallback) call finished", Instant.now());
-                } catch (TimeoutException te) {
-                    logger.error("LLM (RAG+Fallback) call timed out after {}s", TIMEOUT_SECONDS);
-                    throw new RuntimeException("LLM (RAG+Fallback) call timed out");
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("LLM (RAG+Fallback) call failed: {}", e.getMessage(), e);
-                    throw new RuntimeException("LLM (RAG+Fallback) call failed: " + e.getMessage());
-                }
-                
-                // Extract clean answer and simulate streaming
-                String cleanAnswer = extractAnswer(llmResponse);
-                String responseWithMode = cleanAnswer;
-                if (statusListener != null) statusListener.onStatus("Streaming clean response", 90);
-                simulateStreamingResponse(responseWithMode, chunkConsumer);
+                cacheableAnswer = streamLlmAnswer("RAG+Fallback", null, systemPrompt, llmPrompt, statusListener, chunkConsumer);
+                reportDegradations(statusListener, 95);
                 if (statusListener != null) statusListener.onStatus("LLM stream complete", 100);
 
             } else { // RAG Only (implicitly, as Raw RAG is handled by JobController directly for non-streaming)
                 logger.debug("RAG Only mode for stream message: {}", request.getMessage());
                 if (statusListener != null) statusListener.onStatus("Sending Prompt to LLM for Pre-Processing (stream)", 15);
                 String originalPrompt = request.getMessage();
-                String cleanedPrompt = null;
-                String lengthConstraint = null;
-                try {
-                    logger.info("[{}] LLM (Query Cleaning - RAG ONLY STREAM) call starting via CompletableFuture", Instant.now());
-                    CleanedQueryResult cleanedResult = CompletableFuture.supplyAsync(() -> cleanQueryWithLlmExtractConstraint(originalPrompt, "RAG ONLY STREAM"), this.timeoutExecutor)
-                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                    cleanedPrompt = cleanedResult.cleanedQuery;
-                    lengthConstraint = cleanedResult.lengthConstraint;
-                    logger.info("[{}] LLM (Query Cleaning - RAG ONLY STREAM) call finished. Cleaned prompt: '{}'", Instant.now(), cleanedPrompt);
-                } catch (TimeoutException te) {
-                    logger.error("LLM Pre-Processing (RAG Only Stream) call timed out after {}s", TIMEOUT_SECONDS);
-                    throw new RuntimeException("LLM Pre-Processing (RAG Only Stream) call timed out");
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("LLM Pre-Processing (RAG Only Stream) call failed: {}", e.getMessage(), e);
-                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
-                    throw new RuntimeException("LLM Pre-Processing (RAG Only Stream) call failed: " + e.getMessage());
-                }
+                SpeculativeRetrieval speculative = startSpeculativeRetrieval(originalPrompt, "RAG ONLY STREAM");
+                // Bounded by the rewrite timeout and the request deadline; falls back to the original query
+                logger.info("[{}] LLM (Query Cleaning - RAG ONLY STREAM) call starting", Instant.now());
+                CleanedQueryResult cleanedResult = cleanQueryWithLlmExtractConstraint(originalPrompt, "RAG ONLY STREAM");
+                String cleanedPrompt = cleanedResult.cleanedQuery;
+                String lengthConstraint = cleanedResult.lengthConstraint;
+                logger.info("[{}] LLM (Query Cleaning - RAG ONLY STREAM) call finished. Cleaned prompt: '{}'", Instant.now(), cleanedPrompt);
+                reportDegradations(statusListener, 18);
                 if (statusListener != null) statusListener.onStatus("Pre-Processed Query returned (stream)", 18);
                 if (statusListener != null) statusListener.onStatus("Querying vector DB for relevant context (stream)", 20);
 
                 Query query = new Query(cleanedPrompt);
                 List<Document> docs;
+                long retrievalBudgetMillis = TimeUnit.NANOSECONDS.toMillis(retrievalBudgetNanos());
                 try {
                     logger.info("[{}] Vector DB (RAG Only Stream) call started", Instant.now());
-                    docs = CompletableFuture.supplyAsync(() -> documentRetriever.retrieve(query), this.timeoutExecutor)
-                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    docs = retrieveForQueries(speculative, List.of(query.text()), "RAG ONLY STREAM");
                     logger.info("[{}] Vector DB (RAG Only Stream) call finished", Instant.now());
                 } catch (TimeoutException te) {
-                    logger.error("Vector DB (RAG Only Stream) call timed out after {}s", TIMEOUT_SECONDS);
+                    logger.error("Vector DB (RAG Only Stream) call timed out after {} ms", retrievalBudgetMillis);
                     throw new RuntimeException("Vector DB (RAG Only Stream) call timed out");
                 } catch (InterruptedException | ExecutionException e) {
                     logger.error("Vector DB (RAG Only Stream) call failed: {}", e.getMessage(), e);
                     throw new RuntimeException("Vector DB (RAG Only Stream) call failed: " + e.getMessage());
                 }
                 logger.info("Vector DB query (RAG Only Stream) returned {} documents.", docs != null ? docs.size() : 0);
+                reportDegradations(statusListener, 40);
                 if (statusListener != null) statusListener.onStatus("Vector DB query complete: " + (docs != null ? docs.size() : 0) + " results", 40);
 
-                String contextText = formatDocumentsToContext(docs);
+                String contextText = formatDocumentsToContext(docs, "RAG ONLY STREAM");
 
                 if (contextText != null && !contextText.isEmpty()) {
-                    if (statusListener != null) statusListener.onStatus("Calling LLM to analyze context (non-streaming for clean output)", 70);
+                    if (statusListener != null) statusListener.onStatus("Calling LLM to analyze context, streaming response", 70);
                     
                     // Use token-aware prompt validation for RAG Only mode
                     String systemPrompt = "You are a helpful AI assistant. Answer the user's question using ONLY the information provided. Restate the information in a clear and concise answer. If the information doesn't contain enough details, simply state that the information is not available. IMPORTANT: You MUST end your response with exactly: **<span style=\"color: #007bff; font-weight: bold;\">(RAG Only)</span>**";
@@ -249,38 +335,17 @@ public class RagService implements DisposableBean {
                         llmSummaryPrompt = basePrompt + "\n\nAnswer:";
                     }
                     
-                    logger.info("LLM Prompt (RAG Only Non-Streaming) [first 500 chars]: {}", llmSummaryPrompt.substring(0, Math.min(500, llmSummaryPrompt.length())));
-                    logger.info("[{}] LLM (RAG Only Non-Streaming) call started", Instant.now());
+                    logger.info("LLM Prompt (RAG Only Stream) [first 500 chars]: {}", llmSummaryPrompt.substring(0, Math.min(500, llmSummaryPrompt.length())));
 
                     try {
-                        // Use non-streaming to get complete response, then clean it
-                        String fullResponse = CompletableFuture.supplyAsync(() -> {
-                            String ragOnlySystemPrompt = "You are a helpful AI assistant. Answer the user's question using ONLY the information provided. Restate the information in a clear and concise answer. If the information doesn't contain enough details, simply state that the information is not available. IMPORTANT: You MUST end your response with exactly: **<span style=\"color: #007bff; font-weight: bold;\">(RAG Only)</span>**";
-                            
-                            return chatClient.prompt()
-                                .system(ragOnlySystemPrompt)
-                                .user(llmSummaryPrompt).call().content();
-                        }, this.timeoutExecutor)
-                            .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                        
-                        logger.info("[{}] LLM (RAG Only Non-Streaming) call finished", Instant.now());
-                        
-                        // Clean the response to remove any reasoning that slipped through
-                        String cleanedResponse = extractAnswer(fullResponse);
-                        logger.info("RAG Only cleaned response: {}", cleanedResponse);
-                        
-                        // Simulate streaming to maintain consistent UX with other modes
-                        simulateStreamingResponse(cleanedResponse, chunkConsumer);
+                        cacheableAnswer = streamLlmAnswer("RAG Only", lengthConstraint, systemPrompt, llmSummaryPrompt, statusListener, chunkConsumer);
+                        reportDegradations(statusListener, 95);
                         if (statusListener != null) statusListener.onStatus("COMPLETED", 100);
-                        
-                    } catch (TimeoutException te) {
-                        logger.error("LLM (RAG Only Non-Streaming) call timed out after {}s", TIMEOUT_SECONDS);
-                        chunkConsumer.accept("Request timed out while processing with RAG context.");
-                        if (statusListener != null) statusListener.onStatus("LLM timeout error", 100);
                     } catch (Exception e) {
-                        logger.error("Error during LLM call (RAG Only Non-Streaming): {}", e.getMessage(), e);
+                        logger.error("Error during LLM stream (RAG Only): {}", e.getMessage(), e);
+                        cacheableAnswer = null;
                         chunkConsumer.accept("Error occurred while processing with RAG context.");
-                        if (statusListener != null) statusListener.onStatus("LLM error: " + e.getMessage(), 100);
+                        if (statusListener != null) statusListener.onStatus("LLM stream error: " + e.getMessage(), 100);
                     }
                 } else {
                     logger.info("No context found for RAG Only stream. Completing.");
@@ -297,6 +362,297 @@ public class RagService implements DisposableBean {
             } catch (Exception ex) {
                 logger.error("Failed to send error chunk to consumer after outer error", ex);
             }
+            return null;
+        }
+        return cacheableAnswer;
+    }
+
+    /** How one answer stream ended. */
+    private enum StreamEnd { COMPLETE, BUDGET_EXHAUSTED, DEADLINE }
+
+    /**
+     * Streams the LLM answer to the chunk consumer as tokens arrive, stripping &lt;think&gt; blocks on the fly.
+     * Blocks the calling thread until the stream ends; fails if no token arrives within the answer timeout.
+     * When the reasoning uses the whole max-tokens budget before any answer text, the call is retried
+     * once at the answer client's ceiling, capped by the room the prompt leaves; if that is not enough
+     * either, the truncation is reported.
+     * @return the answer text that was forwarded to the consumer, or null when it is not worth caching
+     */
+    private String streamLlmAnswer(String modeTag, String lengthConstraint, String systemPrompt, String userPrompt,
+                                   RagStatusListener statusListener, Consumer<String> chunkConsumer) {
+        long startNanos = System.nanoTime();
+        int maxTokens = answerTokenBudget.budgetFor(modeTag, lengthConstraint, systemPrompt, userPrompt);
+        StringBuilder answer = new StringBuilder();
+        Consumer<String> visible = chunk -> {
+            if (answer.length() == 0) {
+                long ttftMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                logger.info("[{}] LLM ({}) time to first answer token: {} ms", Instant.now(), modeTag, ttftMillis);
+                if (statusListener != null) statusListener.onStatus("Streaming response (first token after " + ttftMillis + " ms)", 80);
+            }
+            answer.append(chunk);
+            chunkConsumer.accept(chunk);
+        };
+
+        ThinkTagFilter filter = new ThinkTagFilter(visible);
+        StreamEnd end = streamAnswerOnce(modeTag, systemPrompt, userPrompt, maxTokens, filter);
+        int ceiling = answerTokenBudget.ceilingFor(systemPrompt, userPrompt);
+        if (end == StreamEnd.BUDGET_EXHAUSTED && !filter.hasAnswer() && maxTokens < ceiling) {
+            logger.warn("LLM ({}) reasoning used the whole {}-token budget, retrying at {} tokens", modeTag, maxTokens, ceiling);
+            if (statusListener != null) statusListener.onStatus("Reasoning used the whole token budget, retrying with a larger one", 75);
+            filter = new ThinkTagFilter(visible);
+            end = streamAnswerOnce(modeTag, systemPrompt, userPrompt, ceiling, filter);
+        }
+
+        String result = answer.toString();
+        if (end == StreamEnd.DEADLINE) {
+            RequestContext.degraded(PipelineMetrics.LLM, "answer cut off at the request deadline");
+            logger.warn("LLM ({}) stream cut off at the request deadline after {} answer chars", modeTag, answer.length());
+            chunkConsumer.accept(filter.hasAnswer() ? "\n\n(Answer cut off: the request time limit was reached.)" : "(No answer: the request time limit was reached.)");
+            result = null; // a cut-off answer is not worth caching
+        } else if (!filter.hasAnswer() && end == StreamEnd.BUDGET_EXHAUSTED) {
+            RequestContext.degraded(PipelineMetrics.LLM, "reasoning used the whole max-tokens budget");
+            logger.warn("LLM ({}) produced no answer: reasoning used the whole max-tokens budget", modeTag);
+            chunkConsumer.accept("(No answer: the model's reasoning used the whole response token budget.)");
+            result = null;
+        } else if (!filter.hasAnswer()) {
+            logger.warn("LLM ({}) stream ended without answer text", modeTag);
+            chunkConsumer.accept("The provided context does not contain information to answer this question.");
+            result = null; // synthetic, not the model's answer
+        }
+        logger.info("[{}] LLM ({}) stream finished in {} ms, {} answer chars", Instant.now(), modeTag,
+                   TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), answer.length());
+        return result;
+    }
+
+    /**
+     * One answer stream at the given max-tokens, feeding raw chunks through the filter. Holds an LLM
+     * admission permit for the length of the stream and ends it at the request deadline.
+     */
+    private StreamEnd streamAnswerOnce(String modeTag, String systemPrompt, String userPrompt, int maxTokens,
+                                       ThinkTagFilter filter) {
+        long startNanos = System.nanoTime();
+        StringBuilder generated = new StringBuilder(); // raw output including reasoning, for token accounting
+        long[] firstChunkNanos = {0L}; // end of the llm stage, start of the streaming stage
+        RequestContext.throwIfCancelled();
+        LlmAdmissionGate.Permit permit;
+        try {
+            permit = llmAdmissionGate.acquire(PipelineMetrics.LLM, RequestContext.remainingNanos(Long.MAX_VALUE));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("LLM (" + modeTag + ") interrupted while waiting for admission");
+        } catch (TimeoutException e) {
+            pipelineMetrics.record(PipelineMetrics.LLM, modeTag, PipelineMetrics.TIMEOUT, System.nanoTime() - startNanos);
+            logger.error("LLM ({}) {}", modeTag, e.getMessage());
+            throw new RuntimeException("LLM (" + modeTag + ") stream timed out waiting for admission");
+        }
+        RequestContext.llmCallStarted();
+
+        logger.info("[{}] LLM ({}) stream started (max-tokens {})", Instant.now(), modeTag, maxTokens);
+        java.util.concurrent.atomic.AtomicBoolean truncated = new java.util.concurrent.atomic.AtomicBoolean();
+        java.util.concurrent.atomic.AtomicBoolean hitLength = new java.util.concurrent.atomic.AtomicBoolean();
+        try {
+            long deadlineNanos = RequestContext.remainingNanos(Long.MAX_VALUE);
+            if (deadlineNanos <= 0L) {
+                throw Exceptions.propagate(new TimeoutException("request deadline reached before the answer started"));
+            }
+            Flux<org.springframework.ai.chat.model.ChatResponse> stream = chatClient.prompt()
+                .system(systemPrompt)
+                .user(userPrompt)
+                .options(answerTokenBudget.options(maxTokens))
+                .stream()
+                .chatResponse()
+                .timeout(Duration.ofSeconds(answerTimeoutSeconds));
+            if (deadlineNanos < Long.MAX_VALUE) {
+                // End the answer at the request deadline; cancelling the subscription aborts the model HTTP call
+                stream = stream.takeUntilOther(Mono.delay(Duration.ofNanos(deadlineNanos)).doOnNext(tick -> truncated.set(true)));
+            }
+            stream
+                .doOnNext(response -> {
+                    if (isLengthFinish(response)) hitLength.set(true);
+                })
+                .mapNotNull(RagService::chunkText)
+                .doOnNext(chunk -> {
+                    if (firstChunkNanos[0] == 0L) {
+                        firstChunkNanos[0] = System.nanoTime();
+                        pipelineMetrics.record(PipelineMetrics.LLM, modeTag, PipelineMetrics.OK, firstChunkNanos[0] - startNanos);
+                    }
+                })
+                .doOnNext(generated::append)
+                .doOnNext(filter::accept)
+                .blockLast();
+        } catch (RuntimeException e) {
+            Throwable cause = Exceptions.unwrap(e);
+            String outcome = PipelineMetrics.outcomeOf(cause);
+            if (firstChunkNanos[0] == 0L) {
+                pipelineMetrics.record(PipelineMetrics.LLM, modeTag, outcome, System.nanoTime() - startNanos);
+            } else {
+                pipelineMetrics.record(PipelineMetrics.STREAMING, modeTag, outcome, System.nanoTime() - firstChunkNanos[0]);
+            }
+            RequestContext.throwIfCancelled(); // interrupted by cancellation: blockLast has disposed the model call
+            if (PipelineMetrics.TIMEOUT.equals(outcome)) {
+                logger.error("LLM ({}) stream stalled for {}s", modeTag, answerTimeoutSeconds);
+                throw new RuntimeException("LLM (" + modeTag + ") stream timed out");
+            }
+            logger.error("LLM ({}) stream failed: {}", modeTag, cause.getMessage(), cause);
+            throw new RuntimeException("LLM (" + modeTag + ") stream failed: " + cause.getMessage());
+        } finally {
+            permit.release();
+            RequestContext.llmCallFinished();
+        }
+        boolean exhausted = false;
+        if (!truncated.get()) {
+            exhausted = answerTokenBudget.recordUsage(modeTag, maxTokens, generated.toString()) || hitLength.get();
+        }
+        filter.flush();
+
+        // Time-to-first-token goes to the llm stage, the rest of the stream to the streaming stage
+        long endNanos = System.nanoTime();
+        String outcome = truncated.get() ? PipelineMetrics.TIMEOUT : PipelineMetrics.OK;
+        if (firstChunkNanos[0] == 0L) {
+            pipelineMetrics.record(PipelineMetrics.LLM, modeTag, outcome, endNanos - startNanos);
+        } else {
+            pipelineMetrics.record(PipelineMetrics.STREAMING, modeTag, outcome, endNanos - firstChunkNanos[0]);
+        }
+        if (truncated.get()) return StreamEnd.DEADLINE;
+        return exhausted ? StreamEnd.BUDGET_EXHAUSTED : StreamEnd.COMPLETE;
+    }
+
+    private static String chunkText(org.springframework.ai.chat.model.ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) return null;
+        return response.getResult().getOutput().getText();
+    }
+
+    /** True when the model stopped because it hit max-tokens ("length" on OpenAI/Ollama, "max_tokens" on Anthropic). */
+    private static boolean isLengthFinish(org.springframework.ai.chat.model.ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getMetadata() == null) return false;
+        String reason = response.getResult().getMetadata().getFinishReason();
+        return "length".equalsIgnoreCase(reason) || "max_tokens".equalsIgnoreCase(reason);
+    }
+
+    /**
+     * Blocking answer call with a per-request max-tokens budget. Retried once at the answer client's
+     * ceiling when the reasoning used the whole budget before any answer text; fails if it still does,
+     * so no empty answer is returned or cached.
+     */
+    private String callAnswer(String modeTag, String lengthConstraint, String systemPrompt, String userPrompt)
+            throws TimeoutException, InterruptedException, ExecutionException {
+        int maxTokens = answerTokenBudget.budgetFor(modeTag, lengthConstraint, systemPrompt, userPrompt);
+        String answer = callAnswerOnce(modeTag, systemPrompt, userPrompt, maxTokens);
+        boolean exhausted = answerTokenBudget.recordUsage(modeTag, maxTokens, answer);
+        int ceiling = answerTokenBudget.ceilingFor(systemPrompt, userPrompt);
+        if (exhausted && !hasVisibleAnswer(answer) && maxTokens < ceiling) {
+            logger.warn("LLM ({}) reasoning used the whole {}-token budget, retrying at {} tokens", modeTag, maxTokens, ceiling);
+            maxTokens = ceiling;
+            answer = callAnswerOnce(modeTag, systemPrompt, userPrompt, maxTokens);
+            exhausted = answerTokenBudget.recordUsage(modeTag, maxTokens, answer);
+        }
+        if (exhausted && !hasVisibleAnswer(answer)) {
+            RequestContext.degraded(PipelineMetrics.LLM, "reasoning used the whole max-tokens budget");
+            throw new IllegalStateException("LLM (" + modeTag + ") reasoning used the whole max-tokens budget");
+        }
+        return answer;
+    }
+
+    private String callAnswerOnce(String modeTag, String systemPrompt, String userPrompt, int maxTokens)
+            throws TimeoutException, InterruptedException, ExecutionException {
+        return callLlmStage(PipelineMetrics.LLM, modeTag, () -> chatClient.prompt()
+            .system(systemPrompt)
+            .user(userPrompt)
+            .options(answerTokenBudget.options(maxTokens))
+            .call()
+            .content(), answerTimeoutSeconds);
+    }
+
+    /** True when the reply has text outside its reasoning; an unterminated think block counts as reasoning. */
+    private static boolean hasVisibleAnswer(String reply) {
+        if (reply == null) return false;
+        String text = reply.replaceAll("(?s)<think>.*?(</think>|$)", "");
+        return !text.isBlank();
+    }
+
+    /**
+     * Runs one LLM call on the pipeline executor and records its latency under the given
+     * {@link PipelineMetrics} stage. The call first waits for admission ({@link LlmAdmissionGate}), no
+     * longer than the request has left; its permit is held until the call really ends, even when the
+     * stage has already timed out, so the limit reflects the load on the model endpoint. The timeout
+     * is the stage's own, capped by the request deadline (see {@link #stageBudgetNanos(String, long)}).
+     */
+    private <T> T callLlmStage(String stage, String modeTag, Callable<T> task, long timeoutSeconds)
+            throws TimeoutException, InterruptedException, ExecutionException {
+        RequestContext.throwIfCancelled();
+        long start = System.nanoTime();
+        String outcome = PipelineMetrics.ERROR;
+        LlmAdmissionGate.Permit permit = null;
+        java.util.concurrent.atomic.AtomicBoolean started = new java.util.concurrent.atomic.AtomicBoolean();
+        try {
+            // Queue no longer than the request has left; the call gets what remains after admission
+            permit = llmAdmissionGate.acquire(stage, RequestContext.remainingNanos(Long.MAX_VALUE));
+            RequestContext.llmCallStarted();
+            long budgetNanos = stageBudgetNanos(stage, timeoutSeconds);
+            if (budgetNanos <= 0L) throw new TimeoutException("Request deadline reached before the " + stage + " call");
+            LlmAdmissionGate.Permit admitted = permit;
+            T result = pipelineExecutor.call(() -> {
+                started.set(true);
+                try {
+                    return task.call();
+                } finally {
+                    admitted.release();
+                    RequestContext.llmCallFinished();
+                }
+            }, budgetNanos, TimeUnit.NANOSECONDS);
+            outcome = PipelineMetrics.OK;
+            return result;
+        } catch (TimeoutException te) {
+            outcome = PipelineMetrics.TIMEOUT;
+            throw te;
+        } finally {
+            if (permit != null && !started.get()) { // cancelled before it ran
+                permit.release();
+                RequestContext.llmCallFinished();
+            }
+            pipelineMetrics.record(stage, modeTag, outcome, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Time a stage may take: its own timeout, capped by what is left before the request deadline.
+     * Query cleaning and expansion also leave {@code ragui.request.answer-reserve-seconds} for the
+     * answer, which gets all the remaining time. Zero or less when nothing is left.
+     */
+    private long stageBudgetNanos(String stage, long timeoutSeconds) {
+        if (PipelineMetrics.LLM.equals(stage)) return requiredStageBudgetNanos(timeoutSeconds);
+        return optionalStageBudgetNanos(TimeUnit.SECONDS.toNanos(timeoutSeconds));
+    }
+
+    private long requiredStageBudgetNanos(long timeoutSeconds) {
+        return RequestContext.remainingNanos(TimeUnit.SECONDS.toNanos(timeoutSeconds));
+    }
+
+    /** Time one vector search (or the wait for a speculative one) may take: {@code ragui.retrieval.timeout-seconds}, capped by the request deadline. */
+    private long retrievalBudgetNanos() {
+        return requiredStageBudgetNanos(retrievalTimeoutSeconds);
+    }
+
+    private long optionalStageBudgetNanos(long timeoutNanos) {
+        long reserveNanos = TimeUnit.SECONDS.toNanos(answerReserveSeconds);
+        return RequestContext.remainingNanos(timeoutNanos + reserveNanos) - reserveNanos;
+    }
+
+    /** Whether an optional LLM stage still fits the request budget; records it as skipped when it does not. */
+    private boolean fitsBudget(String stage, long timeoutSeconds, String modeTag) {
+        if (stageBudgetNanos(stage, timeoutSeconds) >= MIN_OPTIONAL_STAGE_NANOS) return true;
+        String left = String.format("%.1fs", Math.max(0L, RequestContext.remainingNanos(Long.MAX_VALUE)) / 1_000_000_000.0);
+        RequestContext.degraded(stage, "skipped, " + left + " left of the request budget");
+        logger.warn("[{}] Skipping {}: {} left of the request budget, {}s reserved for the answer", modeTag, stage, left, answerReserveSeconds);
+        return false;
+    }
+
+    /** Reports the stages skipped or cut short since the last report as status events. */
+    private void reportDegradations(RagStatusListener statusListener, int progress) {
+        List<String> degradations = RequestContext.takeDegradations();
+        if (statusListener == null) return;
+        for (String degradation : degradations) {
+            statusListener.onStatus("Degraded " + degradation, progress);
         }
     }
 
@@ -307,19 +663,21 @@ public class RagService implements DisposableBean {
         String responseMode = determineResponseMode(request);
         logger.info("Processing non-streaming request - Mode: {}, Message: {}", responseMode, request.getMessage());
 
+        SemanticAnswerCache.Lookup cached = lookupAnswer("chat", responseMode, request.getMessage());
+        if (cached != null && cached.isHit()) {
+            if (statusListener != null) statusListener.onStatus(String.format("Answer served from semantic cache (similarity %.3f)", cached.similarity), 90);
+            if (statusListener != null) statusListener.onStatus("COMPLETED", 100);
+            return new ChatResponse.Builder().answer(cached.answer).source("CACHE").build();
+        }
+
         try {
             if (statusListener != null) statusListener.onStatus("Received request", 10);
 
             if (request.isUsePureLlm()) {
                 if (statusListener != null) statusListener.onStatus("Calling LLM (no RAG)", 30);
-                String llmAnswer = CompletableFuture.supplyAsync(() -> {
-                    String pureLlmSystemPrompt = "You are a helpful AI assistant. Answer the user's question directly and clearly using your knowledge. Always end your response with '**<span style=\"color: #007bff; font-weight: bold;\">(Pure LLM)</span>**'.";
-                    
-                    return chatClient.prompt()
-                        .system(pureLlmSystemPrompt)
-                        .user(request.getMessage()).call().content();
-                }, this.timeoutExecutor)
-                    .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                String pureLlmSystemPrompt = "You are a helpful AI assistant. Answer the user's question directly and clearly using your knowledge. Always end your response with '**<span style=\"color: #007bff; font-weight: bold;\">(Pure LLM)</span>**'.";
+                String llmAnswer = callAnswer("Pure", null, pureLlmSystemPrompt, request.getMessage());
+                reportDegradations(statusListener, 90);
                 if (statusListener != null) statusListener.onStatus("LLM response received", 90);
                 answer = "LLM Answer:\n" + llmAnswer;
                 source = "LLM";
@@ -327,9 +685,9 @@ public class RagService implements DisposableBean {
             } else if (request.isIncludeLlmFallback()) { // RAG + LLM Fallback
                 if (statusListener != null) statusListener.onStatus("Querying database for relevant context", 20);
                 Query query = new Query(request.getMessage());
-                List<Document> docs = CompletableFuture.supplyAsync(() -> documentRetriever.retrieve(query), this.timeoutExecutor)
-                    .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                String contextText = formatDocumentsToContext(docs);
+                List<Document> docs = retrieveForQueries(null, List.of(query.text()), "RAG+Fallback");
+                reportDegradations(statusListener, 40);
+                String contextText = formatDocumentsToContext(docs, "RAG+Fallback");
                 
                 // Use token-aware prompt validation
                 String systemPrompt = "Answer the question using the provided context and your own knowledge. " +
@@ -340,32 +698,29 @@ public class RagService implements DisposableBean {
                 String sourceCode = (contextText != null && !contextText.isEmpty()) ? "RAG context + LLM" : "LLM only (no context found)";
                 
                 if (statusListener != null) statusListener.onStatus("Calling LLM with prompt", 70);
-                String llmAnswer = CompletableFuture.supplyAsync(() -> chatClient.prompt()
-                    .system("You are a helpful AI assistant. Use the provided context and expand on it using your vast knowledge to answer the question thoroughly with supporting information. Always end your response with '**<span style=\"color: #007bff; font-weight: bold;\">(RAG + LLM Fallback)</span>**'.")
-                    .user(llmPrompt).call().content(), this.timeoutExecutor)
-                    .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                String llmAnswer = callAnswer("RAG+Fallback", null,
+                    "You are a helpful AI assistant. Use the provided context and expand on it using your vast knowledge to answer the question thoroughly with supporting information. Always end your response with '**<span style=\"color: #007bff; font-weight: bold;\">(RAG + LLM Fallback)</span>**'.",
+                    llmPrompt);
                 if (statusListener != null) statusListener.onStatus("LLM response received", 90);
                 answer = llmAnswer;
                 source = "LLM_FALLBACK";
 
             } else { // RAG Only
                 if (statusListener != null) statusListener.onStatus("Sending Prompt to LLM for Pre-Processing", 15);
-                CleanedQueryResult cleanedResult = cleanQueryWithLlmExtractConstraint(request.getMessage(), "RAG ONLY");
-                String cleanedPrompt = cleanedResult.cleanedQuery;
-                String lengthConstraint = cleanedResult.lengthConstraint;
-                
-                // Apply query expansion if enabled
-                if (queryExpansionController.isEnabled()) {
-                    if (statusListener != null) statusListener.onStatus("Expanding query for better retrieval", 18);
-                    cleanedPrompt = expandQueryWithLLM(cleanedPrompt);
-                }
+                SpeculativeRetrieval speculative = startSpeculativeRetrieval(request.getMessage(), "RAG ONLY");
+                // With expansion enabled, cleaning and expansion share one LLM call
+                PreprocessedQuery preprocessed = queryExpansionController.isEnabled()
+                    ? cleanAndExpandQuery(request.getMessage(), "RAG ONLY")
+                    : PreprocessedQuery.of(cleanQueryWithLlmExtractConstraint(request.getMessage(), "RAG ONLY"));
+                String cleanedPrompt = preprocessed.cleanedQuery();
+                String lengthConstraint = preprocessed.lengthConstraint();
+                reportDegradations(statusListener, 18);
                 
                 if (statusListener != null) statusListener.onStatus("Querying vector DB for relevant context", 20);
-                Query query = new Query(cleanedPrompt);
-                List<Document> docs = CompletableFuture.supplyAsync(() -> documentRetriever.retrieve(query), this.timeoutExecutor)
-                    .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                List<Document> docs = retrieveForQueries(speculative, preprocessed.searchQueries(), "RAG ONLY");
+                reportDegradations(statusListener, 40);
                 if (statusListener != null) statusListener.onStatus("Vector DB query complete: " + docs.size() + " results", 40);
-                String contextText = formatDocumentsToContext(docs);
+                String contextText = formatDocumentsToContext(docs, "RAG ONLY");
                 if (contextText != null && !contextText.isEmpty()) {
                     if (statusListener != null) statusListener.onStatus("Calling LLM to summarize context", 70);
                     String llmSummaryPromptBase = "Context:\n" + contextText + "\n\nQuestion:\n" + cleanedPrompt + "\n\nAnswer:";
@@ -376,10 +731,9 @@ public class RagService implements DisposableBean {
                     } else {
                         llmSummaryPrompt = llmSummaryPromptBase;
                     }
-                    String llmSummary = CompletableFuture.supplyAsync(() -> chatClient.prompt()
-                                                        .system("You are a helpful AI assistant. Answer the user's question using ONLY the information provided. Restate the information in a clear and concise answer. If the information doesn't contain enough details, simply state that the information is not available. IMPORTANT: You MUST end your response with exactly: **<span style=\"color: #007bff; font-weight: bold;\">(RAG Only)</span>**")
-                        .user(llmSummaryPrompt).call().content(), this.timeoutExecutor)
-                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    String llmSummary = callAnswer("RAG Only", lengthConstraint,
+                        "You are a helpful AI assistant. Answer the user's question using ONLY the information provided. Restate the information in a clear and concise answer. If the information doesn't contain enough details, simply state that the information is not available. IMPORTANT: You MUST end your response with exactly: **<span style=\"color: #007bff; font-weight: bold;\">(RAG Only)</span>**",
+                        llmSummaryPrompt);
                     if (statusListener != null) statusListener.onStatus("LLM response received", 90);
                     answer = llmSummary;
                     source = "RAG";
@@ -389,6 +743,9 @@ public class RagService implements DisposableBean {
                 }
             }
             if (statusListener != null) statusListener.onStatus("COMPLETED", 100);
+        } catch (LlmOverloadedException e) {
+            if (statusListener != null) statusListener.onStatus("LLM overloaded, request rejected", 100);
+            throw e; // answered with 429 by the controller
         } catch (TimeoutException te) {
             logger.error("Processing non-streaming message timed out: {}", request.getMessage(), te);
             answer = "The request timed out while processing.";
@@ -403,6 +760,9 @@ public class RagService implements DisposableBean {
 
         logger.info("Response generated - Source: {}, Mode: {}, Message: {}, Answer [first 200 chars]: {}", 
             source, responseMode, request.getMessage(), answer.substring(0, Math.min(answer.length(), 200)));
+        if (cached != null && ("LLM".equals(source) || "LLM_FALLBACK".equals(source) || "RAG".equals(source))) {
+            answerCache.put(cached, answer);
+        }
         return new ChatResponse.Builder().answer(answer).source(source).build();
     }
     
@@ -416,46 +776,48 @@ public class RagService implements DisposableBean {
         logger.info("Processing Raw RAG request - Message: {}", originalPrompt);
 
         try {
-            String searchQuery;
             String lengthConstraint = null;
+
+            // Overlap the vector search with LLM pre-processing when there is any
+            SpeculativeRetrieval speculative = (!skipQueryCleaning || queryExpansionController.isEnabled())
+                ? startSpeculativeRetrieval(originalPrompt, "RAW RAG") : null;
             
+            List<String> searchQueries;
             if (skipQueryCleaning) {
                 logger.info("DEBUGGING: Skipping query cleaning, using original prompt directly");
-                searchQuery = originalPrompt;
+                searchQueries = List.of(originalPrompt);
+                // Query expansion for raw RAG
+                if (queryExpansionController.isEnabled()) {
+                    logger.info("[RAW RAG] Expanding query for better retrieval");
+                    searchQueries = expandQueryWithLLM(originalPrompt, "RAW RAG");
+                }
             } else {
-                CleanedQueryResult cleanedResult = cleanQueryWithLlmExtractConstraint(originalPrompt, "RAW RAG");
-                searchQuery = cleanedResult.cleanedQuery;
-                lengthConstraint = cleanedResult.lengthConstraint;
+                // With expansion enabled, cleaning and expansion share one LLM call
+                PreprocessedQuery preprocessed = queryExpansionController.isEnabled()
+                    ? cleanAndExpandQuery(originalPrompt, "RAW RAG")
+                    : PreprocessedQuery.of(cleanQueryWithLlmExtractConstraint(originalPrompt, "RAW RAG"));
+                searchQueries = preprocessed.searchQueries();
+                lengthConstraint = preprocessed.lengthConstraint();
                 if (lengthConstraint != null && !lengthConstraint.isEmpty()) {
                     logger.info("[RAW RAG] Length constraint extracted: {}", lengthConstraint);
                 }
             }
-
-            // Query expansion for raw RAG
-            if (queryExpansionController.isEnabled()) {
-                logger.info("[RAW RAG] Expanding query for better retrieval");
-                searchQuery = expandQueryWithLLM(searchQuery);
-            }
             
-            logger.info("VECTOR SEARCH DEBUG - Query to search: '{}'", searchQuery);
+            logger.info("VECTOR SEARCH DEBUG - Queries to search: {}", searchQueries);
             logger.info("VECTOR SEARCH DEBUG - Similarity threshold: {}, Top-K: {}", similarityThreshold, topK);
             
-            Query query = new Query(searchQuery);
-            List<Document> docs = CompletableFuture.supplyAsync(() -> {
-                logger.info("VECTOR SEARCH DEBUG - Starting vector store retrieval...");
-                List<Document> results = documentRetriever.retrieve(query);
-                logger.info("VECTOR SEARCH DEBUG - Retrieved {} documents", results != null ? results.size() : 0);
-                if (results != null && !results.isEmpty()) {
-                    for (int i = 0; i < Math.min(results.size(), 3); i++) {
-                        Document doc = results.get(i);
-                        logger.info("VECTOR SEARCH DEBUG - Doc {}: {} chars, metadata: {}", 
-                                   i + 1, 
-                                   doc.getFormattedContent().length(), 
-                                   doc.getMetadata());
-                    }
+            logger.info("VECTOR SEARCH DEBUG - Starting vector store retrieval...");
+            List<Document> docs = retrieveForQueries(speculative, searchQueries, "RAW RAG");
+            logger.info("VECTOR SEARCH DEBUG - Retrieved {} documents", docs != null ? docs.size() : 0);
+            if (docs != null && !docs.isEmpty()) {
+                for (int i = 0; i < Math.min(docs.size(), 3); i++) {
+                    Document doc = docs.get(i);
+                    logger.info("VECTOR SEARCH DEBUG - Doc {}: {} chars, metadata: {}", 
+                               i + 1, 
+                               doc.getFormattedContent().length(), 
+                               doc.getMetadata());
                 }
-                return results;
-            }, this.timeoutExecutor).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
             
             logger.info("Vector DB query (Raw RAG) returned {} documents.", docs != null ? docs.size() : 0);
 
@@ -511,71 +873,171 @@ public class RagService implements DisposableBean {
     }
 
     /**
-     * Estimates token count for a given text (rough approximation: 1 token ≈ 4 characters)
+     * Vector search for the query text with near-duplicate chunks removed, served from the
+     * retrieval cache when the same normalized query was searched recently. Searches that reach
+     * the database run under the adaptive {@link VectorSearchLimiter}.
      */
-    private int estimateTokens(String text) {
-        if (text == null) return 0;
-        return (int) Math.ceil(text.length() / 4.0);
+    private List<Document> retrieveDocuments(String queryText) {
+        return retrievalCache.get(queryText, similarityThreshold, topK,
+            () -> {
+                RequestContext.throwIfCancelled();
+                RequestContext.recordVectorSearch();
+                return nearDuplicateFilter.filter(vectorSearchLimiter.execute(() -> documentRetriever.retrieve(new Query(queryText))), topK);
+            });
     }
 
     /**
-     * Formats documents into context with token-aware limits to prevent LLM truncation
+     * A vector search started on the raw user message so it overlaps with LLM query pre-processing.
      */
-    private String formatDocumentsToContext(List<Document> docs) {
-        if (docs == null || docs.isEmpty()) {
-            return null;
+    private final class SpeculativeRetrieval {
+        final String rawQuery;
+        final long startNanos = System.nanoTime();
+        volatile long finishNanos;
+        final CompletableFuture<List<Document>> future;
+
+        SpeculativeRetrieval(String rawQuery) {
+            this.rawQuery = rawQuery;
+            this.future = pipelineExecutor.supplyAsync(() -> {
+                try {
+                    return retrieveDocuments(rawQuery);
+                } finally {
+                    finishNanos = System.nanoTime();
+                }
+            });
         }
-        
-        // Use both character and token limits for better control
-        final int MAX_CONTEXT_CHARS = maxContextChars;
-        final int MIN_DOC_CHARS = minDocChars;
-        final int MAX_CONTEXT_TOKENS = maxContextTokens;
-        
-        StringBuilder context = new StringBuilder();
-        int totalChars = 0;
-        int totalTokens = 0;
-        int docsAdded = 0;
-        
-        for (Document doc : docs) {
-            String content = doc.getFormattedContent();
-            int contentLength = content.length();
-            int contentTokens = estimateTokens(content);
-            
-            // Check both character and token limits
-            boolean exceedsCharLimit = totalChars + contentLength + 4 > MAX_CONTEXT_CHARS;
-            boolean exceedsTokenLimit = totalTokens + contentTokens + 1 > MAX_CONTEXT_TOKENS;
-            
-            if (exceedsCharLimit || exceedsTokenLimit) {
-                // Try to fit a truncated version if we have enough space for meaningful content
-                int remainingChars = MAX_CONTEXT_CHARS - totalChars - 4;
-                int remainingTokens = MAX_CONTEXT_TOKENS - totalTokens - 1;
-                
-                if (remainingChars > MIN_DOC_CHARS && remainingTokens > 50) {
-                    // Truncate based on the more restrictive limit
-                    int maxChars = Math.min(remainingChars, remainingTokens * 4);
-                    content = content.substring(0, Math.min(maxChars, contentLength)) + "...";
-                    context.append(content).append("\\n\\n");
-                    docsAdded++;
-                    logger.info("Truncated document {} to fit context limits (chars: {}, tokens: {})", 
-                               docsAdded, totalChars + content.length(), totalTokens + estimateTokens(content));
+    }
+
+    private SpeculativeRetrieval startSpeculativeRetrieval(String rawQuery, String modeTag) {
+        if (!speculativeRetrievalEnabled) return null;
+        logger.info("[{}] [{}] Speculative vector search started on raw query", Instant.now(), modeTag);
+        return new SpeculativeRetrieval(rawQuery);
+    }
+
+    /**
+     * Retrieves documents for the final search query. Speculative results are reused when the
+     * pre-processed query is still close enough to the raw one (normalized edit distance);
+     * otherwise they are discarded and a fresh search runs.
+     */
+    private List<Document> retrieveForQuery(SpeculativeRetrieval speculative, String searchQuery, String modeTag)
+            throws TimeoutException, InterruptedException, ExecutionException {
+        if (speculative != null) {
+            double similarity = QuerySimilarity.normalizedSimilarity(speculative.rawQuery, searchQuery);
+            if (similarity >= speculativeMinSimilarity) {
+                long preprocessingDoneNanos = System.nanoTime();
+                try {
+                    List<Document> docs = speculative.future.get(Math.max(0L, retrievalBudgetNanos()), TimeUnit.NANOSECONDS);
+                    // Saved = the part of the search that ran while pre-processing was still going
+                    long searchNanos = speculative.finishNanos - speculative.startNanos;
+                    long waitedNanos = Math.max(0L, speculative.finishNanos - preprocessingDoneNanos);
+                    long savedNanos = Math.max(0L, searchNanos - waitedNanos);
+                    speculativeUsed.increment();
+                    speculativeSaved.record(savedNanos, TimeUnit.NANOSECONDS);
+                    logger.info("[{}] Reusing speculative search results (similarity {}, saved {} ms)",
+                               modeTag, String.format("%.3f", similarity), TimeUnit.NANOSECONDS.toMillis(savedNanos));
+                    return docs;
+                } catch (ExecutionException e) {
+                    logger.warn("[{}] Speculative search failed, running a fresh search: {}", modeTag, e.getMessage());
                 }
-                break; // Stop adding more documents
+            } else {
+                logger.info("[{}] Discarding speculative search results (similarity {} below {})",
+                           modeTag, String.format("%.3f", similarity), speculativeMinSimilarity);
             }
-            
-            context.append(content).append("\\n\\n");
-            totalChars += contentLength + 4; // +4 for "\\n\\n"
-            totalTokens += contentTokens + 1; // +1 for "\\n\\n"
-            docsAdded++;
+            speculative.future.cancel(true);
+            speculativeDiscarded.increment();
+        }
+        long budgetNanos = retrievalBudgetNanos();
+        if (budgetNanos <= 0L) throw new TimeoutException("Request deadline reached before retrieval");
+        return pipelineExecutor.call(() -> retrieveDocuments(searchQuery), budgetNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieves documents for the primary query and its alternatives in parallel and merges the
+     * ranked lists with reciprocal rank fusion. The primary query (first element) gets the full stage
+     * timeout; alternative branches that miss the branch deadline are cancelled and left out, so
+     * latency stays close to a single search. Without time to spare before the request deadline only
+     * the primary query is searched.
+     */
+    private List<Document> retrieveForQueries(SpeculativeRetrieval speculative, List<String> queries, String modeTag)
+            throws TimeoutException, InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        String outcome = PipelineMetrics.ERROR;
+        try {
+            List<Document> docs = fanOutRetrieval(speculative, queries, modeTag);
+            outcome = PipelineMetrics.OK;
+            return docs;
+        } catch (TimeoutException te) {
+            outcome = PipelineMetrics.TIMEOUT;
+            throw te;
+        } finally {
+            pipelineMetrics.record(PipelineMetrics.RETRIEVAL, modeTag, outcome, System.nanoTime() - start);
+        }
+    }
+
+    private List<Document> fanOutRetrieval(SpeculativeRetrieval speculative, List<String> queries, String modeTag)
+            throws TimeoutException, InterruptedException, ExecutionException {
+        if (queries.size() == 1) {
+            return retrieveForQuery(speculative, queries.get(0), modeTag);
+        }
+        long branchBudgetNanos = optionalStageBudgetNanos(TimeUnit.MILLISECONDS.toNanos(fanOutBranchTimeoutMs));
+        if (branchBudgetNanos <= 0L) {
+            RequestContext.degraded(PipelineMetrics.RETRIEVAL, "alternative queries skipped, searched the primary query only");
+            logger.warn("[{}] No time left for fan-out branches, searching the primary query only", modeTag);
+            return retrieveForQuery(speculative, queries.get(0), modeTag);
+        }
+        long deadlineNanos = System.nanoTime() + branchBudgetNanos;
+        List<CompletableFuture<List<Document>>> branches = new ArrayList<>();
+        for (String alternative : queries.subList(1, queries.size())) {
+            branches.add(pipelineExecutor.supplyAsync(() -> retrieveDocuments(alternative)));
+        }
+
+        List<List<Document>> rankedLists = new ArrayList<>();
+        try {
+            rankedLists.add(retrieveForQuery(speculative, queries.get(0), modeTag));
+        } catch (TimeoutException | InterruptedException | ExecutionException | RuntimeException e) {
+            branches.forEach(branch -> branch.cancel(true));
+            throw e;
+        }
+
+        int late = 0;
+        for (CompletableFuture<List<Document>> branch : branches) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            try {
+                rankedLists.add(branch.get(Math.max(0L, remainingNanos), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException te) {
+                branch.cancel(true);
+                late++;
+            } catch (ExecutionException e) {
+                logger.warn("[{}] Fan-out branch failed, ignoring it: {}", modeTag, e.getMessage());
+            }
+        }
+        // Different query variants can surface different overlapping chunks of the same passage
+        List<Document> fused = nearDuplicateFilter.filter(
+            RankFusion.reciprocalRankFusion(rankedLists, rrfK, Integer.MAX_VALUE), topK);
+        logger.info("[{}] Fan-out retrieval fused {} of {} ranked lists ({} past the {} ms branch deadline) into {} documents",
+                   modeTag, rankedLists.size(), queries.size(), late, fanOutBranchTimeoutMs, fused.size());
+        return fused;
+    }
+
+    /**
+     * Formats documents into context, packing the most relevant content per token into the
+     * character and token limits (see {@link ContextPacker}).
+     */
+    private String formatDocumentsToContext(List<Document> docs, String modeTag) {
+        if (docs == null || docs.isEmpty()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        String outcome = PipelineMetrics.ERROR;
+        try {
+            String context = contextPacker.pack(docs, maxContextTokens, maxContextChars, minDocChars);
+            outcome = PipelineMetrics.OK;
+            return context;
+        } finally {
+            pipelineMetrics.record(PipelineMetrics.CONTEXT_FORMATTING, modeTag, outcome, System.nanoTime() - start);
         }
-        
-        String result = context.toString().trim();
-        int finalTokens = estimateTokens(result);
-        logger.info("Context formatted: {} characters ({} tokens) from {} documents (max chars: {}, max tokens: {})", 
-                   result.length(), finalTokens, docsAdded, MAX_CONTEXT_CHARS, MAX_CONTEXT_TOKENS);
-        return result;
     }
 
-    private String determineResponseMode(ChatRequest request) {
+    public String determineResponseMode(ChatRequest request) {
         if (request.isRawRag()) return "RAW_RAG"; 
         if (request.isUsePureLlm()) return "PURE_LLM";
         if (request.isIncludeLlmFallback()) return "RAG_WITH_FALLBACK";
@@ -594,16 +1056,36 @@ public class RagService implements DisposableBean {
             + " Input: 'What is Kubernetes in 20 words?' → Output: What is Kubernetes? [[LENGTH_CONSTRAINT: in 20 words]]"
             + " Input: 'what is platform engineering' → Output: What is platform engineering?";
         
+        // Well-formed queries are cleaned in-process; the LLM is only used when confidence is low
+        long start = System.nanoTime();
+        CleanedQueryResult localResult = queryPreprocessor.tryPreprocess(originalPrompt, modeTag);
+        if (localResult != null) {
+            pipelineMetrics.record(PipelineMetrics.QUERY_CLEANING, modeTag, PipelineMetrics.OK, System.nanoTime() - start);
+            return localResult;
+        }
+
+        CleanedQueryResult cachedResult = queryRewriteCache.getCleaned(systemPrompt, originalPrompt);
+        if (cachedResult != null) {
+            logger.info("[{}] Query cleaning served from cache: '{}'", modeTag, cachedResult.cleanedQuery);
+            pipelineMetrics.record(PipelineMetrics.QUERY_CLEANING, modeTag, PipelineMetrics.OK, System.nanoTime() - start);
+            return cachedResult;
+        }
+
+        if (!fitsBudget(PipelineMetrics.QUERY_CLEANING, rewriteTimeoutSeconds, modeTag)) {
+            return new CleanedQueryResult(originalPrompt, null);
+        }
+
         String cleanedPrompt;
         String constraint = null;
         try {
             logger.info("[{}] [{}] LLM (Query Cleaning) call started", Instant.now(), modeTag);
-            String rawResponse = CompletableFuture.supplyAsync(() -> chatClient.prompt()
+            long cleaningStart = System.nanoTime();
+            String rawResponse = callLlmStage(PipelineMetrics.QUERY_CLEANING, modeTag, () -> rewriteChatClient.prompt()
                 .system(systemPrompt)
                 .user(originalPrompt)
                 .call()
-                .content(), this.timeoutExecutor)
-                .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                .content(), rewriteTimeoutSeconds);
+            queryPreprocessor.recordLlmLatency(System.nanoTime() - cleaningStart);
             
             logger.info("RAW LLM RESPONSE (Query Cleaning - {}): {}", modeTag, rawResponse);
             
@@ -614,7 +1096,8 @@ public class RagService implements DisposableBean {
             
             logger.info("[{}] [{}] LLM (Query Cleaning) call finished", Instant.now(), modeTag);
         } catch (TimeoutException te) {
-            logger.error("LLM (Query Cleaning) call timed out after {}s [{}]", TIMEOUT_SECONDS, modeTag, te);
+            logger.error("LLM (Query Cleaning) call timed out after {}s [{}]", rewriteTimeoutSeconds, modeTag, te);
+            RequestContext.degraded(PipelineMetrics.QUERY_CLEANING, "timed out, using the original query");
             // Fallback: use original prompt if cleaning fails
             logger.warn("Falling back to original prompt due to timeout: {}", originalPrompt);
             return new CleanedQueryResult(originalPrompt, null);
@@ -646,52 +1129,181 @@ public class RagService implements DisposableBean {
         if (constraint != null) {
             logger.info("[{}] Length constraint extracted: {}", modeTag, constraint);
         }
-        return new CleanedQueryResult(cleanedPrompt, constraint);
+        CleanedQueryResult result = new CleanedQueryResult(cleanedPrompt, constraint);
+        queryRewriteCache.putCleaned(systemPrompt, originalPrompt, result);
+        return result;
     }
 
     /**
-     * Expands a query using the LLM to generate synonyms and related terms.
-     * This improves retrieval quality by finding more relevant documents.
+     * Expands a query using the LLM into alternative search queries (alternative phrasings, synonyms,
+     * related technical terms). The original query is always the first element; each query is
+     * searched separately so the embeddings stay focused.
      */
-    private String expandQueryWithLLM(String originalQuery) {
+    private List<String> expandQueryWithLLM(String originalQuery, String modeTag) {
+        if (fanOutWidth <= 0) return List.of(originalQuery);
+        long start = System.nanoTime();
         try {
             logger.info("[QUERY EXPANSION] Expanding query: '{}'", originalQuery);
             
             String expansionPrompt = String.format(
-                "Generate 2-3 synonyms or related terms for the query: '%s'. " +
-                "Focus on technical terms, alternative phrasings, and related concepts. " +
-                "Return ONLY the expanded query with synonyms separated by spaces. " +
-                "Keep it concise and relevant. " +
-                "Example: 'spring boot' → 'spring boot springboot java framework'",
-                originalQuery
+                "Write %d alternative search queries for: '%s'. " +
+                "Use alternative phrasings, synonyms, technical terms and closely related concepts. " +
+                "Each query must be able to stand on its own. " +
+                "Return ONLY the queries, one per line, with no numbering or commentary. " +
+                "Example for 'spring boot config': 'spring boot application properties' and 'configure springboot java application'",
+                fanOutWidth, originalQuery
             );
             
-            String expandedQuery = CompletableFuture.supplyAsync(() -> {
-                return chatClient.prompt()
-                    .system("You are a query expansion assistant. Generate relevant synonyms and related terms to improve search results.")
-                    .user(expansionPrompt)
-                    .call()
-                    .content();
-            }, this.timeoutExecutor)
-            .get(30, TimeUnit.SECONDS); // Shorter timeout for expansion
+            String expansionSystemPrompt = "You are a query expansion assistant. Generate alternative search queries to improve search results.";
+            String cachedExpansion = queryRewriteCache.getExpanded(expansionSystemPrompt, expansionPrompt);
+            if (cachedExpansion != null) {
+                logger.info("[QUERY EXPANSION] Served from cache: '{}' → {}", originalQuery, cachedExpansion.lines().toList());
+                pipelineMetrics.record(PipelineMetrics.EXPANSION, modeTag, PipelineMetrics.OK, System.nanoTime() - start);
+                return cachedExpansion.lines().toList();
+            }
+            if (!fitsBudget(PipelineMetrics.EXPANSION, expansionTimeoutSeconds, modeTag)) {
+                return List.of(originalQuery);
+            }
+
+            String expandedQuery = callLlmStage(PipelineMetrics.EXPANSION, modeTag, () -> expansionChatClient.prompt()
+                .system(expansionSystemPrompt)
+                .user(expansionPrompt)
+                .call()
+                .content(), expansionTimeoutSeconds);
             
-            // Clean the response and combine with original query
-            String cleanedExpansion = expandedQuery.trim()
-                .replaceAll("\\s+", " ") // Normalize whitespace
-                .replaceAll("[^a-zA-Z0-9\\s]", ""); // Remove special characters except spaces
+            // One query per line
+            List<String> queries = withAlternatives(originalQuery, expandedQuery != null ? expandedQuery.lines().toList() : List.of());
             
-            String finalQuery = originalQuery + " " + cleanedExpansion;
-            logger.info("[QUERY EXPANSION] Expanded query: '{}' → '{}'", originalQuery, finalQuery);
+            logger.info("[QUERY EXPANSION] Expanded query: '{}' → {}", originalQuery, queries);
+            queryRewriteCache.putExpanded(expansionSystemPrompt, expansionPrompt, String.join("\n", queries));
             
-            return finalQuery;
+            return queries;
             
         } catch (TimeoutException te) {
             logger.warn("[QUERY EXPANSION] Expansion timed out, using original query: {}", originalQuery);
-            return originalQuery;
+            RequestContext.degraded(PipelineMetrics.EXPANSION, "timed out, searching the original query only");
+            return List.of(originalQuery);
         } catch (Exception e) {
             logger.warn("[QUERY EXPANSION] Expansion failed, using original query: {} - Error: {}", 
                        originalQuery, e.getMessage());
-            return originalQuery;
+            return List.of(originalQuery);
+        }
+    }
+
+    /**
+     * The original query followed by up to fan-out alternatives, with list numbering, quotes and
+     * duplicates removed.
+     */
+    private List<String> withAlternatives(String originalQuery, List<String> alternatives) {
+        List<String> queries = new ArrayList<>();
+        queries.add(originalQuery);
+        alternatives.stream()
+            .filter(java.util.Objects::nonNull)
+            .map(line -> line.replaceFirst("^\\s*(?:[-*•]|\\d+[.)])\\s*", "")
+                .replaceAll("^[\"'`]+|[\"'`]+$", "")
+                .replaceAll("\\s+", " ")
+                .trim())
+            .filter(line -> !line.isEmpty())
+            .filter(line -> queries.stream().noneMatch(q -> QuerySimilarity.normalize(q).equals(QuerySimilarity.normalize(line))))
+            .limit(fanOutWidth)
+            .forEach(queries::add);
+        return queries;
+    }
+
+    /** Cleaned query, optional length constraint and the queries to search (cleaned query first). */
+    private record PreprocessedQuery(String cleanedQuery, String lengthConstraint, List<String> searchQueries) {
+        static PreprocessedQuery of(CleanedQueryResult cleaned) {
+            return new PreprocessedQuery(cleaned.cleanedQuery, cleaned.lengthConstraint, List.of(cleaned.cleanedQuery));
+        }
+    }
+
+    /**
+     * Cleans and expands the query with a single structured (JSON) LLM call instead of two sequential
+     * calls. Falls back to the original query, unexpanded, when the call fails or the response cannot be
+     * parsed. Queries the local pre-processor handles confidently only need the expansion call.
+     */
+    private PreprocessedQuery cleanAndExpandQuery(String originalPrompt, String modeTag) {
+        long cleaningStart = System.nanoTime();
+        CleanedQueryResult localResult = queryPreprocessor.tryPreprocess(originalPrompt, modeTag);
+        if (localResult != null) {
+            pipelineMetrics.record(PipelineMetrics.QUERY_CLEANING, modeTag, PipelineMetrics.OK, System.nanoTime() - cleaningStart);
+            return new PreprocessedQuery(localResult.cleanedQuery, localResult.lengthConstraint, expandQueryWithLLM(localResult.cleanedQuery, modeTag));
+        }
+
+        String systemPrompt = "You pre-process search queries. Respond with ONLY a JSON object, no other text, of the form"
+            + " {\"cleaned_query\": string, \"length_constraint\": string or null, \"alternative_queries\": [string]}."
+            + " cleaned_query: the query with spelling/grammar fixed and made clear, without any length constraint."
+            + " length_constraint: a length requirement such as 'in 20 words' if the user gave one, otherwise null."
+            + " alternative_queries: up to " + fanOutWidth + " alternative search queries using other phrasings,"
+            + " synonyms, technical terms and closely related concepts; each must stand on its own."
+            + " Example: 'What is Kubernetes in 20 words?' → {\"cleaned_query\": \"What is Kubernetes?\","
+            + " \"length_constraint\": \"in 20 words\", \"alternative_queries\": [\"Kubernetes container orchestration overview\"]}";
+
+        QueryRewriteCache.Preprocessed cached = queryRewriteCache.getCombined(systemPrompt, originalPrompt);
+        if (cached != null) {
+            logger.info("[{}] Combined query pre-processing served from cache: '{}'", modeTag, cached.cleanedQuery());
+            pipelineMetrics.record(PipelineMetrics.QUERY_CLEANING, modeTag, PipelineMetrics.OK, System.nanoTime() - cleaningStart);
+            return new PreprocessedQuery(cached.cleanedQuery(), cached.lengthConstraint(), cached.searchQueries());
+        }
+
+        PreprocessedQuery fallback = new PreprocessedQuery(originalPrompt, null, List.of(originalPrompt));
+        if (!fitsBudget(PipelineMetrics.QUERY_CLEANING, rewriteTimeoutSeconds, modeTag)) {
+            return fallback;
+        }
+        String rawResponse;
+        try {
+            logger.info("[{}] [{}] LLM (Combined Query Pre-Processing) call started", Instant.now(), modeTag);
+            long start = System.nanoTime();
+            rawResponse = callLlmStage(PipelineMetrics.QUERY_CLEANING, modeTag, () -> rewriteChatClient.prompt()
+                .system(systemPrompt)
+                .user(originalPrompt)
+                .call()
+                .content(), rewriteTimeoutSeconds);
+            queryPreprocessor.recordLlmLatency(System.nanoTime() - start);
+            logger.info("[{}] [{}] LLM (Combined Query Pre-Processing) call finished in {} ms", Instant.now(), modeTag,
+                       TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (TimeoutException te) {
+            logger.warn("[{}] Combined query pre-processing timed out after {}s, using original query", modeTag, rewriteTimeoutSeconds);
+            RequestContext.degraded(PipelineMetrics.QUERY_CLEANING, "timed out, using the original query without alternatives");
+            return fallback;
+        } catch (Exception e) {
+            logger.warn("[{}] Combined query pre-processing failed, using original query: {}", modeTag, e.getMessage());
+            return fallback;
+        }
+
+        JsonNode json = parseJsonObject(rawResponse);
+        String cleanedPrompt = json != null ? json.path("cleaned_query").asText("").trim() : "";
+        if (cleanedPrompt.isEmpty() || cleanedPrompt.length() > originalPrompt.length() * 3 || cleanedPrompt.contains("<")) {
+            logger.warn("[{}] Unusable combined pre-processing response, using original query: {}", modeTag, rawResponse);
+            return fallback;
+        }
+        JsonNode constraintNode = json.path("length_constraint");
+        String constraint = constraintNode.isTextual() && !constraintNode.asText().isBlank() ? constraintNode.asText().trim() : null;
+        List<String> alternatives = new ArrayList<>();
+        json.path("alternative_queries").forEach(node -> { if (node.isTextual()) alternatives.add(node.asText()); });
+
+        List<String> searchQueries = withAlternatives(cleanedPrompt, alternatives);
+        logger.info("[{}] Combined pre-processing: '{}' → '{}' [{}], queries: {}", modeTag, originalPrompt, cleanedPrompt, constraint, searchQueries);
+        queryRewriteCache.putCombined(systemPrompt, originalPrompt, new QueryRewriteCache.Preprocessed(cleanedPrompt, constraint, searchQueries));
+        return new PreprocessedQuery(cleanedPrompt, constraint, searchQueries);
+    }
+
+    /**
+     * Extracts the first JSON object from an LLM response, tolerating reasoning blocks, code fences
+     * and surrounding text. Returns null when there is none.
+     */
+    private JsonNode parseJsonObject(String response) {
+        if (response == null) return null;
+        String text = response.replaceAll("(?s)<think>.*?</think>", "");
+        int start = text.indexOf('{');
+        int end = text.lastIndexOf('}');
+        if (start < 0 || end <= start) return null;
+        try {
+            JsonNode node = objectMapper.readTree(text.substring(start, end + 1));
+            return node.isObject() ? node : null;
+        } catch (Exception e) {
+            logger.debug("Could not parse JSON from LLM response: {}", e.getMessage());
+            return null;
         }
     }
 
@@ -700,9 +1312,9 @@ public class RagService implements DisposableBean {
      */
     private String validateAndAdjustPrompt(String contextText, String userQuestion, String systemPrompt) {
         // Estimate tokens for each component
-        int contextTokens = estimateTokens(contextText != null ? contextText : "");
-        int questionTokens = estimateTokens(userQuestion);
-        int systemTokens = estimateTokens(systemPrompt);
+        int contextTokens = tokenCounter.count(contextText != null ? contextText : "");
+        int questionTokens = tokenCounter.count(userQuestion);
+        int systemTokens = tokenCounter.count(systemPrompt);
         
         // Reserve tokens for response and overhead
         int reservedTokens = maxResponseTokens + 200; // 200 tokens for formatting overhead
@@ -726,17 +1338,15 @@ public class RagService implements DisposableBean {
         
         if (contextText != null && !contextText.isEmpty()) {
             // Calculate how much context we can keep
-            int maxContextTokensAllowed = maxContextTokens - excessTokens;
-            int maxContextCharsAllowed = maxContextTokensAllowed * 4; // Rough conversion
+            int maxContextTokensAllowed = Math.min(maxContextTokens, contextTokens) - excessTokens;
+            String truncatedContext = tokenCounter.truncate(contextText, maxContextTokensAllowed);
             
-            if (maxContextCharsAllowed > minDocChars) {
-                // Truncate context to fit within limits
-                String truncatedContext = contextText.length() > maxContextCharsAllowed 
-                    ? contextText.substring(0, maxContextCharsAllowed) + "..."
-                    : contextText;
+            if (truncatedContext.length() > minDocChars) {
+                // Truncated at a token boundary to fit within limits
+                if (truncatedContext.length() < contextText.length()) truncatedContext += "...";
                 
-                logger.info("Truncated context from {} to {} characters to fit token limits", 
-                           contextText.length(), truncatedContext.length());
+                logger.info("Truncated context from {} to {} characters ({} tokens) to fit token limits", 
+                           contextText.length(), truncatedContext.length(), maxContextTokensAllowed);
                 
                 return "Context:\n" + truncatedContext + "\n\nUser Question:\n" + userQuestion;
             } else {
@@ -748,112 +1358,4 @@ public class RagService implements DisposableBean {
         
         return userQuestion;
     }
-
-    /**
-     * Simulate streaming by sending response in chunks to maintain consistent UX
-     */
-    private void simulateStreamingResponse(String response, Consumer<String> chunkConsumer) {
-        if (response == null || response.trim().isEmpty()) {
-            return;
-        }
-        
-        // Split response into word-based chunks for natural streaming simulation
-        String[] words = response.split("\\s+");
-        StringBuilder currentChunk = new StringBuilder();
-        
-        for (int i = 0; i < words.length; i++) {
-            currentChunk.append(words[i]);
-            
-            // Send chunk every 3-5 words or at sentence boundaries
-            if (i == words.length - 1 || // Last word
-                currentChunk.length() > 20 || // Reasonable chunk size
-                words[i].endsWith(".") || words[i].endsWith("!") || words[i].endsWith("?")) {
-                
-                String chunkToSend = currentChunk.toString();
-                if (i < words.length - 1) {
-                    chunkToSend += " "; // Add space except for last chunk
-                }
-                
-                chunkConsumer.accept(chunkToSend);
-                
-                // Small delay to simulate typing (optional - can be removed if too slow)
-                try {
-                    Thread.sleep(50); // 50ms delay between chunks
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-                
-                currentChunk.setLength(0); // Reset chunk
-            } else {
-                currentChunk.append(" ");
-            }
-        }
-    }
-
-
-
-
-
-
-    /**
-     * Extract the final answer from LLM response, handling Qwen3 thinking mode
-     */
-    private String extractAnswer(String llmResponse) {
-        if (llmResponse == null || llmResponse.trim().isEmpty()) {
-            return "The provided context does not contain information to answer this question.";
-        }
-        
-        String response = llmResponse.trim();
-        
-        // Handle Qwen3 thinking mode - extract content after <think>...</think> blocks
-        if (response.contains("<think>")) {
-            // Find the last </think> tag
-            int lastThinkEnd = response.lastIndexOf("</think>");
-            if (lastThinkEnd != -1) {
-                // Extract everything after the last </think> tag
-                String afterThinking = response.substring(lastThinkEnd + "</think>".length()).trim();
-                if (!afterThinking.isEmpty()) {
-                    logger.info("Extracted answer after Qwen3 thinking block: {}", 
-                               afterThinking.substring(0, Math.min(100, afterThinking.length())));
-                    return afterThinking;
-                }
-            }
-        }
-        
-        // If no thinking tags found, return the response as-is
-        return response;
-    }
-
-    /**
-     * Container for cleaned query and optional constraint.
-     */
-    private static class CleanedQueryResult {
-        public final String cleanedQuery;
-        public final String lengthConstraint;
-        public CleanedQueryResult(String cleanedQuery, String lengthConstraint) {
-            this.cleanedQuery = cleanedQuery;
-            this.lengthConstraint = lengthConstraint;
-        }
-    }
-
-
-    @Override
-    public void destroy() throws Exception {
-        if (this.timeoutExecutor != null && !this.timeoutExecutor.isShutdown()) {
-            logger.info("Shutting down timeoutExecutor in RagService as part of DisposableBean.destroy()");
-            this.timeoutExecutor.shutdown();
-            try {
-                if (!this.timeoutExecutor.awaitTermination(10, TimeUnit.SECONDS)) { 
-                    logger.warn("timeoutExecutor did not terminate in 10 seconds, forcing shutdown.");
-                    this.timeoutExecutor.shutdownNow();
-                }
-            } catch (InterruptedException ie) {
-                logger.warn("Interrupted while waiting for timeoutExecutor to terminate, forcing shutdown.");
-                this.timeoutExecutor.shutdownNow();
-                Thread.currentThread().interrupt(); 
-            }
-            logger.info("timeoutExecutor shutdown process completed.");
-        }
-    }
-}
\ No newline at end of file
+}
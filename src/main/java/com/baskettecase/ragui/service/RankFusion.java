@@ -0,0 +1,43 @@
+package com.baskettecase.ragui.service;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reciprocal rank fusion of several ranked retrieval lists.
+ *
+ * Each document scores the sum of 1 / (k + rank) over the lists it appears in (rank is 1-based),
+ * so documents found by several query variants rise to the top without needing comparable scores.
+ */
+final class RankFusion {
+
+    private RankFusion() {
+    }
+
+    static List<Document> reciprocalRankFusion(List<List<Document>> rankedLists, int k, int limit) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (List<Document> ranked : rankedLists) {
+            if (ranked == null) continue;
+            for (int i = 0; i < ranked.size(); i++) {
+                Document doc = ranked.get(i);
+                String id = doc.getId() != null ? doc.getId() : doc.getText();
+                documents.putIfAbsent(id, doc);
+                scores.merge(id, 1.0 / (k + i + 1), Double::sum);
+            }
+        }
+        // Stable sort keeps first-seen order (primary query first) for equal scores
+        List<String> ids = new ArrayList<>(scores.keySet());
+        ids.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        List<Document> fused = new ArrayList<>(Math.min(limit, ids.size()));
+        for (String id : ids) {
+            if (fused.size() >= limit) break;
+            fused.add(documents.get(id));
+        }
+        return fused;
+    }
+}
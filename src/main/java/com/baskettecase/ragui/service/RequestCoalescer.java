@@ -0,0 +1,198 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.model.Job;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Single-flight coalescing of identical streaming requests (same normalized message and response
+ * mode). The first request leads and runs the pipeline; requests that arrive while it is in flight
+ * attach as followers. Every update the leader publishes (status events, chunks) is applied to each
+ * attached job, and a late follower first gets the updates published so far, so each job sees the
+ * complete stream through its own SSE connection.
+ *
+ * When the flight finishes, the LLM calls and vector searches the leader made are counted as saved
+ * once per follower.
+ */
+@Component
+public class RequestCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final boolean enabled;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final Counter savedLlmCalls;
+    private final Counter savedVectorSearches;
+
+    /**
+     * One in-flight pipeline run and the jobs it feeds. Updates are appended to an ordered history
+     * under the flight's monitor and applied to the jobs outside it, so attaching, listing and
+     * cancelling never wait on a job update. Each job has a cursor into the history and one drain at
+     * a time moves it forward, which keeps a follower's catch-up replay and live updates in publish order.
+     */
+    public static final class Flight {
+        private final String key;
+        private final String mode;
+        private final Job leader;
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        // Append-only; kept until the flight is dropped so late drains can still catch up
+        private final List<Consumer<Job>> history = new ArrayList<>();
+        private boolean finished;
+        private boolean cancelled;
+
+        private Flight(String key, String mode, Job leader) {
+            this.key = key;
+            this.mode = mode;
+            this.leader = leader;
+            subscribers.add(new Subscriber(leader));
+        }
+
+        public boolean isLeader(Job job) {
+            return job == leader;
+        }
+
+        /** Applies an update to every attached job and keeps it for followers that attach later. */
+        public void publish(Consumer<Job> update) {
+            List<Subscriber> targets;
+            synchronized (this) {
+                if (cancelled) return;
+                history.add(update);
+                targets = List.copyOf(subscribers);
+            }
+            targets.forEach(this::drain);
+        }
+
+        public synchronized List<Job> jobs() {
+            List<Job> jobs = new ArrayList<>(subscribers.size());
+            for (Subscriber subscriber : subscribers) jobs.add(subscriber.job);
+            return jobs;
+        }
+
+        /** Applies a final update to every attached job; later updates are dropped and nobody can attach. */
+        public void cancel(Consumer<Job> finalUpdate) {
+            List<Subscriber> targets;
+            synchronized (this) {
+                if (cancelled) return;
+                history.add(finalUpdate);
+                cancelled = true;
+                targets = List.copyOf(subscribers);
+            }
+            targets.forEach(this::drain);
+        }
+
+        private boolean attach(Job follower) {
+            Subscriber subscriber = new Subscriber(follower);
+            synchronized (this) {
+                if (finished || cancelled) return false;
+                subscribers.add(subscriber);
+            }
+            drain(subscriber); // replay what was published so far, outside the monitor
+            return true;
+        }
+
+        private synchronized int finish() {
+            finished = true;
+            return subscribers.size() - 1;
+        }
+
+        /**
+         * Applies the subscriber's pending updates in order. Whoever finds the drain idle runs it until
+         * the cursor reaches the end of the history; concurrent callers just leave a note to look again.
+         */
+        private void drain(Subscriber subscriber) {
+            if (subscriber.pending.getAndIncrement() != 0) return;
+            int missed = 1;
+            do {
+                while (true) {
+                    Consumer<Job> next;
+                    synchronized (this) {
+                        if (subscriber.delivered >= history.size()) break;
+                        next = history.get(subscriber.delivered);
+                    }
+                    subscriber.delivered++;
+                    try {
+                        next.accept(subscriber.job);
+                    } catch (RuntimeException e) {
+                        logger.warn("Update for job {} failed: {}", subscriber.job.getJobId(), e.getMessage(), e);
+                    }
+                }
+                missed = subscriber.pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    /** A job fed by a flight and how far through the flight's history it has got. */
+    private static final class Subscriber {
+        final Job job;
+        final AtomicInteger pending = new AtomicInteger();
+        int delivered; // written only by the thread running the drain
+
+        Subscriber(Job job) {
+            this.job = job;
+        }
+    }
+
+    public RequestCoalescer(MeterRegistry meterRegistry,
+                            @Value("${ragui.coalescing.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.meterRegistry = meterRegistry;
+        this.savedLlmCalls = Counter.builder("ragui.requests.coalesced.saved")
+            .description("LLM calls and vector searches avoided by coalescing identical requests")
+            .tag("kind", "llm")
+            .register(meterRegistry);
+        this.savedVectorSearches = Counter.builder("ragui.requests.coalesced.saved")
+            .description("LLM calls and vector searches avoided by coalescing identical requests")
+            .tag("kind", "vector_search")
+            .register(meterRegistry);
+        logger.info("RequestCoalescer initialized - enabled: {}", enabled);
+    }
+
+    /**
+     * Attaches the job to an identical in-flight request, or makes it the leader of a new flight.
+     * The caller runs the pipeline only when {@link Flight#isLeader(Job)} is true.
+     * @param mode response mode tag (see {@link PipelineMetrics#mode(String)})
+     */
+    public Flight join(String mode, String message, Job job) {
+        String key = mode + '|' + QuerySimilarity.normalize(message);
+        if (!enabled) return new Flight(key, mode, job);
+        while (true) {
+            Flight flight = flights.computeIfAbsent(key, k -> new Flight(k, mode, job));
+            if (flight.isLeader(job)) return flight;
+            if (flight.attach(job)) {
+                Counter.builder("ragui.requests.coalesced")
+                    .description("Requests served by attaching to an identical in-flight request")
+                    .tag("mode", PipelineMetrics.mode(mode))
+                    .register(meterRegistry)
+                    .increment();
+                logger.info("Job {} attached to in-flight job {} ({})", job.getJobId(), flight.leader.getJobId(), mode);
+                return flight;
+            }
+            flights.remove(key, flight); // finished between lookup and attach
+        }
+    }
+
+    /** Closes the flight once the leader's pipeline has returned. */
+    public void complete(Flight flight, RequestContext context) {
+        flights.remove(flight.key, flight);
+        int followers = flight.finish();
+        if (followers > 0 && context != null) {
+            savedLlmCalls.increment((double) followers * context.getLlmCalls());
+            savedVectorSearches.increment((double) followers * context.getVectorSearches());
+            logger.info("Flight for job {} ({}) served {} followers, saving {} LLM calls and {} vector searches",
+                       flight.leader.getJobId(), flight.mode, followers,
+                       followers * context.getLlmCalls(), followers * context.getVectorSearches());
+        }
+    }
+}
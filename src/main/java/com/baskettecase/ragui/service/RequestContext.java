@@ -0,0 +1,220 @@
+package com.baskettecase.ragui.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Per-request state that follows one pipeline run across the threads it uses. It is bound to the
+ * submitting thread with {@link #call(Callable)} or {@link #run(Runnable)}, and {@link PipelineExecutor}
+ * carries it into the tasks it starts, so parallel stages see the same context.
+ *
+ * Tracks the LLM calls and vector searches the request actually made (cache hits are not counted),
+ * and supports cancellation: {@link #cancel()} cancels the request's pending futures and interrupts
+ * the threads working on it, which aborts blocking model HTTP calls and streams.
+ *
+ * A request can carry an end-to-end deadline, set when it is received. Stages size their timeouts
+ * with {@link #remainingNanos(long)} instead of using their own timeout alone, and record the stages
+ * they skipped or cut short with {@link #degraded(String, String)} so they can be reported.
+ */
+public final class RequestContext {
+
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+    private final AtomicInteger llmCalls = new AtomicInteger();
+    private final AtomicInteger activeLlmCalls = new AtomicInteger();
+    private final AtomicInteger vectorSearches = new AtomicInteger();
+
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private final List<String> degradations = new ArrayList<>(); // guarded by itself
+    private int reportedDegradations = 0; // guarded by degradations
+
+    private volatile boolean cancelled;
+    private final Set<Thread> threads = new HashSet<>(); // guarded by this
+    private final Set<Future<?>> futures = ConcurrentHashMap.newKeySet();
+
+    /** What a cancellation aborted. */
+    public record Cancellation(int activeLlmCalls, int pendingTasks) {}
+
+    public RequestContext() {
+        this(0L);
+    }
+
+    /** @param budgetMillis end-to-end budget starting now; 0 or less for no deadline */
+    public RequestContext(long budgetMillis) {
+        this.hasDeadline = budgetMillis > 0;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, budgetMillis));
+    }
+
+    /** The context bound to the calling thread, or null outside a tracked request. */
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+
+    public <T> T call(Callable<T> task) throws Exception {
+        RequestContext previous = CURRENT.get();
+        enter();
+        try {
+            return task.call();
+        } finally {
+            exit(previous);
+        }
+    }
+
+    public void run(Runnable task) {
+        RequestContext previous = CURRENT.get();
+        enter();
+        try {
+            task.run();
+        } finally {
+            exit(previous);
+        }
+    }
+
+    /** Wraps a task so it runs with the caller's context, if any. */
+    static <T> Supplier<T> propagate(Supplier<T> task) {
+        RequestContext context = CURRENT.get();
+        if (context == null) return task;
+        return () -> {
+            RequestContext previous = CURRENT.get();
+            context.enter();
+            try {
+                return task.get();
+            } finally {
+                context.exit(previous);
+            }
+        };
+    }
+
+    /** Registers a future started for the current request so cancellation can cancel it. */
+    static <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        RequestContext context = CURRENT.get();
+        if (context == null) return future;
+        context.futures.add(future);
+        future.whenComplete((result, failure) -> context.futures.remove(future));
+        if (context.cancelled) future.cancel(true);
+        return future;
+    }
+
+    /** Fails fast at a stage boundary once the current request has been cancelled. */
+    static void throwIfCancelled() {
+        RequestContext context = CURRENT.get();
+        if (context != null && context.cancelled) throw new CancellationException("Request cancelled");
+    }
+
+    private synchronized void enter() {
+        if (cancelled) throw new CancellationException("Request cancelled");
+        threads.add(Thread.currentThread());
+        CURRENT.set(this);
+    }
+
+    private void exit(RequestContext previous) {
+        synchronized (this) {
+            threads.remove(Thread.currentThread());
+            // An interrupt sent by cancel() must not leak into the next task on a pooled thread
+            if (cancelled) Thread.interrupted();
+        }
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Cancels the request: later stages fail fast, pending futures are cancelled and the threads
+     * working on it are interrupted. Only the first call has an effect.
+     * @return what was aborted, or null if the request was already cancelled
+     */
+    public Cancellation cancel() {
+        int activeCalls;
+        synchronized (this) {
+            if (cancelled) return null;
+            cancelled = true;
+            activeCalls = activeLlmCalls.get();
+            threads.forEach(Thread::interrupt);
+        }
+        int pending = 0;
+        for (Future<?> future : futures) {
+            if (future.cancel(true)) pending++;
+        }
+        futures.clear();
+        return new Cancellation(activeCalls, pending);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Time a stage may take: its own timeout, capped by what is left before the current request's
+     * deadline. Zero or negative once the deadline has passed.
+     */
+    static long remainingNanos(long stageTimeoutNanos) {
+        RequestContext context = CURRENT.get();
+        if (context == null || !context.hasDeadline) return stageTimeoutNanos;
+        return Math.min(stageTimeoutNanos, context.deadlineNanos - System.nanoTime());
+    }
+
+    /** Records that a stage was skipped or cut short, e.g. "expansion: skipped, 4s left". */
+    static void degraded(String stage, String reason) {
+        RequestContext context = CURRENT.get();
+        if (context == null) return;
+        synchronized (context.degradations) {
+            context.degradations.add(stage + ": " + reason);
+        }
+    }
+
+    /** Degradations of the current request recorded since the last call, for status reporting. */
+    static List<String> takeDegradations() {
+        RequestContext context = CURRENT.get();
+        if (context == null) return List.of();
+        synchronized (context.degradations) {
+            List<String> unreported = List.copyOf(context.degradations.subList(context.reportedDegradations, context.degradations.size()));
+            context.reportedDegradations = context.degradations.size();
+            return unreported;
+        }
+    }
+
+    public List<String> getDegradations() {
+        synchronized (degradations) {
+            return List.copyOf(degradations);
+        }
+    }
+
+    static void llmCallStarted() {
+        RequestContext context = CURRENT.get();
+        if (context != null) {
+            context.llmCalls.incrementAndGet();
+            context.activeLlmCalls.incrementAndGet();
+        }
+    }
+
+    static void llmCallFinished() {
+        RequestContext context = CURRENT.get();
+        if (context != null) context.activeLlmCalls.decrementAndGet();
+    }
+
+    static void recordVectorSearch() {
+        RequestContext context = CURRENT.get();
+        if (context != null) context.vectorSearches.incrementAndGet();
+    }
+
+    public int getLlmCalls() {
+        return llmCalls.get();
+    }
+
+    public int getVectorSearches() {
+        return vectorSearches.get();
+    }
+}
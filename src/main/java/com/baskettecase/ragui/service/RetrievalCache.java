@@ -0,0 +1,152 @@
+package com.baskettecase.ragui.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Exact-match cache for vector store retrievals, keyed on normalized query text plus similarity
+ * threshold and top-K.
+ *
+ * Backed by Caffeine, whose W-TinyLFU policy only admits a new entry when it is likely to be used
+ * more than the victim it would replace. The cache is bounded by the approximate size of the cached
+ * document content. Loads are single-flight: concurrent identical queries share one in-flight
+ * future, so only one vector store round trip is made.
+ */
+@Service
+public class RetrievalCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetrievalCache.class);
+    private static final int DOCUMENT_OVERHEAD_BYTES = 256; // id, metadata map, object headers
+
+    private final boolean enabled;
+    private final AsyncCache<Key, List<Document>> cache;
+    private final Counter coalescedLoads;
+
+    private record Key(String query, double threshold, int topK) {}
+
+    public RetrievalCache(MeterRegistry meterRegistry,
+                          @Value("${ragui.cache.retrieval.enabled:true}") boolean enabled,
+                          @Value("${ragui.cache.retrieval.max-bytes:33554432}") long maxBytes,
+                          @Value("${ragui.cache.retrieval.ttl-seconds:300}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Key key, List<Document> docs) -> weigh(key, docs))
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats()
+            .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "retrieval");
+        this.coalescedLoads = Counter.builder("ragui.cache.retrieval.coalesced")
+            .description("Retrievals that joined an identical in-flight vector search")
+            .register(meterRegistry);
+        logger.info("RetrievalCache initialized - enabled: {}, max-bytes: {}, ttl: {}s", enabled, maxBytes, ttlSeconds);
+    }
+
+    /**
+     * Returns the cached documents for the query, or runs the loader exactly once per key while
+     * concurrent callers wait for its result. Failed loads are not cached. A load abandoned because
+     * its caller was cancelled or timed out is not shared either: the key is dropped and a waiting
+     * caller runs the load itself.
+     */
+    public List<Document> get(String queryText, double threshold, int topK, Supplier<List<Document>> loader) {
+        if (!enabled) return loader.get();
+
+        Key key = new Key(normalize(queryText), threshold, topK);
+        boolean coalesced = false;
+        while (true) {
+            CompletableFuture<List<Document>> flight = new CompletableFuture<>();
+            CompletableFuture<List<Document>> existing = cache.get(key, (k, executor) -> flight);
+            if (existing == flight) return load(key, flight, loader);
+
+            if (!coalesced && !existing.isDone()) {
+                coalescedLoads.increment();
+                coalesced = true;
+            }
+            try {
+                return existing.get();
+            } catch (CancellationException ce) {
+                // The owner gave up, not this caller: retry and take over the load if nobody else has
+                logger.debug("In-flight retrieval for '{}' was abandoned by its owner, retrying", key.query());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for an in-flight retrieval");
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof RuntimeException re) throw re;
+                throw new IllegalStateException("Retrieval failed: " + ee.getCause().getMessage(), ee.getCause());
+            }
+        }
+    }
+
+    /** Runs the load this caller owns; it runs on the calling thread so stage timeouts still apply. */
+    private List<Document> load(Key key, CompletableFuture<List<Document>> flight, Supplier<List<Document>> loader) {
+        try {
+            List<Document> docs = loader.get();
+            flight.complete(docs == null ? List.of() : List.copyOf(docs));
+            return docs;
+        } catch (RuntimeException e) {
+            if (e instanceof CancellationException || Thread.currentThread().isInterrupted()) {
+                // Cancelled or timed out: the search itself did not fail, so waiting callers retry
+                cache.asMap().remove(key, flight);
+                flight.cancel(false);
+            } else {
+                flight.completeExceptionally(e); // Caffeine drops failed futures
+            }
+            throw e;
+        }
+    }
+
+    public void invalidateAll() {
+        logger.info("Invalidating retrieval cache ({} entries)", cache.synchronous().estimatedSize());
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * Get cache statistics for debugging/monitoring.
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.synchronous().stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("entries", cache.synchronous().estimatedSize());
+        result.put("weightedBytes", cache.synchronous().policy().eviction()
+            .map(eviction -> eviction.weightedSize().orElse(0L))
+            .orElse(0L));
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("evictions", stats.evictionCount());
+        result.put("coalescedLoads", (long) coalescedLoads.count());
+        return result;
+    }
+
+    static String normalize(String queryText) {
+        return queryText == null ? "" : queryText.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static int weigh(Key key, List<Document> docs) {
+        long bytes = (long) key.query().length() * Character.BYTES;
+        for (Document doc : docs) {
+            String text = doc.getText();
+            bytes += DOCUMENT_OVERHEAD_BYTES + (text != null ? (long) text.length() * Character.BYTES : 0L);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+}
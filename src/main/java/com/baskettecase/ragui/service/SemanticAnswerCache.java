@@ -0,0 +1,311 @@
+package com.baskettecase.ragui.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answer cache keyed by the query embedding. A lookup hits when a stored query of the same
+ * response mode and variant has cosine similarity at or above the configured threshold. The variant
+ * keeps answers apart that must not be replayed for each other although their queries embed alike,
+ * such as answers in different formats or under different length constraints.
+ *
+ * Candidates are found through a small random-hyperplane LSH index: each vector is hashed to a
+ * {@value #SIGNATURE_BITS}-bit signature and lookups probe the matching bucket plus every bucket one
+ * bit away, then score candidates exactly. Entries live in a Caffeine cache bounded by entry count
+ * and TTL, like {@link RetrievalCache}, so eviction is amortized constant time and never scans the
+ * index; evicted entries are dropped from their bucket by a removal listener.
+ *
+ * The query embedding is a model call, so a lookup waits for an embedding admission slot
+ * ({@link LlmAdmissionGate}) and runs under {@code ragui.cache.answer.embed-timeout-ms}, capped by
+ * the request deadline. A lookup that is shed or times out counts as a miss.
+ */
+@Service
+public class SemanticAnswerCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticAnswerCache.class);
+    private static final int SIGNATURE_BITS = 12;
+
+    private final EmbeddingModel embeddingModel;
+    private final PipelineExecutor pipelineExecutor;
+    private final LlmAdmissionGate llmAdmissionGate;
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final long ttlMillis;
+    private final long embedTimeoutNanos;
+
+    private final Cache<Long, Entry> entries;
+    // mode and variant -> signature -> entries; kept in step with the cache by its removal listener
+    private final Map<String, Map<Integer, Set<Entry>>> buckets = new ConcurrentHashMap<>();
+    private volatile float[][] hyperplanes;
+    private final AtomicLong nextId = new AtomicLong();
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> hitCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> missCounters = new ConcurrentHashMap<>();
+    private final Timer lookupTimer;
+
+    public SemanticAnswerCache(EmbeddingModel embeddingModel, MeterRegistry meterRegistry,
+                               PipelineExecutor pipelineExecutor, LlmAdmissionGate llmAdmissionGate,
+                               @Value("${ragui.cache.answer.enabled:false}") boolean enabled,
+                               @Value("${ragui.cache.answer.similarity-threshold:0.95}") double similarityThreshold,
+                               @Value("${ragui.cache.answer.max-entries:1000}") int maxEntries,
+                               @Value("${ragui.cache.answer.ttl-minutes:60}") long ttlMinutes,
+                               @Value("${ragui.cache.answer.embed-timeout-ms:2000}") long embedTimeoutMs) {
+        this.embeddingModel = embeddingModel;
+        this.pipelineExecutor = pipelineExecutor;
+        this.llmAdmissionGate = llmAdmissionGate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        this.embedTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(embedTimeoutMs);
+        Map<String, Map<Integer, Set<Entry>>> index = buckets;
+        this.entries = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(Duration.ofMillis(ttlMillis))
+            .scheduler(Scheduler.systemScheduler())
+            .executor(Runnable::run)
+            .removalListener((Long id, Entry entry, RemovalCause cause) -> {
+                if (entry != null) unindex(index, entry);
+            })
+            .build();
+        this.lookupTimer = Timer.builder("ragui.cache.answer.lookup")
+            .description("Semantic answer cache lookup latency, including the query embedding")
+            .register(meterRegistry);
+        logger.info("SemanticAnswerCache initialized - enabled: {}, similarity-threshold: {}, max-entries: {}, ttl: {}m, embed-timeout: {} ms",
+                   enabled, similarityThreshold, maxEntries, ttlMinutes, embedTimeoutMs);
+    }
+
+    /** Registers the size gauge once the cache is constructed. */
+    @PostConstruct
+    public void registerGauges() {
+        Gauge.builder("ragui.cache.answer.size", this, SemanticAnswerCache::size)
+            .description("Entries held in the semantic answer cache")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Result of a lookup. Carries the query embedding so a miss can be stored without embedding twice.
+     */
+    public static class Lookup {
+        private final String partition;
+        private final float[] vector;
+        public final String answer;
+        public final double similarity;
+
+        Lookup(String partition, float[] vector, String answer, double similarity) {
+            this.partition = partition;
+            this.vector = vector;
+            this.answer = answer;
+            this.similarity = similarity;
+        }
+
+        public boolean isHit() {
+            return answer != null;
+        }
+    }
+
+    /**
+     * Looks up an answer for the query within the given response mode and variant. Returns null when
+     * the cache is disabled or the query could not be embedded.
+     */
+    public Lookup lookup(String mode, String variant, String query) {
+        if (!enabled || query == null || query.isBlank()) return null;
+        long start = System.nanoTime();
+        try {
+            float[] vector = normalize(embed(query));
+            Lookup result = find(mode + '|' + variant, vector);
+            if (result.isHit()) {
+                counter(hitCounters, "ragui.cache.answer.hits", mode).increment();
+                logger.info("[ANSWER CACHE] Hit for mode {} (similarity {})", mode, String.format("%.4f", result.similarity));
+            } else {
+                counter(missCounters, "ragui.cache.answer.misses", mode).increment();
+            }
+            return result;
+        } catch (TimeoutException e) {
+            logger.warn("[ANSWER CACHE] Query embedding did not finish in time, treating as miss");
+            counter(missCounters, "ragui.cache.answer.misses", mode).increment();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            counter(missCounters, "ragui.cache.answer.misses", mode).increment();
+            return null;
+        } catch (Exception e) {
+            logger.warn("[ANSWER CACHE] Lookup failed, treating as miss: {}", e.getMessage());
+            counter(missCounters, "ragui.cache.answer.misses", mode).increment();
+            return null;
+        } finally {
+            lookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Embeds the query on the pipeline executor, holding an embedding admission slot until the model
+     * call really ends, even after the lookup has given up on it.
+     */
+    private float[] embed(String query) throws Exception {
+        long start = System.nanoTime();
+        long budgetNanos = RequestContext.remainingNanos(embedTimeoutNanos);
+        if (budgetNanos <= 0L) throw new TimeoutException("Request deadline reached before the query embedding");
+        // The admission wait counts against the lookup's budget
+        LlmAdmissionGate.Permit permit = llmAdmissionGate.acquire(PipelineMetrics.EMBEDDING, budgetNanos);
+        budgetNanos -= System.nanoTime() - start;
+        AtomicBoolean started = new AtomicBoolean();
+        try {
+            return pipelineExecutor.call(() -> {
+                started.set(true);
+                try {
+                    return embeddingModel.embed(query);
+                } finally {
+                    permit.release();
+                }
+            }, budgetNanos, TimeUnit.NANOSECONDS);
+        } finally {
+            if (!started.get()) permit.release(); // cancelled before it ran
+        }
+    }
+
+    /** Stores the answer produced after a miss. */
+    public void put(Lookup miss, String answer) {
+        if (!enabled || miss == null || miss.vector == null || answer == null || answer.isBlank()) return;
+        Entry entry = new Entry(nextId.incrementAndGet(), miss.partition, miss.vector, signature(miss.vector), answer, System.currentTimeMillis());
+        // Index first: if the put evicts the new entry straight away, the listener unindexes it
+        buckets.computeIfAbsent(entry.partition, p -> new ConcurrentHashMap<>())
+            .computeIfAbsent(entry.signature, s -> ConcurrentHashMap.newKeySet())
+            .add(entry);
+        entries.put(entry.id, entry);
+    }
+
+    public void clear() {
+        entries.invalidateAll();
+        buckets.clear();
+    }
+
+    public int size() {
+        return (int) entries.estimatedSize();
+    }
+
+    private Lookup find(String partition, float[] vector) {
+        int signature = signature(vector);
+        Map<Integer, Set<Entry>> partitionBuckets = buckets.get(partition);
+        if (partitionBuckets == null) return new Lookup(partition, vector, null, 0.0);
+
+        long now = System.currentTimeMillis();
+        Entry best = null;
+        double bestSimilarity = -1.0;
+        for (int flip = -1; flip < SIGNATURE_BITS; flip++) {
+            int probe = flip < 0 ? signature : signature ^ (1 << flip);
+            Set<Entry> candidates = partitionBuckets.get(probe);
+            if (candidates == null) continue;
+            for (Entry candidate : candidates) {
+                if (now - candidate.createdAt > ttlMillis) continue; // expired, not yet swept
+                double similarity = dot(vector, candidate.vector);
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = candidate;
+                }
+            }
+        }
+        // getIfPresent also records the access for the eviction policy
+        if (best != null && bestSimilarity >= similarityThreshold && entries.getIfPresent(best.id) != null) {
+            return new Lookup(partition, vector, best.answer, bestSimilarity);
+        }
+        return new Lookup(partition, vector, null, Math.max(bestSimilarity, 0.0));
+    }
+
+    private static void unindex(Map<String, Map<Integer, Set<Entry>>> buckets, Entry entry) {
+        Map<Integer, Set<Entry>> partitionBuckets = buckets.get(entry.partition);
+        if (partitionBuckets == null) return;
+        partitionBuckets.computeIfPresent(entry.signature, (signature, bucket) -> {
+            bucket.remove(entry);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    private int signature(float[] vector) {
+        float[][] planes = hyperplanes;
+        if (planes == null || planes[0].length != vector.length) planes = resetHyperplanes(vector.length);
+        int signature = 0;
+        for (int bit = 0; bit < SIGNATURE_BITS; bit++) {
+            if (dot(vector, planes[bit]) >= 0) signature |= 1 << bit;
+        }
+        return signature;
+    }
+
+    /** (Re)creates the hyperplanes for a new embedding dimension; entries of the old dimension are dropped. */
+    private synchronized float[][] resetHyperplanes(int dimensions) {
+        float[][] planes = hyperplanes;
+        if (planes != null && planes[0].length == dimensions) return planes;
+        // Fixed seed so signatures are stable for the lifetime of the index
+        Random random = new Random(42L);
+        planes = new float[SIGNATURE_BITS][dimensions];
+        for (float[] plane : planes) {
+            for (int i = 0; i < plane.length; i++) plane[i] = (float) random.nextGaussian();
+        }
+        hyperplanes = planes;
+        clear();
+        return planes;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        if (norm == 0) return vector;
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) result[i] = (float) (vector[i] / norm);
+        return result;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    private Counter counter(Map<String, Counter> counters, String name, String mode) {
+        return counters.computeIfAbsent(PipelineMetrics.mode(mode), m -> Counter.builder(name).tag("mode", m).register(meterRegistry));
+    }
+
+    private static final class Entry {
+        final long id;
+        final String partition;
+        final float[] vector;
+        final int signature;
+        final String answer;
+        final long createdAt;
+
+        Entry(long id, String partition, float[] vector, int signature, String answer, long createdAt) {
+            this.id = id;
+            this.partition = partition;
+            this.vector = vector;
+            this.signature = signature;
+            this.answer = answer;
+            this.createdAt = createdAt;
+        }
+    }
+}
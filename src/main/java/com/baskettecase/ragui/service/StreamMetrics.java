@@ -0,0 +1,88 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.model.Job;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming UX metrics per response mode:
+ * <ul>
+ *   <li>{@code ragui.stream.ttft} - from /api/job receipt to the first chunk appended to the job</li>
+ *   <li>{@code ragui.stream.chunk.gap} - time between consecutive chunks</li>
+ *   <li>{@code ragui.stream.tokens.per.second} - generation rate between the first and last chunk</li>
+ *   <li>{@code ragui.stream.delivery.delay} - from chunk append to the SSE write, i.e. delivery rather
+ *       than generation latency</li>
+ * </ul>
+ */
+@Component
+public class StreamMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final TokenCounter tokenCounter;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> tokenRates = new ConcurrentHashMap<>();
+
+    public StreamMetrics(MeterRegistry meterRegistry, TokenCounter tokenCounter) {
+        this.meterRegistry = meterRegistry;
+        this.tokenCounter = tokenCounter;
+    }
+
+    /**
+     * Records a chunk just appended to the job.
+     * @param sinceNanos the value returned by {@link Job#addStreamChunk(String)}
+     */
+    public void recordChunk(Job job, long sinceNanos) {
+        String name = job.getChunkCount() == 1 ? "ragui.stream.ttft" : "ragui.stream.chunk.gap";
+        timer(name, job.getMode()).record(sinceNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDelivery(String mode, long delayNanos) {
+        timer("ragui.stream.delivery.delay", mode).record(delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts the streamed tokens once the job has finished and records the generation rate.
+     * Must run before the terminal status is published so the SSE summary can include it; later calls
+     * for the same job are ignored.
+     */
+    public void recordCompletion(Job job) {
+        if (job.getChunkCount() == 0 || job.getStreamTokens() >= 0) return;
+        StringBuilder text = new StringBuilder();
+        for (Job.StreamChunkEvent chunkEvent : job.getAllChunkEvents()) {
+            if (chunkEvent.chunk != null) text.append(chunkEvent.chunk);
+        }
+        job.setStreamTokens(tokenCounter.count(text.toString()));
+        double rate = tokensPerSecond(job);
+        if (rate > 0) {
+            tokenRates.computeIfAbsent(PipelineMetrics.mode(job.getMode()), mode -> DistributionSummary.builder("ragui.stream.tokens.per.second")
+                    .description("Streamed answer tokens per second between the first and last chunk")
+                    .baseUnit("tokens/s")
+                    .tag("mode", mode)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry))
+                .record(rate);
+        }
+    }
+
+    /** Tokens per second between the first and last chunk, or 0 when there is no measurable span. */
+    public static double tokensPerSecond(Job job) {
+        long spanNanos = job.getLastChunkNanos() - job.getFirstChunkNanos();
+        if (job.getStreamTokens() <= 0 || job.getChunkCount() < 2 || spanNanos <= 0) return 0.0;
+        return job.getStreamTokens() / (spanNanos / 1_000_000_000.0);
+    }
+
+    private Timer timer(String name, String mode) {
+        String tag = PipelineMetrics.mode(mode);
+        return timers.computeIfAbsent(name + '|' + tag, key -> Timer.builder(name)
+            .tag("mode", tag)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .publishPercentileHistogram()
+            .register(meterRegistry));
+    }
+}
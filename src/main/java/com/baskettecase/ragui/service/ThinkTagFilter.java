@@ -0,0 +1,103 @@
+package com.baskettecase.ragui.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Incrementally strips Qwen-style &lt;think&gt;...&lt;/think&gt; blocks from a token stream.
+ *
+ * Tags may be split across chunks, so any trailing text that could still be the start of a tag
+ * is held back until the next chunk decides it. Whitespace before the first visible answer
+ * character is dropped, matching the old extractAnswer behaviour. Not thread-safe: feed it from
+ * a single stream subscriber.
+ */
+class ThinkTagFilter {
+    private static final String OPEN_TAG = "<think>";
+    private static final String CLOSE_TAG = "</think>";
+
+    private final Consumer<String> downstream;
+    private final StringBuilder pending = new StringBuilder();
+    private boolean insideThink = false;
+    private boolean answerStarted = false;
+
+    ThinkTagFilter(Consumer<String> downstream) {
+        this.downstream = downstream;
+    }
+
+    /** Feeds the next raw chunk from the model. */
+    void accept(String chunk) {
+        if (chunk == null || chunk.isEmpty()) return;
+        pending.append(chunk);
+        process();
+    }
+
+    /** Flushes held-back text at end of stream; an unterminated think block is discarded. */
+    void flush() {
+        if (!insideThink && pending.length() > 0) {
+            emit(pending.toString());
+        }
+        pending.setLength(0);
+    }
+
+    /** True once any visible answer text has been forwarded. */
+    boolean hasAnswer() {
+        return answerStarted;
+    }
+
+    private void process() {
+        while (pending.length() > 0) {
+            if (insideThink) {
+                int close = pending.indexOf(CLOSE_TAG);
+                if (close >= 0) {
+                    pending.delete(0, close + CLOSE_TAG.length());
+                    insideThink = false;
+                    continue;
+                }
+                // Discard reasoning, keeping only a possible partial closing tag
+                int keep = partialTagLength(CLOSE_TAG);
+                pending.delete(0, pending.length() - keep);
+                return;
+            }
+
+            int open = pending.indexOf(OPEN_TAG);
+            int strayClose = pending.indexOf(CLOSE_TAG);
+            if (open >= 0 && (strayClose < 0 || open < strayClose)) {
+                emit(pending.substring(0, open));
+                pending.delete(0, open + OPEN_TAG.length());
+                insideThink = true;
+                continue;
+            }
+            if (strayClose >= 0) {
+                // Closing tag without an opening one: drop the tag itself
+                emit(pending.substring(0, strayClose));
+                pending.delete(0, strayClose + CLOSE_TAG.length());
+                continue;
+            }
+            int keep = Math.max(partialTagLength(OPEN_TAG), partialTagLength(CLOSE_TAG));
+            emit(pending.substring(0, pending.length() - keep));
+            pending.delete(0, pending.length() - keep);
+            return;
+        }
+    }
+
+    /** Length of the longest suffix of pending that is a proper prefix of the tag. */
+    private int partialTagLength(String tag) {
+        int max = Math.min(tag.length() - 1, pending.length());
+        for (int len = max; len > 0; len--) {
+            int offset = pending.length() - len;
+            int i = 0;
+            while (i < len && pending.charAt(offset + i) == tag.charAt(i)) i++;
+            if (i == len) return len;
+        }
+        return 0;
+    }
+
+    private void emit(String text) {
+        if (text.isEmpty()) return;
+        if (!answerStarted) {
+            text = text.stripLeading();
+            if (text.isEmpty()) return;
+            answerStarted = true;
+        }
+        downstream.accept(text);
+    }
+}
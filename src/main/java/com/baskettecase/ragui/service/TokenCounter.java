@@ -0,0 +1,41 @@
+package com.baskettecase.ragui.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * BPE token counting for context budgeting, using the cl100k_base vocabulary that ships inside the
+ * jtokkit jar. Counting does not materialize a token list; truncation cuts the original text at a
+ * token boundary so no partial characters are produced.
+ */
+@Component
+public class TokenCounter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenCounter.class);
+
+    private final Encoding encoding;
+
+    public TokenCounter() {
+        this.encoding = Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+        logger.info("TokenCounter initialized with encoding {}", encoding.getName());
+    }
+
+    public int count(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        return encoding.countTokensOrdinary(text);
+    }
+
+    /** Returns the longest prefix of the text that fits in maxTokens tokens. */
+    public String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty()) return text;
+        if (maxTokens <= 0) return "";
+        EncodingResult result = encoding.encodeOrdinary(text, maxTokens);
+        if (!result.isTruncated()) return text;
+        return text.substring(0, Math.min(text.length(), result.getLastProcessedCharacterIndex() + 1));
+    }
+}
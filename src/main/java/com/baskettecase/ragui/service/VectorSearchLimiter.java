@@ -0,0 +1,241 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive (AIMD) concurrency limit for vector store searches, so piled-up HNSW scans cannot
+ * saturate Postgres.
+ *
+ * The no-load baseline is the minimum search latency over the last two windows of
+ * {@code baseline-window} samples, so it follows slow drift (index growth, a new database host).
+ * Only searches that finish while the limit is less than half used are sampled; under sustained
+ * overload the baseline is kept rather than re-learned from overloaded latencies.
+ * A search that completes within {@code latency-tolerance} x baseline while the limit was at least
+ * half used adds {@code 1/limit} (about +1 per round trip); a slower or failed search multiplies the
+ * limit by {@code backoff-ratio}, at most once per round trip. Searches over the limit wait in a
+ * bounded FIFO queue and are shed with {@link VectorStoreOverloadedException} when it is full or
+ * the wait exceeds {@code max-queue-wait-ms}.
+ */
+@Component
+public class VectorSearchLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorSearchLimiter.class);
+
+    private final boolean enabled;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+    private final int maxQueue;
+    private final long maxQueueWaitNanos;
+    private final int baselineWindow;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition slotFreed = lock.newCondition();
+    // Guarded by lock
+    private double limit;
+    private int inFlight = 0;
+    private int waiting = 0;
+    private long lastDecreaseNanos = 0L;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private long previousWindowMinNanos = Long.MAX_VALUE;
+    private int windowSamples = 0;
+
+    private final MeterRegistry meterRegistry;
+    private final Timer searchLatency;
+    private final Timer queueWait;
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedQueueTimeout;
+
+    public VectorSearchLimiter(MeterRegistry meterRegistry,
+                               @Value("${ragui.vectorstore.limiter.enabled:true}") boolean enabled,
+                               @Value("${ragui.vectorstore.limiter.initial-limit:8}") int initialLimit,
+                               @Value("${ragui.vectorstore.limiter.min-limit:2}") int minLimit,
+                               @Value("${ragui.vectorstore.limiter.max-limit:64}") int maxLimit,
+                               @Value("${ragui.vectorstore.limiter.latency-tolerance:2.0}") double latencyTolerance,
+                               @Value("${ragui.vectorstore.limiter.backoff-ratio:0.9}") double backoffRatio,
+                               @Value("${ragui.vectorstore.limiter.baseline-window:200}") int baselineWindow,
+                               @Value("${ragui.vectorstore.limiter.max-queue:64}") int maxQueue,
+                               @Value("${ragui.vectorstore.limiter.max-queue-wait-ms:2000}") long maxQueueWaitMs) {
+        this.enabled = enabled;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.latencyTolerance = latencyTolerance;
+        this.backoffRatio = backoffRatio;
+        this.baselineWindow = Math.max(1, baselineWindow);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMs);
+
+        this.meterRegistry = meterRegistry;
+
+        this.searchLatency = Timer.builder("ragui.vectorstore.search")
+            .description("Vector store search latency (excluding queue wait)")
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry);
+        this.queueWait = Timer.builder("ragui.vectorstore.limiter.wait")
+            .description("Time vector store searches waited for a slot")
+            .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("ragui.vectorstore.limiter.rejected")
+            .description("Vector store searches shed by the adaptive limiter")
+            .tag("reason", "queue_full")
+            .register(meterRegistry);
+        this.rejectedQueueTimeout = Counter.builder("ragui.vectorstore.limiter.rejected")
+            .description("Vector store searches shed by the adaptive limiter")
+            .tag("reason", "queue_timeout")
+            .register(meterRegistry);
+        logger.info("VectorSearchLimiter initialized - enabled: {}, limit: {} ({}..{}), tolerance: {}x baseline, max-queue: {}, max-queue-wait: {} ms",
+                   enabled, limit, this.minLimit, this.maxLimit, latencyTolerance, maxQueue, maxQueueWaitMs);
+    }
+
+    /** Registers the limit, in-flight and queue gauges once the limiter is constructed. */
+    @PostConstruct
+    public void registerGauges() {
+        Gauge.builder("ragui.vectorstore.limiter.limit", this, VectorSearchLimiter::currentLimit)
+            .description("Current adaptive concurrency limit for vector store searches")
+            .register(meterRegistry);
+        Gauge.builder("ragui.vectorstore.limiter.in.flight", this, VectorSearchLimiter::inFlight)
+            .description("Vector store searches running")
+            .register(meterRegistry);
+        Gauge.builder("ragui.vectorstore.limiter.queue.depth", this, VectorSearchLimiter::queueDepth)
+            .description("Vector store searches waiting for a slot")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Runs one vector store search under the limit.
+     * @throws VectorStoreOverloadedException when the search is shed
+     */
+    public <T> T execute(Supplier<T> search) {
+        if (!enabled) return search.get();
+        long startNanos = acquire();
+        boolean success = false;
+        try {
+            T result = search.get();
+            success = true;
+            return result;
+        } finally {
+            release(startNanos, System.nanoTime() - startNanos, success);
+        }
+    }
+
+    /** Waits for a slot; returns the time the search was admitted. */
+    private long acquire() {
+        long enqueuedNanos = System.nanoTime();
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                if (waiting >= maxQueue) {
+                    rejectedQueueFull.increment();
+                    throw reject("queue full");
+                }
+                waiting++;
+                try {
+                    long remaining = maxQueueWaitNanos;
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0L) {
+                            rejectedQueueTimeout.increment();
+                            throw reject("waited " + TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos) + " ms");
+                        }
+                        remaining = slotFreed.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for a vector store slot");
+                } finally {
+                    waiting--;
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        long now = System.nanoTime();
+        queueWait.record(now - enqueuedNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    private void release(long startNanos, long latencyNanos, boolean success) {
+        if (success) searchLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+        lock.lock();
+        try {
+            int usedAtRelease = inFlight;
+            inFlight--;
+            boolean noBaseline = windowMinNanos == Long.MAX_VALUE && previousWindowMinNanos == Long.MAX_VALUE;
+            if (success && (usedAtRelease < limit / 2 || noBaseline)) {
+                windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+                if (++windowSamples >= baselineWindow) {
+                    previousWindowMinNanos = windowMinNanos;
+                    windowMinNanos = Long.MAX_VALUE;
+                    windowSamples = 0;
+                }
+            }
+            long baseline = Math.min(windowMinNanos, previousWindowMinNanos);
+            boolean congested = !success || latencyNanos > baseline * latencyTolerance;
+            if (congested) {
+                // Only searches started after the last decrease reflect it, so back off once per round trip
+                if (startNanos > lastDecreaseNanos) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = System.nanoTime();
+                }
+            } else if (usedAtRelease >= limit / 2) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private VectorStoreOverloadedException reject(String reason) {
+        // Roughly the time for the queue ahead to drain at the current limit
+        long baseline = Math.min(windowMinNanos, previousWindowMinNanos);
+        double baselineSeconds = baseline == Long.MAX_VALUE ? 1.0 : baseline / 1_000_000_000.0;
+        long retryAfter = Math.max(1L, (long) Math.ceil(baselineSeconds * latencyTolerance * (waiting + 1) / limit));
+        logger.warn("Vector store search shed: {} (limit {}, in flight {}, queued {})", reason, String.format("%.1f", limit), inFlight, waiting);
+        return new VectorStoreOverloadedException(reason, retryAfter);
+    }
+
+    /** Current adaptive limit; fractional while it grows additively. */
+    public double currentLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Searches running. */
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Searches waiting for a slot. */
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
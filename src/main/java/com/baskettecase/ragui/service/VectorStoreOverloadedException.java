@@ -0,0 +1,21 @@
+package com.baskettecase.ragui.service;
+
+/**
+ * Thrown when a vector store search is shed by {@link VectorSearchLimiter}: the wait queue is full or
+ * the search waited longer than the maximum queue time.
+ */
+public class VectorStoreOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public VectorStoreOverloadedException(String reason, long retryAfterSeconds) {
+        super("Vector store overloaded (" + reason + "), retry after " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
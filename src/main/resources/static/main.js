@@ -254,12 +254,15 @@ function ChatApp() {
 
                     for (const line of lines) {
                         if (line.trim() === '') continue; // Ignore empty lines
+                        if (line.startsWith(':')) continue; // SSE comment, e.g. the server's keep-alive
 
                         // We now display the raw line, but still need to check if it's a control message
                         const payload = line.startsWith('data:') ? line.substring(5).trim() : line;
 
                         try {
                             const data = JSON.parse(payload);
+                            // Real token streaming can send chunks like "42" or "true"; only objects are control messages
+                            if (data === null || typeof data !== 'object' || Array.isArray(data)) throw new Error('not a control message');
                             // --- JSON: This is a status/control message, handle it silently ---
                             if (data.statusMessage) {
                                 setStatusLog(log => (log.length === 0 || log[log.length - 1] !== data.statusMessage) ? [...log, data.statusMessage] : log);
@@ -267,8 +270,9 @@ function ChatApp() {
                             if (typeof data.progress === "number") {
                                 setProgress(data.progress);
                             }
-                            if (data.status === 'COMPLETED' || data.status === 'FAILED') {
+                            if (data.status === 'COMPLETED' || data.status === 'FAILED' || data.status === 'CANCELLED') {
                                 console.log(`[Fetch SSE] Received terminal status: ${data.status}`);
+                                if (data.summary) console.log('[Fetch SSE] Stream summary:', data.summary);
                                 if (timeoutId) clearTimeout(timeoutId);
                                 setLoading(false);
                                 setProgress(100);
@@ -385,6 +389,10 @@ function ChatApp() {
                     rawRag: llmMode === "raw-rag"
                 })
             });
+            if (response.status === 429) {
+                const retryAfter = response.headers.get("Retry-After");
+                throw new Error(`The service is busy, please retry${retryAfter ? ` in ${retryAfter} seconds` : " shortly"}.`);
+            }
             if (!response.ok) {
                 const errorText = await response.text();
                 throw new Error(`Backend error: ${response.status} ${errorText}`);
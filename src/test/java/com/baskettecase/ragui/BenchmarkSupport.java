@@ -0,0 +1,68 @@
+package com.baskettecase.ragui;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal harness for the Surefire-run microbenchmarks ({@code @Tag("benchmark")}, run with
+ * {@code mvn test -Pbenchmark}). Each benchmark warms up, then times single operations and reports
+ * percentiles. Results are printed, and the benchmarks only assert loose bounds so they do not
+ * flake on a busy machine.
+ */
+public final class BenchmarkSupport {
+
+    /** Keeps results reachable so the JIT cannot drop the measured work. */
+    private static volatile Object blackhole;
+
+    private BenchmarkSupport() {
+    }
+
+    /** Per-operation latencies in nanoseconds, sorted ascending. */
+    public record Result(String name, long[] sortedNanos) {
+
+        public long percentile(double p) {
+            int index = (int) Math.ceil(p / 100.0 * sortedNanos.length) - 1;
+            return sortedNanos[Math.max(0, Math.min(sortedNanos.length - 1, index))];
+        }
+
+        public double meanNanos() {
+            return Arrays.stream(sortedNanos).average().orElse(0.0);
+        }
+
+        public Result print() {
+            System.out.printf(Locale.ROOT, "[benchmark] %-48s n=%-7d mean=%10s p50=%10s p99=%10s max=%10s%n",
+                name, sortedNanos.length, format((long) meanNanos()), format(percentile(50)),
+                format(percentile(99)), format(sortedNanos[sortedNanos.length - 1]));
+            return this;
+        }
+    }
+
+    /** Runs the operation {@code warmup} times untimed, then {@code iterations} times timed. */
+    public static Result measure(String name, int warmup, int iterations, Callable<?> operation) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            blackhole = operation.call();
+        }
+        long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            blackhole = operation.call();
+            samples[i] = System.nanoTime() - start;
+        }
+        return of(name, samples);
+    }
+
+    public static Result of(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return new Result(name, sorted);
+    }
+
+    public static String format(long nanos) {
+        if (nanos >= TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format(Locale.ROOT, "%.2f ms", nanos / 1_000_000.0);
+        }
+        return String.format(Locale.ROOT, "%.2f us", nanos / 1_000.0);
+    }
+}
@@ -0,0 +1,158 @@
+package com.baskettecase.ragui.controller;
+
+import com.baskettecase.ragui.model.Job;
+import com.baskettecase.ragui.service.StreamMetrics;
+import com.baskettecase.ragui.service.TokenCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobControllerSseTest {
+
+    private static final long NO_KEEP_ALIVE = TimeUnit.HOURS.toNanos(1);
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private StreamMetrics streamMetrics;
+    private ExecutorService writer;
+
+    @BeforeEach
+    void setUp() {
+        streamMetrics = new StreamMetrics(new SimpleMeterRegistry(), new TokenCounter());
+        writer = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdownNow();
+    }
+
+    @Test
+    void slowSubscriberDoesNotBlockProducerOrOtherSubscribers() throws Exception {
+        Job job = newJob();
+        RecordingEmitter slow = subscribe(job);
+        slow.stall();
+        RecordingEmitter fast = subscribe(job);
+
+        List<String> chunks = IntStream.range(0, 20).mapToObj(i -> "chunk-" + i).toList();
+        Thread producer = Thread.ofVirtual().start(() -> chunks.forEach(job::addStreamChunk));
+
+        // The slow client's first send stays blocked until released, so the producer and the fast
+        // client can only finish if neither waits for it
+        assertTrue(producer.join(TIMEOUT), "producer blocked behind a stalled client");
+        await(() -> fast.chunks().size() == chunks.size());
+        assertEquals(1, slow.stalledSends.get());
+        assertTrue(slow.chunks().isEmpty());
+        slow.release();
+        await(() -> slow.chunks().size() == chunks.size());
+        assertEquals(chunks, fast.chunks());
+        assertEquals(chunks, slow.chunks());
+    }
+
+    @Test
+    void replaysHistoryThenStreamsLiveUpdatesAndCompletes() throws Exception {
+        Job job = newJob();
+        job.addStreamChunk("a");
+        job.addStreamChunk("b");
+        RecordingEmitter emitter = subscribe(job);
+        job.addStreamChunk("c");
+        job.setStatus(Job.Status.COMPLETED);
+        job.addStatusEvent(Job.Status.COMPLETED.name(), "done", 100);
+
+        assertTrue(emitter.completed.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        assertEquals(List.of("a", "b", "c"), emitter.chunks());
+        String terminal = emitter.data.get(emitter.data.size() - 1);
+        assertTrue(terminal.startsWith("{\"status\":\"COMPLETED\""), terminal);
+        assertTrue(terminal.contains("\"summary\":{"), terminal);
+    }
+
+    @Test
+    void chunkAppendedJustBeforeCompletionIsSentBeforeTheTerminalEvent() throws Exception {
+        Job job = newJob();
+        job.addStreamChunk("a");
+        // The job appends its last chunk and completes while the subscriber is sending "a"
+        RecordingEmitter emitter = new RecordingEmitter() {
+            @Override
+            void onData(String payload) {
+                super.onData(payload);
+                if ("a".equals(payload)) {
+                    job.addStreamChunk("b");
+                    job.setStatus(Job.Status.COMPLETED);
+                }
+            }
+        };
+        JobController.SseSubscriber subscriber = new JobController.SseSubscriber(job, emitter, streamMetrics, NO_KEEP_ALIVE, writer);
+        job.addListener(subscriber);
+        subscriber.signal();
+
+        assertTrue(emitter.completed.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        assertEquals(List.of("a", "b"), emitter.chunks());
+        assertTrue(emitter.data.get(emitter.data.size() - 1).startsWith("{\"status\":\"COMPLETED\""));
+    }
+
+    @Test
+    void heartbeatQueuesTheKeepAliveInsteadOfWaitingForASlowSend() throws Exception {
+        Job job = newJob();
+        RecordingEmitter emitter = new RecordingEmitter();
+        JobController.SseSubscriber subscriber = new JobController.SseSubscriber(job, emitter, streamMetrics, 0L, writer);
+        job.addListener(subscriber);
+        subscriber.signal();
+        job.addStreamChunk("a");
+        await(() -> emitter.chunks().size() == 1);
+
+        emitter.stall();
+        job.addStreamChunk("b");
+        await(() -> emitter.stalledSends.get() == 1); // the send of "b" is now in progress
+        job.addStreamChunk("c");
+        Thread heartbeat = Thread.ofVirtual().start(job::heartbeat);
+        assertTrue(heartbeat.join(TIMEOUT), "heartbeat waited for a stalled send");
+        emitter.release();
+
+        // The next pass has data to send, which proves the connection without a keep-alive
+        await(() -> emitter.chunks().size() == 3);
+        assertEquals(List.of("a", "b", "c"), emitter.chunks());
+        assertEquals(0, emitter.comments.get());
+
+        // A quiet job gets the keep-alive from the drain
+        job.heartbeat();
+        await(() -> emitter.comments.get() == 1);
+    }
+
+    private Job newJob() {
+        Job job = new Job("job-" + System.nanoTime());
+        job.setMode("rag_only");
+        return job;
+    }
+
+    private RecordingEmitter subscribe(Job job) {
+        RecordingEmitter emitter = new RecordingEmitter();
+        JobController.SseSubscriber subscriber = new JobController.SseSubscriber(job, emitter, streamMetrics, NO_KEEP_ALIVE, writer);
+        job.addListener(subscriber);
+        subscriber.signal();
+        return emitter;
+    }
+
+    /** Polls until the condition holds; the timeout only bounds a hung test, it is not a latency target. */
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        await(condition, TIMEOUT.toMillis());
+    }
+
+    static void await(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within " + timeoutMillis + " ms");
+            Thread.sleep(5);
+        }
+    }
+}
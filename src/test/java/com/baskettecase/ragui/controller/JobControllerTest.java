@@ -0,0 +1,240 @@
+package com.baskettecase.ragui.controller;
+
+import com.baskettecase.ragui.dto.ChatRequest;
+import com.baskettecase.ragui.model.Job;
+import com.baskettecase.ragui.service.JobCancellationMonitor;
+import com.baskettecase.ragui.service.JobService;
+import com.baskettecase.ragui.service.LlmAdmissionGate;
+import com.baskettecase.ragui.service.PipelineMetrics;
+import com.baskettecase.ragui.service.RagServiceFixture;
+import com.baskettecase.ragui.service.RequestCoalescer;
+import com.baskettecase.ragui.service.StreamMetrics;
+import com.baskettecase.ragui.service.TokenCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.http.ResponseEntity;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Drives {@link JobController#submitJob} against a {@link RagServiceFixture} pipeline. */
+class JobControllerTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private final CountDownLatch modelCalled = new CountDownLatch(1);
+    private final CountDownLatch modelReleased = new CountDownLatch(1);
+    private final CountDownLatch modelInterrupted = new CountDownLatch(1);
+    private final ExecutorService sseWriter = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Function<Prompt, String> replies = prompt -> {
+        awaitQuietly(modelReleased);
+        return "A Postgres extension.";
+    };
+    private RagServiceFixture fixture;
+    private JobService jobService;
+    private JobCancellationMonitor cancellationMonitor;
+    private RequestCoalescer coalescer;
+    private StreamMetrics streamMetrics;
+    // One answer slot and no wait queue, so holding the slot makes the queue full
+    private LlmAdmissionGate gate;
+    private JobController controller;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new RagServiceFixture(new RagServiceFixture.ScriptedChatModel(prompt -> replies.apply(prompt)));
+        jobService = new JobService(fixture.registry, 1_000, 600, 67_108_864L, 15);
+        jobService.start();
+        cancellationMonitor = new JobCancellationMonitor(fixture.registry, true, 15);
+        coalescer = new RequestCoalescer(fixture.registry, true);
+        streamMetrics = new StreamMetrics(fixture.registry, new TokenCounter());
+        gate = new LlmAdmissionGate(new SimpleMeterRegistry(), true, 0, 10_000, 8, 8, 1, 8);
+        controller = new JobController();
+        inject("jobService", jobService);
+        inject("ragService", fixture.ragService);
+        inject("pipelineExecutor", fixture.executor);
+        inject("streamMetrics", streamMetrics);
+        inject("llmAdmissionGate", gate);
+        inject("requestCoalescer", coalescer);
+        inject("jobCancellationMonitor", cancellationMonitor);
+        inject("heartbeatSeconds", 5L);
+        inject("deadlineSeconds", 180L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        modelReleased.countDown();
+        cancellationMonitor.destroy();
+        sseWriter.shutdownNow();
+        jobService.destroy();
+        fixture.close();
+    }
+
+    @Test
+    void followerOfARunningRequestIsAdmittedWhenTheAnswerQueueIsFull() throws Exception {
+        Job leader = submitted(controller.submitJob(request("what is pgvector")));
+        LlmAdmissionGate.Permit held = gate.acquire(PipelineMetrics.LLM, TimeUnit.SECONDS.toNanos(1));
+
+        // An identical request costs no LLM call, so a full queue does not turn it away
+        Job follower = submitted(controller.submitJob(request("What is pgvector?")));
+        ResponseEntity<?> other = controller.submitJob(request("what is hnsw"));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, other.getStatusCode());
+        assertNotNull(other.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        held.release();
+        modelReleased.countDown();
+        awaitFinished(leader);
+        awaitFinished(follower);
+        assertEquals(Job.Status.COMPLETED, leader.getStatus(), leader.getError());
+        assertEquals(Job.Status.COMPLETED, follower.getStatus(), follower.getError());
+        assertFalse(chunks(leader).isEmpty());
+        assertEquals(chunks(leader), chunks(follower));
+    }
+
+    @Test
+    void rejectedLeaderClosesItsFlight() throws Exception {
+        modelReleased.countDown();
+        LlmAdmissionGate.Permit held = gate.acquire(PipelineMetrics.LLM, TimeUnit.SECONDS.toNanos(1));
+        ChatRequest request = request("what is pgvector");
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, controller.submitJob(request).getStatusCode());
+
+        // Nothing is left in flight for a later identical request to wait on
+        String mode = PipelineMetrics.mode(fixture.ragService.determineResponseMode(request));
+        Job probe = new Job("probe");
+        RequestCoalescer.Flight flight = coalescer.join(mode, request.getMessage(), probe);
+        assertTrue(flight.isLeader(probe), "a rejected leader's flight is still open");
+        coalescer.complete(flight, null);
+
+        held.release();
+        Job retried = submitted(controller.submitJob(request));
+        awaitFinished(retried);
+        assertEquals(Job.Status.COMPLETED, retried.getStatus(), retried.getError());
+    }
+
+    @Test
+    void clientDisconnectCancelsTheRunningModelCall() throws Exception {
+        useCancellationGrace(1);
+        replies = this::answerWhenReleased;
+        Job job = submitted(controller.submitJob(request("what is pgvector")));
+        RecordingEmitter client = subscribe(job);
+        assertTrue(modelCalled.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        client.disconnect();
+
+        // The next keep-alive fails, and one grace period later the blocked model call is interrupted
+        assertTrue(modelInterrupted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), "the model call was not aborted");
+        awaitFinished(job);
+        assertEquals(Job.Status.CANCELLED, job.getStatus());
+        assertTrue(chunks(job).isEmpty(), chunks(job).toString());
+    }
+
+    @Test
+    void connectedFollowerKeepsTheRunAliveAfterTheLeadersClientLeaves() throws Exception {
+        useCancellationGrace(1);
+        replies = this::answerWhenReleased;
+        Job leader = submitted(controller.submitJob(request("what is pgvector")));
+        RecordingEmitter leaderClient = subscribe(leader);
+        assertTrue(modelCalled.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        Job follower = submitted(controller.submitJob(request("what is pgvector")));
+        RecordingEmitter followerClient = subscribe(follower);
+
+        leaderClient.disconnect();
+
+        // Several sweeps past the grace period: the follower's client still wants the answer
+        assertFalse(modelInterrupted.await(3, TimeUnit.SECONDS), "the shared run was cancelled");
+        modelReleased.countDown();
+        awaitFinished(follower);
+        assertEquals(Job.Status.COMPLETED, follower.getStatus(), follower.getError());
+        assertTrue(followerClient.completed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(followerClient.chunks().isEmpty());
+        assertEquals(chunks(follower), followerClient.chunks());
+    }
+
+    private Job submitted(ResponseEntity<?> response) {
+        assertEquals(HttpStatus.OK, response.getStatusCode(), String.valueOf(response.getBody()));
+        Job job = jobService.getJob(((JobController.JobIdResponse) response.getBody()).getJobId());
+        assertNotNull(job);
+        return job;
+    }
+
+    /** A model call that blocks until released, noting whether cancellation interrupted it. */
+    private String answerWhenReleased(Prompt prompt) {
+        modelCalled.countDown();
+        try {
+            if (!modelReleased.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) throw new IllegalStateException("never released");
+        } catch (InterruptedException e) {
+            modelInterrupted.countDown();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("model call aborted", e);
+        }
+        return "A Postgres extension.";
+    }
+
+    /** Replaces the cancellation monitor with one that cancels after {@code graceSeconds} without a client. */
+    private void useCancellationGrace(long graceSeconds) {
+        cancellationMonitor.destroy();
+        cancellationMonitor = new JobCancellationMonitor(fixture.registry, true, graceSeconds);
+        inject("jobCancellationMonitor", cancellationMonitor);
+    }
+
+    /** Connects an SSE client that sends a keep-alive on every heartbeat, so a dead client is found at once. */
+    private RecordingEmitter subscribe(Job job) {
+        RecordingEmitter emitter = new RecordingEmitter();
+        JobController.SseSubscriber subscriber = new JobController.SseSubscriber(job, emitter, streamMetrics, 0L, sseWriter);
+        job.addListener(subscriber);
+        subscriber.signal();
+        return emitter;
+    }
+
+    private static ChatRequest request(String message) {
+        ChatRequest request = new ChatRequest();
+        request.setMessage(message);
+        request.setUsePureLlm(true);
+        return request;
+    }
+
+    private static List<String> chunks(Job job) {
+        return job.getAllChunkEvents().stream().map(c -> c.chunk).toList();
+    }
+
+    private static void awaitFinished(Job job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!job.isFinished()) {
+            assertTrue(System.currentTimeMillis() < deadline, "job " + job.getJobId() + " still " + job.getStatus());
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void inject(String field, Object value) {
+        try {
+            Field f = JobController.class.getDeclaredField(field);
+            f.setAccessible(true);
+            f.set(controller, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set JobController." + field, e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.baskettecase.ragui.controller;
+
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SseEmitter stand-in that records what would be written to the client. Sends can be stalled until
+ * released, like a slow client whose TCP window is full, or fail like a client that went away.
+ */
+class RecordingEmitter extends SseEmitter {
+
+    final List<String> data = new CopyOnWriteArrayList<>();
+    final AtomicInteger comments = new AtomicInteger();
+    final CountDownLatch completed = new CountDownLatch(1);
+    final AtomicInteger stalledSends = new AtomicInteger();
+    private volatile CountDownLatch gate;
+    private volatile boolean disconnected;
+
+    RecordingEmitter() {
+        super(0L);
+    }
+
+    /** Makes every send block until {@link #release()}. */
+    void stall() {
+        gate = new CountDownLatch(1);
+    }
+
+    void release() {
+        CountDownLatch stalled = gate;
+        gate = null;
+        if (stalled != null) stalled.countDown();
+    }
+
+    /** Makes every later send fail, as writing to a closed connection does. */
+    void disconnect() {
+        disconnected = true;
+    }
+
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+        if (disconnected) throw new IOException("Broken pipe");
+        try {
+            CountDownLatch stalled = gate;
+            if (stalled != null) {
+                stalledSends.incrementAndGet();
+                stalled.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+        StringBuilder event = new StringBuilder();
+        for (ResponseBodyEmitter.DataWithMediaType item : builder.build()) {
+            event.append(item.getData());
+        }
+        String text = event.toString().replaceAll("\n+$", "");
+        if (text.startsWith(":")) {
+            comments.incrementAndGet();
+        } else {
+            onData(text.startsWith("data:") ? text.substring(5) : text);
+        }
+    }
+
+    /** Called on the writer thread for every data event. */
+    void onData(String payload) {
+        data.add(payload);
+    }
+
+    /** Data events that are not JSON status messages, i.e. stream chunks. */
+    List<String> chunks() {
+        return data.stream().filter(payload -> !payload.startsWith("{")).toList();
+    }
+
+    @Override
+    public synchronized void complete() {
+        completed.countDown();
+    }
+
+    @Override
+    public synchronized void completeWithError(Throwable ex) {
+        completed.countDown();
+    }
+}
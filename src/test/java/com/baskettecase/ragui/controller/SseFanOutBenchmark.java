@@ -0,0 +1,90 @@
+package com.baskettecase.ragui.controller;
+
+import com.baskettecase.ragui.BenchmarkSupport;
+import com.baskettecase.ragui.model.Job;
+import com.baskettecase.ragui.service.StreamMetrics;
+import com.baskettecase.ragui.service.TokenCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test for push-based SSE delivery: 1k subscribers on one streaming job. Reports the platform
+ * threads the fan-out needs and the end-to-end latency from addStreamChunk to the SSE write. The
+ * polling implementation it replaced parked one pool thread per subscriber and delivered up to
+ * 100 ms late.
+ */
+@Tag("benchmark")
+class SseFanOutBenchmark {
+
+    private static final int SUBSCRIBERS = 1_000;
+    private static final int CHUNKS = 200;
+    private static final long CHUNK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    @Test
+    void thousandSubscribers() throws Exception {
+        StreamMetrics streamMetrics = new StreamMetrics(new SimpleMeterRegistry(), new TokenCounter());
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        ExecutorService writer = Executors.newVirtualThreadPerTaskExecutor();
+        long[] latencies = new long[SUBSCRIBERS * CHUNKS];
+        AtomicInteger recorded = new AtomicInteger();
+        try {
+            Job job = new Job("fan-out");
+            job.setMode("pure_llm");
+            List<RecordingEmitter> emitters = new ArrayList<>();
+            for (int i = 0; i < SUBSCRIBERS; i++) {
+                // Each chunk carries its append time, so the emitter can measure append-to-write latency
+                RecordingEmitter emitter = new RecordingEmitter() {
+                    @Override
+                    void onData(String payload) {
+                        if (!payload.startsWith("{")) {
+                            latencies[recorded.getAndIncrement()] = System.nanoTime() - Long.parseLong(payload);
+                        }
+                    }
+                };
+                JobController.SseSubscriber subscriber = new JobController.SseSubscriber(
+                    job, emitter, streamMetrics, TimeUnit.HOURS.toNanos(1), writer);
+                job.addListener(subscriber);
+                subscriber.signal();
+                emitters.add(emitter);
+            }
+            int baselineThreads = threads.getThreadCount();
+            threads.resetPeakThreadCount();
+
+            long[] appendNanos = new long[CHUNKS];
+            for (int i = 0; i < CHUNKS; i++) {
+                long start = System.nanoTime();
+                job.addStreamChunk(Long.toString(start));
+                appendNanos[i] = System.nanoTime() - start;
+                LockSupport.parkNanos(CHUNK_INTERVAL_NANOS);
+            }
+            JobControllerSseTest.await(() -> recorded.get() == latencies.length, 30_000);
+            int peakThreads = threads.getPeakThreadCount();
+
+            System.out.printf("[benchmark] %d subscribers x %d chunks on %d cores: platform threads %d -> peak %d (+%d)%n",
+                SUBSCRIBERS, CHUNKS, Runtime.getRuntime().availableProcessors(), baselineThreads, peakThreads, peakThreads - baselineThreads);
+            BenchmarkSupport.of("sse end-to-end chunk latency", latencies).print();
+            BenchmarkSupport.Result append = BenchmarkSupport.of("producer addStreamChunk (1k subscribers)", appendNanos).print();
+
+            // Latency depends on the cores available for 200k writes, so it is reported rather than asserted
+            assertTrue(peakThreads - baselineThreads < SUBSCRIBERS / 10, "fan-out must not need a thread per subscriber");
+            assertTrue(append.percentile(50) < TimeUnit.MILLISECONDS.toNanos(5), "appending must not wait for the writers");
+            assertTrue(Arrays.stream(latencies).allMatch(l -> l > 0));
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.baskettecase.ragui.model;
+
+import com.baskettecase.ragui.BenchmarkSupport;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams a 5k-chunk answer into the job log while 10 readers follow it with getChunkEventsSince,
+ * comparing {@link AppendLog} with the CopyOnWriteArrayList buffer and stream().filter() scan that
+ * Job used before.
+ */
+@Tag("benchmark")
+class AppendLogBenchmark {
+
+    private static final int CHUNKS = 5_000;
+    private static final int READERS = 10;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 10;
+
+    record Entry(long seq, String chunk) {}
+
+    interface ChunkLog {
+        void append(String chunk);
+        List<Entry> since(long afterSeq);
+    }
+
+    /** The buffer Job used before AppendLog: every add copies the array, every read scans it. */
+    static final class CopyOnWriteChunkLog implements ChunkLog {
+        private final List<Entry> buffer = new CopyOnWriteArrayList<>();
+        private long seq = 0L;
+
+        @Override
+        public void append(String chunk) {
+            buffer.add(new Entry(++seq, chunk));
+        }
+
+        @Override
+        public List<Entry> since(long afterSeq) {
+            return buffer.stream().filter(e -> e.seq() > afterSeq).toList();
+        }
+    }
+
+    static final class AppendChunkLog implements ChunkLog {
+        private final AppendLog<Entry> log = new AppendLog<>();
+
+        @Override
+        public void append(String chunk) {
+            log.append(seq -> new Entry(seq, chunk));
+        }
+
+        @Override
+        public List<Entry> since(long afterSeq) {
+            return log.since(afterSeq);
+        }
+    }
+
+    @Test
+    void fiveThousandChunksTenReaders() throws Exception {
+        BenchmarkSupport.Result copyOnWrite = run("CopyOnWriteArrayList + filter (before)", CopyOnWriteChunkLog::new);
+        BenchmarkSupport.Result appendLog = run("AppendLog", AppendChunkLog::new);
+        System.out.printf("[benchmark] AppendLog speed-up at p50: %.1fx%n",
+            copyOnWrite.percentile(50) / (double) appendLog.percentile(50));
+        assertTrue(appendLog.percentile(50) < copyOnWrite.percentile(50), "AppendLog should beat the copy-on-write buffer");
+    }
+
+    /** Time for one answer to be fully written and read by every reader, per round. */
+    private BenchmarkSupport.Result run(String name, java.util.function.Supplier<ChunkLog> logs) throws Exception {
+        long[] rounds = new long[ROUNDS];
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long nanos = streamOneAnswer(logs.get());
+            if (round >= WARMUP_ROUNDS) rounds[round - WARMUP_ROUNDS] = nanos;
+        }
+        return BenchmarkSupport.of(name + ", 5k chunks x 10 readers", rounds).print();
+    }
+
+    private long streamOneAnswer(ChunkLog log) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<>();
+        long[] received = new long[READERS];
+        for (int r = 0; r < READERS; r++) {
+            int reader = r;
+            readers.add(Thread.ofPlatform().start(() -> {
+                awaitQuietly(start);
+                long cursor = 0L;
+                while (cursor < CHUNKS) {
+                    List<Entry> batch = log.since(cursor);
+                    if (batch.isEmpty()) {
+                        Thread.yield();
+                        continue;
+                    }
+                    received[reader] += batch.size();
+                    cursor = batch.get(batch.size() - 1).seq();
+                }
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (int i = 0; i < CHUNKS; i++) {
+            log.append("token" + i + ' ');
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        for (long count : received) {
+            assertEquals(CHUNKS, count);
+        }
+        return elapsed;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.baskettecase.ragui.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AppendLogTest {
+
+    @Test
+    void assignsSequenceNumbersAcrossSegmentBoundaries() {
+        AppendLog<String> log = new AppendLog<>();
+        // Several segments and at least one directory resize
+        int entries = 128 * 9 + 3;
+        for (int i = 1; i <= entries; i++) {
+            long seq = log.append(s -> "e" + s);
+            assertEquals(i, seq);
+        }
+        assertEquals(entries, log.lastSeq());
+        assertEquals("e1", log.get(1));
+        assertEquals("e128", log.get(128));
+        assertEquals("e129", log.get(129));
+        assertEquals("e" + entries, log.get(entries));
+        assertNull(log.get(0));
+        assertNull(log.get(entries + 1));
+    }
+
+    @Test
+    void sinceReturnsEntriesAfterTheCursorInOrder() {
+        AppendLog<String> log = new AppendLog<>();
+        IntStream.rangeClosed(1, 300).forEach(i -> log.append(s -> "e" + s));
+
+        List<String> tail = log.since(250);
+        assertEquals(50, tail.size());
+        assertEquals("e251", tail.get(0));
+        assertEquals("e300", tail.get(49));
+        assertEquals(300, log.since(0).size());
+        assertTrue(log.since(300).isEmpty());
+        assertTrue(log.since(1_000).isEmpty());
+        assertEquals(300, log.since(-5).size());
+    }
+
+    @Test
+    void readersAlwaysSeeACompletePrefix() throws Exception {
+        AppendLog<Integer> log = new AppendLog<>();
+        int entries = 20_000;
+        Thread writer = Thread.ofPlatform().start(() -> {
+            for (int i = 1; i <= entries; i++) {
+                log.append(seq -> (int) seq);
+            }
+        });
+        long cursor = 0L;
+        while (cursor < entries) {
+            for (Integer value : log.since(cursor)) {
+                assertEquals(cursor + 1, (long) value, "gap or null after seq " + cursor);
+                cursor = value;
+            }
+        }
+        writer.join();
+    }
+}
@@ -0,0 +1,88 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnswerTokenBudgetTest {
+
+    private static final int MAX_TOTAL = 8_000;
+    private static final int OVERHEAD = 200;
+    private static final String SYSTEM = "Answer using ONLY the information provided.";
+
+    private final TokenCounter tokenCounter = new TokenCounter();
+    // max-response 3000, summary 1000, reasoning reserve 512, client ceiling 4096
+    private final AnswerTokenBudget budget =
+        new AnswerTokenBudget(tokenCounter, new SimpleMeterRegistry(), MAX_TOTAL, 3_000, 1_000, 512, 4_096, "", 0.3);
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "in 20 words                | 30",
+        "in twenty words            | 30",
+        "using fewer than 100 words | 150",
+        "under 3 sentences          | 120",
+        "in one paragraph           | 160",
+        "in a single sentence       | 40",
+        "as a one-line answer       | 30",
+        "within five bullet points  | 150",
+        "in 280 characters          | 84",
+        "briefly                    | ",
+        "''                         | ",
+    })
+    void estimatesTokensForARequestedLength(String constraint, Integer tokens) {
+        assertEquals(tokens, AnswerTokenBudget.constraintTokens(constraint), constraint);
+    }
+
+    @Test
+    void modeLimitAppliesWithoutAConstraint() {
+        assertEquals(3_000, budget.budgetFor("Pure", null, SYSTEM, "what is pgvector"));
+        assertEquals(1_000, budget.budgetFor("RAG Only", null, SYSTEM, "what is pgvector"));
+    }
+
+    @Test
+    void constraintAddsTheSuffixAndReasoningReserve() {
+        assertEquals(30 + 64 + 512, budget.budgetFor("RAG Only", "in 20 words", SYSTEM, "what is pgvector"));
+        // A constraint never raises the budget above the mode limit
+        assertEquals(1_000, budget.budgetFor("RAG Only", "in 5 paragraphs", SYSTEM, "what is pgvector"));
+    }
+
+    @Test
+    void budgetIsCappedByTheRoomThePromptLeaves() {
+        String prompt = promptLeaving(500);
+        assertEquals(500, budget.budgetFor("Pure", null, SYSTEM, prompt));
+        assertEquals(500, budget.ceilingFor(SYSTEM, prompt));
+    }
+
+    @Test
+    void floorNeverExceedsTheRoomLeft() {
+        String prompt = promptLeaving(20);
+        assertEquals(20, budget.budgetFor("Pure", null, SYSTEM, prompt));
+        assertEquals(20, budget.budgetFor("RAG Only", "in 5 words", SYSTEM, prompt));
+    }
+
+    @Test
+    void promptThatFillsTheWindowFails() {
+        String prompt = promptLeaving(0);
+        assertThrows(IllegalStateException.class, () -> budget.budgetFor("Pure", null, SYSTEM, prompt));
+        assertThrows(IllegalStateException.class, () -> budget.ceilingFor(SYSTEM, prompt));
+    }
+
+    @Test
+    void retryCeilingIsTheClientMaximumWhenThereIsRoom() {
+        assertEquals(4_096, budget.ceilingFor(SYSTEM, "what is pgvector"));
+    }
+
+    /** A user prompt that leaves exactly {@code room} tokens of the window for the answer. */
+    private String promptLeaving(int room) {
+        int target = MAX_TOTAL - OVERHEAD - tokenCounter.count(SYSTEM) - room;
+        String prompt = tokenCounter.truncate(" pgvector".repeat(target + 10), target);
+        assertEquals(target, tokenCounter.count(prompt));
+        assertTrue(target > 0);
+        return prompt;
+    }
+}
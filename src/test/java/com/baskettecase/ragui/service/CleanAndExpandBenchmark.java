@@ -0,0 +1,66 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.BenchmarkSupport;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Query pre-processing latency with expansion on: the combined structured call
+ * (cleanAndExpandQuery) against the previous two sequential calls (cleaning, then expansion).
+ * The chat model is simulated with a fixed per-call overhead plus a per-word generation cost, so
+ * the comparison shows the round trip saved rather than a particular model's speed.
+ */
+@Tag("benchmark")
+class CleanAndExpandBenchmark {
+
+    private static final String QUERY = "waht is kubernetes pod scheduling in 50 words";
+    private static final long CALL_OVERHEAD_MILLIS = 80;
+    private static final double MILLIS_PER_WORD = 2.0;
+
+    @Test
+    void combinedCallAgainstCleaningThenExpansion() throws Exception {
+        RagServiceFixture.ScriptedChatModel model = new RagServiceFixture.ScriptedChatModel(prompt -> {
+            String system = RagServiceFixture.ScriptedChatModel.system(prompt);
+            if (system.contains("pre-process search queries")) {
+                return "{\"cleaned_query\": \"What is Kubernetes pod scheduling?\", \"length_constraint\": \"in 50 words\","
+                    + " \"alternative_queries\": [\"How does the Kubernetes scheduler place pods on nodes\","
+                    + " \"kube-scheduler pod placement\", \"Kubernetes node affinity and taints\"]}";
+            }
+            if (system.contains("Clean and rephrase")) {
+                return "What is Kubernetes pod scheduling? [[LENGTH_CONSTRAINT: in 50 words]]";
+            }
+            return "How does the Kubernetes scheduler place pods on nodes\nkube-scheduler pod placement\nKubernetes node affinity and taints";
+        });
+        model.callOverheadMillis = CALL_OVERHEAD_MILLIS;
+        model.millisPerWord = MILLIS_PER_WORD;
+        RagServiceFixture fixture = new RagServiceFixture(model);
+        fixture.queryRewriteCache.setEnabled(false); // every iteration reaches the model
+        try {
+            BenchmarkSupport.Result sequential = BenchmarkSupport.measure("cleaning then expansion (2 calls, before)", 3, 20, () -> {
+                CleanedQueryResult cleaned = (CleanedQueryResult) fixture.invoke("cleanQueryWithLlmExtractConstraint", QUERY, "RAG ONLY");
+                return fixture.invoke("expandQueryWithLLM", cleaned.cleanedQuery, "RAG ONLY");
+            }).print();
+            int callsBefore = model.calls.get();
+            BenchmarkSupport.Result combined = BenchmarkSupport.measure("cleanAndExpandQuery (1 structured call)", 3, 20,
+                () -> fixture.invoke("cleanAndExpandQuery", QUERY, "RAG ONLY")).print();
+            assertEquals(23, model.calls.get() - callsBefore, "combined pre-processing should make one call per query");
+
+            Object result = fixture.invoke("cleanAndExpandQuery", QUERY, "RAG ONLY");
+            @SuppressWarnings("unchecked")
+            List<String> searchQueries = (List<String>) RagServiceFixture.read(result, "searchQueries");
+            assertEquals(4, searchQueries.size());
+            assertEquals("in 50 words", RagServiceFixture.read(result, "lengthConstraint"));
+
+            System.out.printf("[benchmark] combined pre-processing saves %.0f ms at p50%n",
+                (sequential.percentile(50) - combined.percentile(50)) / 1_000_000.0);
+            assertTrue(combined.percentile(50) < sequential.percentile(50), "one call should beat two sequential calls");
+        } finally {
+            fixture.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextPackerTest {
+
+    private final TokenCounter tokenCounter = new TokenCounter();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final ContextPacker packer = new ContextPacker(tokenCounter, registry);
+
+    @Test
+    void everythingFitsWholeInRetrievalOrder() {
+        List<Document> docs = List.of(doc("alpha", 3, 0.4), doc("beta", 3, 0.1), doc("gamma", 3, 0.2));
+        String context = packer.pack(docs, 3_000, 20_000, 10);
+        for (Document doc : docs) assertTrue(context.contains(doc.getText()), context);
+        assertTrue(context.indexOf("alpha") < context.indexOf("beta") && context.indexOf("beta") < context.indexOf("gamma"));
+        assertEquals(3.0, count("included"), 0.0);
+    }
+
+    @Test
+    void topDocumentIsKeptWholeRatherThanStubsOfEveryOther() {
+        Document top = doc("top", 12, 0.05);
+        List<Document> docs = new ArrayList<>(List.of(top));
+        IntStream.range(0, 8).forEach(i -> docs.add(doc("other" + i, 12, 0.45)));
+        int topTokens = tokenCounter.count(top.getFormattedContent()) + tokenCounter.count(ContextPacker.SEPARATOR);
+
+        String context = packer.pack(docs, topTokens + 20, 20_000, 10);
+
+        assertTrue(context.contains(top.getText()), "the most relevant document was cut or dropped: " + context);
+        assertFalse(context.contains("other"), "stubs of other documents displaced the top one: " + context);
+    }
+
+    @Test
+    void mostRelevantDocumentSurvivesWhenItIsNotRankedFirst() {
+        List<Document> docs = new ArrayList<>();
+        IntStream.range(0, 4).forEach(i -> docs.add(doc("ranked" + i, 4, 0.6)));
+        // Long and far more relevant, but retrieved last
+        Document best = doc("best", 30, 0.02);
+        docs.add(best);
+        int bestTokens = tokenCounter.count(best.getFormattedContent());
+
+        String context = packer.pack(docs, bestTokens, 20_000, 10);
+
+        assertTrue(context.contains("best sentence 0 "), context);
+    }
+
+    @Test
+    void documentLargerThanTheBudgetIsTruncatedAtASentenceBoundary() {
+        Document top = doc("top", 40, 0.1);
+        int fullTokens = tokenCounter.count(top.getFormattedContent());
+
+        String context = packer.pack(List.of(top, doc("low", 40, 0.7)), fullTokens / 2, 20_000, 10);
+
+        assertTrue(context.contains("top sentence 0 "), context);
+        assertFalse(context.contains(top.getText()), "should not fit whole");
+        assertTrue(context.endsWith("."), "cut mid-sentence: " + context);
+        assertTrue(top.getFormattedContent().startsWith(context), "a truncated variant is a prefix of the document");
+        assertTrue(tokenCounter.count(context) <= fullTokens / 2);
+        assertEquals(1.0, count("truncated"), 0.0);
+        assertEquals(1.0, count("dropped"), 0.0);
+    }
+
+    @Test
+    void characterBudgetBindsAsWellAsTokens() {
+        List<Document> docs = List.of(doc("first", 10, 0.1), doc("second", 10, 0.2), doc("third", 10, 0.3));
+        int maxChars = docs.get(0).getFormattedContent().length() + ContextPacker.SEPARATOR.length();
+
+        String context = packer.pack(docs, 100_000, maxChars, 10);
+
+        assertTrue(context.length() <= maxChars, context.length() + " chars");
+        assertTrue(context.contains(docs.get(0).getText()), context);
+    }
+
+    @Test
+    void returnsEmptyWhenNothingFits() {
+        assertEquals("", packer.pack(List.of(doc("only", 5, 0.1)), 2, 20_000, 10));
+        assertEquals("", packer.pack(List.of(), 1_000, 20_000, 10));
+    }
+
+    private double count(String outcome) {
+        return registry.get("ragui.context.documents").tag("outcome", outcome).counter().count();
+    }
+
+    /** A document of numbered sentences, each about ten tokens, with the given vector distance. */
+    private static Document doc(String name, int sentences, double distance) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            if (i > 0) text.append(' ');
+            text.append(name).append(" sentence ").append(i).append(" explains how pgvector stores embeddings.");
+        }
+        return new Document(text.toString(), Map.of("distance", distance));
+    }
+}
@@ -0,0 +1,49 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmAdmissionGateTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    // One answer slot, queue wait of 10 s
+    private final LlmAdmissionGate gate = new LlmAdmissionGate(registry, true, 32, 10_000, 8, 8, 1, 8);
+
+    @Test
+    void queueWaitStopsAtTheCallersDeadline() throws Exception {
+        LlmAdmissionGate.Permit busy = gate.acquire(PipelineMetrics.LLM, Long.MAX_VALUE);
+        try {
+            long start = System.nanoTime();
+            assertThrows(TimeoutException.class,
+                () -> gate.acquire(PipelineMetrics.LLM, TimeUnit.MILLISECONDS.toNanos(100)));
+            long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(waitedMillis >= 90 && waitedMillis < 2_000, "waited " + waitedMillis + " ms");
+            // Running out of request time is a timeout, not load shedding
+            assertEquals(0.0, registry.get("ragui.llm.admission.rejected").tag("stage", PipelineMetrics.LLM)
+                .tag("reason", "queue_timeout").counter().count());
+        } finally {
+            busy.release();
+        }
+    }
+
+    @Test
+    void expiredDeadlineStillTakesAFreeSlotButNeverQueues() throws Exception {
+        LlmAdmissionGate.Permit permit = gate.acquire(PipelineMetrics.LLM, 0L);
+        assertNotNull(permit);
+        try {
+            assertThrows(TimeoutException.class, () -> gate.acquire(PipelineMetrics.LLM, 0L));
+        } finally {
+            permit.release();
+        }
+        gate.acquire(PipelineMetrics.LLM, 0L).release();
+    }
+}
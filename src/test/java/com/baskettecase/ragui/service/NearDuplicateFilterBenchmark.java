@@ -0,0 +1,59 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.BenchmarkSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Filters 50-candidate retrieval lists (top-K 25 over-fetched 2x) of ~150-word chunks, a third of
+ * them overlapping sliding windows, which is the work added to every vector search.
+ */
+@Tag("benchmark")
+class NearDuplicateFilterBenchmark {
+
+    private static final int CANDIDATES = 50;
+    private static final int TOP_K = 25;
+    private static final int CHUNK_WORDS = 150;
+
+    @Test
+    void filterFiftyCandidates() throws Exception {
+        NearDuplicateFilter filter = new NearDuplicateFilter(new SimpleMeterRegistry(), true, 0.6, 2);
+        List<List<Document>> lists = new ArrayList<>();
+        for (int i = 0; i < 64; i++) lists.add(candidates(i));
+
+        int[] next = {0};
+        BenchmarkSupport.Result result = BenchmarkSupport.measure("NearDuplicateFilter.filter, 50 candidates", 2_000, 5_000,
+            () -> filter.filter(lists.get(next[0]++ & 63), TOP_K)).print();
+        BenchmarkSupport.measure("NearDuplicateFilter.signature, 150-word chunk", 2_000, 5_000,
+            () -> filter.signature(lists.get(next[0]++ & 63).get(0).getText())).print();
+
+        // A vector search takes milliseconds; de-duplication must stay well below it
+        assertTrue(result.percentile(50) < TimeUnit.MILLISECONDS.toNanos(5), "filtering 50 candidates is too slow");
+    }
+
+    private static List<Document> candidates(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Document> docs = new ArrayList<>(CANDIDATES);
+        while (docs.size() < CANDIDATES) {
+            String[] source = new String[CHUNK_WORDS + 30];
+            for (int i = 0; i < source.length; i++) source[i] = "w" + random.nextInt(50_000);
+            docs.add(new Document(String.join(" ", Arrays.copyOfRange(source, 0, CHUNK_WORDS)), Map.of()));
+            if (random.nextInt(3) == 0 && docs.size() < CANDIDATES) {
+                // overlapping window of the same source
+                docs.add(new Document(String.join(" ", Arrays.copyOfRange(source, 30, CHUNK_WORDS + 30)), Map.of()));
+            }
+        }
+        return docs;
+    }
+}
@@ -0,0 +1,83 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NearDuplicateFilterTest {
+
+    private final NearDuplicateFilter filter = new NearDuplicateFilter(new SimpleMeterRegistry(), true, 0.6, 2);
+
+    @Test
+    void dropsOverlappingWindowsAndBackFillsInRankOrder() {
+        String[] sourceA = words(1, 200);
+        String[] sourceB = words(2, 200);
+        // Sliding-window chunks: 100 words with a 10-word stride share 90% of their text
+        Document a0 = doc("a0", sourceA, 0, 100);
+        Document a1 = doc("a1", sourceA, 10, 110);
+        Document b0 = doc("b0", sourceB, 0, 100);
+        Document b1 = doc("b1", sourceB, 10, 110);
+        Document c = doc("c", words(3, 100), 0, 100);
+        Document d = doc("d", words(4, 100), 0, 100);
+        Document e = doc("e", words(5, 100), 0, 100);
+
+        List<Document> kept = filter.filter(List.of(a0, a1, b0, b1, c, d, e), 4);
+
+        assertEquals(List.of("a0", "b0", "c", "d"), kept.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void keepsDistantWindowsOfTheSameSource() {
+        String[] source = words(6, 400);
+        Document first = doc("first", source, 0, 100);
+        Document disjoint = doc("disjoint", source, 200, 300);
+        List<Document> kept = filter.filter(List.of(first, disjoint), 2);
+        assertEquals(2, kept.size());
+    }
+
+    @Test
+    void estimatesJaccardSimilarityOfShingles() {
+        String[] source = words(7, 200);
+        long[] a = filter.signature(join(source, 0, 100));
+        assertEquals(1.0, NearDuplicateFilter.similarity(a, filter.signature(join(source, 0, 100))), 0.0);
+        // 90 shared words out of 110 -> 88 of 108 shingles shared, Jaccard ~0.8
+        double overlapping = NearDuplicateFilter.similarity(a, filter.signature(join(source, 10, 110)));
+        assertTrue(overlapping >= 0.6, "overlapping windows estimated at " + overlapping);
+        double unrelated = NearDuplicateFilter.similarity(a, filter.signature(join(words(8, 100), 0, 100)));
+        assertTrue(unrelated < 0.2, "unrelated text estimated at " + unrelated);
+    }
+
+    @Test
+    void disabledFilterOnlyCapsTheList() {
+        NearDuplicateFilter disabled = new NearDuplicateFilter(new SimpleMeterRegistry(), false, 0.6, 2);
+        String[] source = words(9, 110);
+        Document a0 = doc("a0", source, 0, 100);
+        Document a1 = doc("a1", source, 10, 110);
+        assertEquals(List.of(a0, a1), disabled.filter(List.of(a0, a1), 5));
+        assertEquals(5, disabled.candidateCount(5));
+        assertEquals(10, filter.candidateCount(5));
+    }
+
+    private static String[] words(long seed, int count) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++) words[i] = "w" + random.nextInt(1_000_000);
+        return words;
+    }
+
+    private static String join(String[] words, int from, int to) {
+        return String.join(" ", Arrays.copyOfRange(words, from, to));
+    }
+
+    private static Document doc(String id, String[] words, int from, int to) {
+        return new Document(id, join(words, from, to), Map.of());
+    }
+}
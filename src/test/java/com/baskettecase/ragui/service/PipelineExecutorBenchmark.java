@@ -0,0 +1,120 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.BenchmarkSupport;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs 1,000 concurrent jobs through {@link PipelineExecutor} in platform and virtual-thread mode.
+ * Each job runs three timed stages that block like a model or vector-store call. Reports peak
+ * platform threads, peak RSS growth and per-job latency for both modes.
+ */
+@Tag("benchmark")
+class PipelineExecutorBenchmark {
+
+    private static final int JOBS = 1_000;
+    private static final int STAGES = 3;
+    private static final long STAGE_BLOCK_MILLIS = 50;
+
+    record ModeResult(String mode, int peakThreads, long peakRssGrowthKb, BenchmarkSupport.Result latency) {}
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        // Warm both paths so class loading and JIT do not land in the first measurement
+        run(false, 50);
+        run(true, 50);
+
+        ModeResult platform = run(false, JOBS);
+        ModeResult virtual = run(true, JOBS);
+        for (ModeResult result : new ModeResult[] {platform, virtual}) {
+            System.out.printf("[benchmark] %-14s jobs=%d peak platform threads=+%d peak RSS=+%d KB%n",
+                result.mode(), JOBS, result.peakThreads(), result.peakRssGrowthKb());
+        }
+        assertTrue(virtual.peakThreads() < platform.peakThreads(),
+            "virtual-thread mode should not need a platform thread per job");
+    }
+
+    private ModeResult run(boolean virtualThreads, int jobs) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        int baseThreads = threads.getThreadCount();
+        long baseRss = rssKb();
+        threads.resetPeakThreadCount();
+
+        PipelineExecutor executor = new PipelineExecutor(virtualThreads);
+        AtomicLong peakRss = new AtomicLong(baseRss);
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakRss.accumulateAndGet(rssKb(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        long[] latencies = new long[jobs];
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(jobs);
+        try {
+            for (int i = 0; i < jobs; i++) {
+                int job = i;
+                long submitted = System.nanoTime();
+                executor.execute(() -> {
+                    try {
+                        for (int stage = 0; stage < STAGES; stage++) {
+                            executor.call(() -> {
+                                Thread.sleep(STAGE_BLOCK_MILLIS);
+                                return null;
+                            }, 30, TimeUnit.SECONDS);
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        latencies[job] = System.nanoTime() - submitted;
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(2, TimeUnit.MINUTES), "jobs did not finish");
+        } finally {
+            sampler.interrupt();
+            sampler.join();
+            executor.destroy();
+        }
+        assertEquals(0, failures.get());
+
+        String mode = virtualThreads ? "virtual" : "platform";
+        BenchmarkSupport.Result latency = BenchmarkSupport.of(mode + " job latency (" + STAGES + " x "
+            + STAGE_BLOCK_MILLIS + " ms stages)", latencies);
+        if (jobs == JOBS) latency.print();
+        return new ModeResult(mode, threads.getPeakThreadCount() - baseThreads, peakRss.get() - baseRss, latency);
+    }
+
+    /** Resident set size from /proc, or 0 where it is not available. */
+    private static long rssKb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // not Linux
+        }
+        return 0L;
+    }
+}
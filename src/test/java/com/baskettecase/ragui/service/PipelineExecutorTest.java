@@ -0,0 +1,124 @@
+package com.baskettecase.ragui.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineExecutorTest {
+
+    private PipelineExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) executor.destroy();
+    }
+
+    @Test
+    void expireBeforeFinishInterruptsAndReportsTimeout() {
+        PipelineExecutor.RunningStage stage = new PipelineExecutor.RunningStage(Thread.currentThread());
+        stage.expire();
+        assertTrue(Thread.interrupted(), "expire should interrupt the stage thread");
+        assertTrue(stage.finish(), "finish should report the expiry");
+    }
+
+    @Test
+    void expireAfterFinishDoesNothing() {
+        PipelineExecutor.RunningStage stage = new PipelineExecutor.RunningStage(Thread.currentThread());
+        assertFalse(stage.finish());
+        stage.expire();
+        assertFalse(Thread.interrupted(), "a late expire must not interrupt a finished stage");
+    }
+
+    @Test
+    void timedOutInlineStageDoesNotLeakInterruptIntoNextStage() throws Exception {
+        executor = new PipelineExecutor(true);
+        CompletableFuture<String> outcome = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                assertTrue(Thread.currentThread().isVirtual());
+                assertThrows(TimeoutException.class,
+                    () -> executor.call(() -> { Thread.sleep(10_000); return "late"; }, 50, TimeUnit.MILLISECONDS));
+                assertFalse(Thread.currentThread().isInterrupted(), "timeout interrupt leaked out of the stage");
+                String next = executor.call(() -> { Thread.sleep(20); return "next"; }, 5, TimeUnit.SECONDS);
+                outcome.complete(next);
+            } catch (Throwable t) {
+                outcome.completeExceptionally(t);
+            }
+        });
+        assertEquals("next", outcome.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void inlineStageThatSwallowsTheInterruptStillTimesOut() throws Exception {
+        executor = new PipelineExecutor(true);
+        CompletableFuture<Boolean> interruptedAfter = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                assertThrows(TimeoutException.class, () -> executor.call(() -> {
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException ignored) {
+                        // a client that eats the interrupt and returns normally
+                    }
+                    return "swallowed";
+                }, 50, TimeUnit.MILLISECONDS));
+                interruptedAfter.complete(Thread.currentThread().isInterrupted());
+            } catch (Throwable t) {
+                interruptedAfter.completeExceptionally(t);
+            }
+        });
+        assertFalse(interruptedAfter.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void inlineStageFailureIsWrappedLikeFutureGet() throws Exception {
+        executor = new PipelineExecutor(true);
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                executor.call(() -> { throw new IllegalStateException("boom"); }, 5, TimeUnit.SECONDS);
+                failure.complete(null);
+            } catch (Throwable t) {
+                failure.complete(t);
+            }
+        });
+        Throwable thrown = failure.get(10, TimeUnit.SECONDS);
+        assertTrue(thrown instanceof ExecutionException);
+        assertTrue(thrown.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void platformStageTimeoutInterruptsWorkerWithoutPoisoningThePool() throws Exception {
+        executor = new PipelineExecutor(false);
+        CountDownLatch workerDone = new CountDownLatch(1);
+        AtomicBoolean workerInterrupted = new AtomicBoolean();
+        assertThrows(TimeoutException.class, () -> executor.call(() -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                workerInterrupted.set(true);
+            } finally {
+                workerDone.countDown();
+            }
+            return "late";
+        }, 50, TimeUnit.MILLISECONDS));
+        assertTrue(workerDone.await(5, TimeUnit.SECONDS), "timed-out worker kept running");
+        assertTrue(workerInterrupted.get());
+
+        // The pool reuses the idle worker; it must not start the next stage interrupted
+        for (int i = 0; i < 5; i++) {
+            assertFalse(executor.call(() -> Thread.currentThread().isInterrupted(), 5, TimeUnit.SECONDS));
+        }
+    }
+}
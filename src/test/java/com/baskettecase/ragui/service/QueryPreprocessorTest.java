@@ -0,0 +1,112 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryPreprocessorTest {
+
+    private static final double MIN_CONFIDENCE = 0.7;
+
+    private final QueryPreprocessor preprocessor = new QueryPreprocessor(new SimpleMeterRegistry(), true, MIN_CONFIDENCE);
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        // query                                          | cleaned query                  | constraint
+        "What is Kubernetes in 20 words                   | What is Kubernetes?            | in 20 words",
+        "what is pgvector, in about 50 words or less      | What is pgvector?              | in about 50 words or less",
+        "explain HNSW indexes using fewer than 100 words  | Explain HNSW indexes           | using fewer than 100 words",
+        "Explain pgvector under 3 sentences               | Explain pgvector               | under 3 sentences",
+        "summarize RAG within five bullet points          | Summarize RAG                  | within five bullet points",
+        "Describe vector search in one paragraph          | Describe vector search         | in one paragraph",
+        "how does retrieval work, as a one-line answer    | How does retrieval work?       | as a one-line answer",
+        "What is a vector database in a single sentence?  | What is a vector database?     | in a single sentence",
+        "what is a vector database                        | What is a vector database?     | ",
+    })
+    void extractsLengthConstraints(String query, String cleaned, String constraint) {
+        QueryPreprocessor.Result result = preprocessor.preprocess(query);
+        assertEquals(cleaned, result.cleaned.cleanedQuery, query);
+        assertEquals(constraint, result.cleaned.lengthConstraint, query);
+        assertTrue(result.confidence >= MIN_CONFIDENCE, query + " scored " + result.confidence);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "WHAT IS PGVECTOR                 | What is pgvector?",
+        "HOW DO I TUNE HNSW IN 20 WORDS   | How do i tune hnsw?",
+        "what is AWS S3                   | What is AWS S3?",
+        "  what   is    pgvector          | What is pgvector?",
+    })
+    void lowersAllCapsInputAndNormalizesWhitespace(String query, String cleaned) {
+        QueryPreprocessor.Result result = preprocessor.preprocess(query);
+        assertEquals(cleaned, result.cleaned.cleanedQuery, query);
+        assertTrue(result.confidence >= MIN_CONFIDENCE, query + " scored " + result.confidence);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "waht is teh best index?          | What is the best index?",
+        "(teh) pgvector, adn HNSW.        | (the) pgvector, and HNSW.",
+        "whats pgvector?                  | What is pgvector?",
+        "\"Teh\" answer, please!          | \"the\" answer, please!",
+        "thier vectors: seperate, untill  | Their vectors: separate, until",
+    })
+    void fixesTyposAndKeepsTheirPunctuation(String query, String cleaned) {
+        QueryPreprocessor.Result result = preprocessor.preprocess(query);
+        assertEquals(cleaned, result.cleaned.cleanedQuery, query);
+        assertTrue(result.confidence >= MIN_CONFIDENCE, query + " scored " + result.confidence);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        // garbled: consonant-only words that are not acronyms
+        "what is kbrnts",
+        "explain xqzpt and kbrnts vectors",
+        // too short
+        "pgvector",
+        "hi",
+        // a length request the patterns cannot parse
+        "explain pgvector briefly",
+        "give me a short summary of RAG",
+        // mostly punctuation
+        "what ??!! is ... (pgvector) ???",
+        "!!! ??? ... !!!",
+        // nothing left
+        "''",
+    })
+    void lowConfidenceInputFallsBackToTheLlm(String query) {
+        QueryPreprocessor.Result result = preprocessor.preprocess(query);
+        assertTrue(result.confidence < MIN_CONFIDENCE, "'" + query + "' scored " + result.confidence);
+        assertNull(preprocessor.tryPreprocess(query, "TEST"));
+    }
+
+    @Test
+    void longRamblingInputFallsBackToTheLlm() {
+        String query = "what is pgvector and " + "how does it compare with other vector stores ".repeat(6);
+        QueryPreprocessor.Result result = preprocessor.preprocess(query);
+        assertTrue(result.confidence < MIN_CONFIDENCE, "scored " + result.confidence);
+        assertNull(preprocessor.tryPreprocess(query, "TEST"));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "explain pgvector                 | ''",
+        "explain pgvector in 20 words     | in 20 words",
+        "Explain pgvector, IN 20 WORDS    | in 20 words",
+        "explain pgvector briefly         | ",
+    })
+    void lengthConstraintKeyMatchesTheExtractedConstraint(String query, String key) {
+        assertEquals(key, QueryPreprocessor.lengthConstraintKey(query), query);
+    }
+
+    @Test
+    void disabledPreprocessorAlwaysUsesTheLlm() {
+        QueryPreprocessor disabled = new QueryPreprocessor(new SimpleMeterRegistry(), false, MIN_CONFIDENCE);
+        assertNull(disabled.tryPreprocess("what is pgvector", "TEST"));
+    }
+}
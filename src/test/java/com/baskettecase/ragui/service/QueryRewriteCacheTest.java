@@ -0,0 +1,56 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QueryRewriteCacheTest {
+
+    private static final String SYSTEM = "You pre-process search queries.";
+    private static final String QUERY = "what is kubernetes";
+
+    @Test
+    void combinedResultsAreKeyedSeparatelyFromExpansion() {
+        QueryRewriteCache cache = new QueryRewriteCache(new SimpleMeterRegistry(), true, 100, 60, "small-rewriter", "expander", "default");
+        QueryRewriteCache.Preprocessed result = new QueryRewriteCache.Preprocessed("What is Kubernetes?", null,
+            List.of("What is Kubernetes?", "kubernetes overview"));
+        cache.putCombined(SYSTEM, QUERY, result);
+
+        assertEquals(result, cache.getCombined(SYSTEM, "  " + QUERY + " "));
+        assertNull(cache.getExpanded(SYSTEM, QUERY));
+        assertNull(cache.getCleaned(SYSTEM, QUERY));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> preprocessing = (Map<String, Object>) cache.getStats().get("preprocessing");
+        assertEquals(1L, preprocessing.get("entries"));
+    }
+
+    @Test
+    void disablingClearsCombinedResults() {
+        QueryRewriteCache cache = new QueryRewriteCache(new SimpleMeterRegistry(), true, 100, 60, "", "", "default");
+        cache.putCombined(SYSTEM, QUERY, new QueryRewriteCache.Preprocessed("What is Kubernetes?", null, List.of("What is Kubernetes?")));
+        cache.setEnabled(false);
+        cache.setEnabled(true);
+        assertNull(cache.getCombined(SYSTEM, QUERY));
+    }
+
+    @Test
+    void repeatedCombinedPreprocessingIsServedFromCache() throws Exception {
+        RagServiceFixture.ScriptedChatModel model = new RagServiceFixture.ScriptedChatModel(prompt ->
+            "{\"cleaned_query\": \"What is Kubernetes?\", \"length_constraint\": null, \"alternative_queries\": [\"kubernetes overview\"]}");
+        RagServiceFixture fixture = new RagServiceFixture(model);
+        try {
+            Object first = fixture.invoke("cleanAndExpandQuery", QUERY, "RAG ONLY");
+            Object second = fixture.invoke("cleanAndExpandQuery", QUERY, "RAG ONLY");
+            assertEquals(1, model.calls.get());
+            assertEquals(RagServiceFixture.read(first, "searchQueries"), RagServiceFixture.read(second, "searchQueries"));
+            assertEquals(List.of("What is Kubernetes?", "kubernetes overview"), RagServiceFixture.read(second, "searchQueries"));
+        } finally {
+            fixture.close();
+        }
+    }
+}
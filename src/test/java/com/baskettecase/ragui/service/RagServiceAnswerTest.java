@@ -0,0 +1,155 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.dto.ChatRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RagServiceAnswerTest {
+
+    private static final String SYSTEM = "Answer using ONLY the information provided.";
+    private static final String USER = "Context:\npgvector stores embeddings.\n\nQuestion:\nwhat is pgvector\n\nAnswer:";
+    private static final String CONSTRAINT = "in 20 words"; // budget 30 + 64 + 512 reserve = 606 tokens
+
+    private RagServiceFixture fixture;
+
+    @AfterEach
+    void tearDown() {
+        if (fixture != null) fixture.close();
+    }
+
+    @Test
+    void reasoningThatUsesTheWholeBudgetIsRetriedAtTheCeiling() throws Exception {
+        fixture = new RagServiceFixture(new RagServiceFixture.ScriptedChatModel(prompt -> thinking(1_000) + " A Postgres extension."));
+        StringBuilder streamed = new StringBuilder();
+
+        Object answer = stream(streamed::append);
+
+        assertEquals("A Postgres extension.", answer);
+        assertEquals("A Postgres extension.", streamed.toString());
+        assertEquals(List.of(606, 4_096), fixture.chatModel.maxTokens);
+    }
+
+    @Test
+    void reasoningThatExhaustsTheCeilingIsReportedAndNotCached() throws Exception {
+        fixture = new RagServiceFixture(new RagServiceFixture.ScriptedChatModel(prompt -> thinking(5_000) + " A Postgres extension."));
+        StringBuilder streamed = new StringBuilder();
+
+        Object answer = stream(streamed::append);
+
+        assertNull(answer, "a truncated answer must not be returned for caching");
+        assertTrue(streamed.toString().contains("reasoning used the whole response token budget"), streamed.toString());
+        assertFalse(streamed.toString().contains("does not contain information"), "synthetic fallback sent for a truncated answer");
+        assertEquals(2, fixture.chatModel.calls.get());
+    }
+
+    @Test
+    void emptyAnswerFallbackIsShownButNotCached() throws Exception {
+        fixture = new RagServiceFixture(new RagServiceFixture.ScriptedChatModel(prompt -> "<think>nothing to say</think>"));
+        StringBuilder streamed = new StringBuilder();
+
+        assertNull(stream(streamed::append));
+        assertTrue(streamed.toString().contains("does not contain information"));
+        assertEquals(1, fixture.chatModel.calls.get());
+    }
+
+    @Test
+    void blockingAnswerRetriesAndFailsRatherThanReturningOnlyReasoning() throws Exception {
+        fixture = new RagServiceFixture(new RagServiceFixture.ScriptedChatModel(prompt -> thinking(1_000) + " A Postgres extension."));
+        Object answer = fixture.invoke("callAnswer", "RAG Only", CONSTRAINT, SYSTEM, USER);
+        assertTrue(((String) answer).endsWith("A Postgres extension."));
+
+        fixture.close();
+        fixture = new RagServiceFixture(new RagServiceFixture.ScriptedChatModel(prompt -> thinking(5_000)));
+        assertThrows(IllegalStateException.class, () -> fixture.invoke("callAnswer", "RAG Only", CONSTRAINT, SYSTEM, USER));
+        assertEquals(List.of(606, 4_096), fixture.chatModel.maxTokens);
+    }
+
+    @Test
+    void tokenMetricsUseTheNormalizedModeTag() throws Exception {
+        fixture = new RagServiceFixture(new RagServiceFixture.ScriptedChatModel(prompt -> "A Postgres extension."));
+        stream(chunk -> { });
+        assertNotNull(fixture.registry.find("ragui.llm.answer.tokens.budget").tag("mode", "rag_only").summary());
+        assertNull(fixture.registry.find("ragui.llm.answer.tokens.budget").tag("mode", "RAG Only").summary());
+    }
+
+    @Test
+    void answerCacheKeepsLengthConstraintsAndCallKindsApart() {
+        // Every text embeds alike, so only the cache variant keeps these requests apart
+        fixture = new RagServiceFixture(new RagServiceFixture.ScriptedChatModel(prompt -> "A Postgres extension."), new SameVectorEmbeddingModel());
+
+        assertEquals("A Postgres extension.", streamPureLlm("explain pgvector"));
+        assertEquals(1, fixture.chatModel.calls.get());
+        assertEquals("A Postgres extension.", streamPureLlm("Explain pgvector"));
+        assertEquals(1, fixture.chatModel.calls.get(), "same question, same call kind: cached");
+
+        streamPureLlm("explain pgvector in 20 words");
+        assertEquals(2, fixture.chatModel.calls.get(), "a length constraint must not replay the unconstrained answer");
+        streamPureLlm("explain pgvector in twenty words");
+        assertEquals(3, fixture.chatModel.calls.get());
+        streamPureLlm("explain pgvector, in 20 words");
+        assertEquals(3, fixture.chatModel.calls.get(), "the same constraint hits");
+
+        streamPureLlm("explain pgvector briefly");
+        streamPureLlm("explain pgvector briefly");
+        assertEquals(5, fixture.chatModel.calls.get(), "an unparsed length request skips the cache");
+
+        ChatRequest request = pureLlm("explain pgvector");
+        assertEquals("LLM Answer:\nA Postgres extension.", fixture.ragService.chat(request, null).getAnswer());
+        assertEquals(6, fixture.chatModel.calls.get(), "chat() answers are stored apart from streamed ones");
+        assertEquals("LLM Answer:\nA Postgres extension.", fixture.ragService.chat(request, null).getAnswer());
+        assertEquals(6, fixture.chatModel.calls.get());
+        assertEquals("A Postgres extension.", streamPureLlm("explain pgvector"));
+    }
+
+    private String streamPureLlm(String message) {
+        StringBuilder streamed = new StringBuilder();
+        fixture.ragService.chatStream(pureLlm(message), null, streamed::append);
+        return streamed.toString();
+    }
+
+    private static ChatRequest pureLlm(String message) {
+        ChatRequest request = new ChatRequest();
+        request.setMessage(message);
+        request.setUsePureLlm(true);
+        return request;
+    }
+
+    private Object stream(Consumer<String> chunks) throws Exception {
+        return fixture.invoke("streamLlmAnswer", "RAG Only", CONSTRAINT, SYSTEM, USER, null, chunks);
+    }
+
+    private static String thinking(int words) {
+        return "<think>" + "hmm ".repeat(words) + "</think>";
+    }
+
+    private static final class SameVectorEmbeddingModel implements EmbeddingModel {
+        @Override
+        public float[] embed(String text) {
+            return new float[] {1f, 0f, 0f, 0f};
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.baskettecase.ragui.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RagServiceDeadlineTest {
+
+    private RagServiceFixture fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new RagServiceFixture(new RagServiceFixture.ScriptedChatModel(prompt -> "A Postgres extension."));
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    void expiredDeadlineStopsRetrievalBeforeTheVectorSearch() throws Exception {
+        RequestContext context = expiredContext();
+
+        assertThrows(TimeoutException.class,
+            () -> context.call(() -> fixture.invoke("retrieveForQuery", null, "what is pgvector", "rag_only")));
+        assertEquals(0, context.getVectorSearches());
+    }
+
+    @Test
+    void expiredDeadlineSkipsTheFanOutSearches() throws Exception {
+        RequestContext context = expiredContext();
+
+        assertThrows(TimeoutException.class, () -> context.call(() -> fixture.invoke("retrieveForQueries", null,
+            List.of("what is pgvector", "pgvector extension", "postgres vectors"), "rag_only")));
+        assertEquals(0, context.getVectorSearches());
+        assertTrue(context.getDegradations().stream().anyMatch(d -> d.startsWith(PipelineMetrics.RETRIEVAL)),
+            context.getDegradations().toString());
+    }
+
+    @Test
+    void admissionWaitEndsAtTheRequestDeadline() throws Exception {
+        // Every answer slot is busy; the gate itself would keep a caller queued for 10 s
+        List<LlmAdmissionGate.Permit> busy = new ArrayList<>();
+        for (int i = 0; i < 4; i++) busy.add(fixture.gate.acquire(PipelineMetrics.LLM, Long.MAX_VALUE));
+        AtomicBoolean called = new AtomicBoolean();
+        Callable<String> answer = () -> {
+            called.set(true);
+            return "A Postgres extension.";
+        };
+        RequestContext context = new RequestContext(300);
+        try {
+            long start = System.nanoTime();
+            assertThrows(TimeoutException.class,
+                () -> context.call(() -> fixture.invoke("callLlmStage", PipelineMetrics.LLM, "pure_llm", answer, 30L)));
+            long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(waitedMillis < 2_000, "waited " + waitedMillis + " ms for an admission slot");
+        } finally {
+            busy.forEach(LlmAdmissionGate.Permit::release);
+        }
+        assertFalse(called.get(), "the call ran after the deadline");
+        assertEquals(0, context.getLlmCalls());
+    }
+
+    private static RequestContext expiredContext() throws InterruptedException {
+        RequestContext context = new RequestContext(1);
+        Thread.sleep(5);
+        return context;
+    }
+}
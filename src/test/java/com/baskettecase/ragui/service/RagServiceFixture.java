@@ -0,0 +1,227 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.controller.QueryExpansionController;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import reactor.core.publisher.Flux;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Builds a {@link RagService} outside Spring, with a scripted chat model and an empty vector store,
+ * and the {@code @Value} fields set to their property defaults.
+ */
+public final class RagServiceFixture {
+
+    public final MeterRegistry registry = new SimpleMeterRegistry();
+    public final ScriptedChatModel chatModel;
+    public final PipelineExecutor executor = new PipelineExecutor(false);
+    public final LlmAdmissionGate gate;
+    final QueryRewriteCache queryRewriteCache;
+    public final RagService ragService;
+
+    public RagServiceFixture(ScriptedChatModel chatModel) {
+        this(chatModel, null);
+    }
+
+    /** With answer embeddings, the semantic answer cache is enabled and uses them. */
+    RagServiceFixture(ScriptedChatModel chatModel, EmbeddingModel answerEmbeddings) {
+        this.chatModel = chatModel;
+        TokenCounter tokenCounter = new TokenCounter();
+        ChatClient chatClient = ChatClient.builder(chatModel).build();
+        this.queryRewriteCache = new QueryRewriteCache(registry, true, 5_000, 60, "", "", "default");
+        this.gate = new LlmAdmissionGate(registry, true, 32, 10_000, 8, 8, 4, 8);
+        this.ragService = new RagService(chatClient, chatClient, chatClient, new EmptyVectorStore(), 0.5, 5,
+            new QueryExpansionController(true),
+            executor,
+            new SemanticAnswerCache(answerEmbeddings, registry, executor, gate, answerEmbeddings != null, 0.95, 1_000, 60, 2_000),
+            new RetrievalCache(registry, true, 33_554_432L, 300),
+            queryRewriteCache,
+            new HybridDocumentRetriever(null, null, false, 0.5, 5, 4, 0.7, 0.3, "english", false, "public", "vector_store"),
+            tokenCounter,
+            new ContextPacker(tokenCounter, registry),
+            new NearDuplicateFilter(registry, true, 0.6, 2),
+            new QueryPreprocessor(registry, false, 0.7),
+            new AnswerTokenBudget(tokenCounter, registry, 8_000, 2_000, 2_048, 512, 4_096, "", 0.3),
+            new PipelineMetrics(registry),
+            gate,
+            new VectorSearchLimiter(registry, true, 8, 2, 64, 2.0, 0.9, 200, 64, 2_000),
+            registry);
+        set("fanOutWidth", 3);
+        set("fanOutBranchTimeoutMs", 1_500L);
+        set("rrfK", 60);
+        set("retrievalTimeoutSeconds", 30L);
+        set("rewriteTimeoutSeconds", 30L);
+        set("expansionTimeoutSeconds", 30L);
+        set("answerTimeoutSeconds", 180L);
+        set("answerReserveSeconds", 30L);
+        set("maxContextChars", 6_000);
+        set("minDocChars", 200);
+        set("maxTotalTokens", 8_000);
+        set("maxContextTokens", 3_000);
+        set("maxResponseTokens", 2_000);
+        set("speculativeMinSimilarity", 0.8);
+    }
+
+    public void close() {
+        executor.destroy();
+    }
+
+    public void set(String field, Object value) {
+        try {
+            Field f = RagService.class.getDeclaredField(field);
+            f.setAccessible(true);
+            f.set(ragService, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set RagService." + field, e);
+        }
+    }
+
+    /** Calls a private RagService method, unwrapping its exceptions. */
+    Object invoke(String method, Object... args) throws Exception {
+        for (Method m : RagService.class.getDeclaredMethods()) {
+            if (m.getName().equals(method) && m.getParameterCount() == args.length) {
+                m.setAccessible(true);
+                try {
+                    return m.invoke(ragService, args);
+                } catch (InvocationTargetException e) {
+                    if (e.getCause() instanceof Exception cause) throw cause;
+                    throw e;
+                }
+            }
+        }
+        throw new NoSuchMethodException("RagService." + method);
+    }
+
+    /** Reads a record component or field of an object returned by a private method. */
+    static Object read(Object target, String accessor) throws ReflectiveOperationException {
+        Method m = target.getClass().getDeclaredMethod(accessor);
+        m.setAccessible(true);
+        return m.invoke(target);
+    }
+
+    /**
+     * Chat model whose reply is computed from the system prompt and user message. Each call can
+     * simulate model latency: a fixed per-call overhead (queueing, prefill, time to first token) plus
+     * a cost per generated word. A reply is cut at the call's max-tokens, counting one token per word,
+     * and then finishes with reason "length".
+     */
+    public static class ScriptedChatModel implements ChatModel {
+        public final AtomicInteger calls = new AtomicInteger();
+        final List<Integer> maxTokens = new CopyOnWriteArrayList<>();
+        private final Function<Prompt, String> replies;
+        volatile long callOverheadMillis;
+        volatile double millisPerWord;
+
+        public ScriptedChatModel(Function<Prompt, String> replies) {
+            this.replies = replies;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.incrementAndGet();
+            List<String> words = words(prompt);
+            String reply = String.join("", words);
+            simulateLatency(reply);
+            return response(reply, finishReason(prompt, words));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            calls.incrementAndGet();
+            List<String> words = words(prompt);
+            simulateLatency("");
+            return Flux.fromIterable(words)
+                .map(word -> response(word, null))
+                .concatWith(Flux.just(response("", finishReason(prompt, words))));
+        }
+
+        /** The reply split after each whitespace run, cut at the call's max-tokens. */
+        private List<String> words(Prompt prompt) {
+            List<String> words = new ArrayList<>(Arrays.asList(replies.apply(prompt).split("(?<=\\s)(?=\\S)")));
+            Integer limit = prompt.getOptions() != null ? prompt.getOptions().getMaxTokens() : null;
+            maxTokens.add(limit != null ? limit : -1);
+            if (limit != null && words.size() > limit) words.subList(limit, words.size()).clear();
+            return words;
+        }
+
+        private String finishReason(Prompt prompt, List<String> words) {
+            Integer limit = prompt.getOptions() != null ? prompt.getOptions().getMaxTokens() : null;
+            return limit != null && words.size() >= limit ? "length" : "stop";
+        }
+
+        private static ChatResponse response(String text, String finishReason) {
+            ChatGenerationMetadata metadata = finishReason == null ? ChatGenerationMetadata.NULL
+                : ChatGenerationMetadata.builder().finishReason(finishReason).build();
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(text), metadata)));
+        }
+
+        void simulateLatency(String reply) {
+            long millis = callOverheadMillis + (long) (millisPerWord * reply.split("\\s+").length);
+            if (millis <= 0) return;
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted", e);
+            }
+        }
+
+        static String system(Prompt prompt) {
+            return text(prompt, MessageType.SYSTEM);
+        }
+
+        static String user(Prompt prompt) {
+            return text(prompt, MessageType.USER);
+        }
+
+        private static String text(Prompt prompt, MessageType type) {
+            StringBuilder text = new StringBuilder();
+            for (Message message : prompt.getInstructions()) {
+                if (message.getMessageType() == type) text.append(message.getText());
+            }
+            return text.toString();
+        }
+    }
+
+    static final class EmptyVectorStore implements VectorStore {
+        @Override
+        public void add(List<Document> documents) {
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.model.Job;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private final RequestCoalescer coalescer = new RequestCoalescer(new SimpleMeterRegistry(), true);
+
+    @Test
+    void followerGetsTheHistoryThenLiveUpdatesInOrder() {
+        Job leader = new Job("leader");
+        RequestCoalescer.Flight flight = coalescer.join("rag_only", "What is pgvector?", leader);
+        assertTrue(flight.isLeader(leader));
+        flight.publish(j -> j.addStreamChunk("a"));
+        flight.publish(j -> j.addStreamChunk("b"));
+
+        Job follower = new Job("follower");
+        assertSame(flight, coalescer.join("rag_only", "what is pgvector", follower));
+        flight.publish(j -> j.addStreamChunk("c"));
+        coalescer.complete(flight, null);
+
+        assertEquals(List.of("a", "b", "c"), chunks(leader));
+        assertEquals(List.of("a", "b", "c"), chunks(follower));
+        assertNotSame(flight, coalescer.join("rag_only", "what is pgvector", new Job("late")));
+    }
+
+    @Test
+    void followersAttachingDuringAStreamSeeEveryChunkInOrder() throws Exception {
+        Job leader = new Job("leader");
+        RequestCoalescer.Flight flight = coalescer.join("rag_only", "what is pgvector", leader);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) expected.add(Integer.toString(i));
+
+        Thread publisher = Thread.ofVirtual().start(() -> expected.forEach(chunk -> flight.publish(j -> j.addStreamChunk(chunk))));
+        List<Job> followers = new ArrayList<>();
+        List<Thread> joiners = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Job follower = new Job("follower-" + i);
+            followers.add(follower);
+            joiners.add(Thread.ofVirtual().start(() -> coalescer.join("rag_only", "what is pgvector", follower)));
+            Thread.sleep(1);
+        }
+        for (Thread joiner : joiners) joiner.join();
+        publisher.join();
+        coalescer.complete(flight, null);
+
+        assertEquals(expected, chunks(leader));
+        for (Job follower : followers) {
+            assertEquals(expected, chunks(follower), follower.getJobId());
+        }
+    }
+
+    @Test
+    void attachingDoesNotWaitForAnUpdateInProgress() throws Exception {
+        Job leader = new Job("leader");
+        RequestCoalescer.Flight flight = coalescer.join("rag_only", "what is pgvector", leader);
+        CountDownLatch updating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread publisher = Thread.ofVirtual().start(() -> flight.publish(j -> {
+            if (j != leader) return;
+            updating.countDown();
+            try {
+                release.await(); // a job update that is slow to apply
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(updating.await(5, TimeUnit.SECONDS));
+
+        Job follower = new Job("follower");
+        CompletableFuture<RequestCoalescer.Flight> joined =
+            CompletableFuture.supplyAsync(() -> coalescer.join("rag_only", "what is pgvector", follower));
+        assertSame(flight, joined.get(2, TimeUnit.SECONDS));
+        assertEquals(2, flight.jobs().size());
+
+        release.countDown();
+        publisher.join();
+        flight.publish(j -> j.addStreamChunk("after"));
+        assertEquals(List.of("after"), chunks(leader));
+        assertEquals(List.of("after"), chunks(follower));
+    }
+
+    @Test
+    void cancelIsTheLastUpdateEveryJobSees() {
+        Job leader = new Job("leader");
+        RequestCoalescer.Flight flight = coalescer.join("rag_only", "what is pgvector", leader);
+        Job follower = new Job("follower");
+        coalescer.join("rag_only", "what is pgvector", follower);
+        flight.publish(j -> j.addStreamChunk("a"));
+        flight.cancel(j -> j.setStatus(Job.Status.CANCELLED));
+        flight.publish(j -> j.addStreamChunk("late"));
+
+        for (Job job : List.of(leader, follower)) {
+            assertEquals(List.of("a"), chunks(job));
+            assertEquals(Job.Status.CANCELLED, job.getStatus());
+        }
+    }
+
+    private static List<String> chunks(Job job) {
+        return job.getAllChunkEvents().stream().map(event -> event.chunk).toList();
+    }
+}
@@ -0,0 +1,150 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class RetrievalCacheTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+    private static final String QUERY = "what is pgvector";
+    private static final List<Document> DOCS = List.of(new Document("pgvector is a Postgres extension."));
+
+    private final RetrievalCache cache = new RetrievalCache(new SimpleMeterRegistry(), true, 1_000_000L, 300);
+    private final PipelineExecutor executor = new PipelineExecutor(false);
+    private final CountDownLatch ownerLoading = new CountDownLatch(1);
+    private final AtomicInteger followerLoads = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void followerGetsDocumentsWhenTheOwnerIsCancelled() throws Exception {
+        RequestContext ownerContext = new RequestContext();
+        Caller owner = Caller.start(() -> {
+            try {
+                return ownerContext.call(() -> cache.get(QUERY, 0.5, 5, this::searchUntilInterrupted));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Caller follower = joinOwner();
+
+        ownerContext.cancel();
+
+        assertThrows(ExecutionException.class, () -> owner.result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(DOCS, follower.result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, followerLoads.get(), "the follower should have taken over the load");
+        assertEquals(DOCS, cache.get(QUERY, 0.5, 5, () -> fail("the follower's load should be cached")));
+    }
+
+    @Test
+    void followerGetsDocumentsWhenTheOwnerTimesOut() throws Exception {
+        Caller owner = Caller.start(() -> {
+            try {
+                return executor.call(() -> cache.get(QUERY, 0.5, 5, this::searchUntilInterrupted), 2, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Caller follower = joinOwner();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> owner.result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(TimeoutException.class, failure.getCause().getCause());
+        assertEquals(DOCS, follower.result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, followerLoads.get());
+    }
+
+    @Test
+    void searchFailureIsSharedWithWaitingCallers() throws Exception {
+        CountDownLatch fail = new CountDownLatch(1);
+        Caller owner = Caller.start(() -> cache.get(QUERY, 0.5, 5, () -> {
+            ownerLoading.countDown();
+            await(fail);
+            throw new IllegalStateException("vector store down");
+        }));
+        Caller follower = joinOwner();
+
+        fail.countDown();
+
+        ExecutionException ownerFailure = assertThrows(ExecutionException.class, () -> owner.result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        ExecutionException followerFailure = assertThrows(ExecutionException.class, () -> follower.result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(IllegalStateException.class, ownerFailure.getCause());
+        assertInstanceOf(IllegalStateException.class, followerFailure.getCause());
+        assertEquals(0, followerLoads.get(), "a failed search is not retried by every waiting caller");
+    }
+
+    /** Starts a caller for the same query once the owner is loading, and waits until it is parked on the owner's load. */
+    private Caller joinOwner() throws InterruptedException {
+        assertTrue(ownerLoading.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        Caller follower = Caller.start(() -> cache.get(" What is  PGVECTOR ", 0.5, 5, () -> {
+            followerLoads.incrementAndGet();
+            return DOCS;
+        }));
+        waitFor(() -> follower.thread.getState() == Thread.State.WAITING);
+        return follower;
+    }
+
+    /** A vector search that only ends when its thread is interrupted, failing the way the search limiter does. */
+    private List<Document> searchUntilInterrupted() {
+        ownerLoading.countDown();
+        try {
+            Thread.sleep(TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a vector store slot");
+        }
+        throw new IllegalStateException("never interrupted");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    /** A retrieval running on its own platform thread, so the test can see when it is parked. */
+    private record Caller(Thread thread, CompletableFuture<List<Document>> result) {
+        static Caller start(Supplier<List<Document>> call) {
+            CompletableFuture<List<Document>> result = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    result.complete(call.get());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+            thread.start();
+            return new Caller(thread, result);
+        }
+    }
+}
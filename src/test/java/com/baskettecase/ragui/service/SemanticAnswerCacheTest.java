@@ -0,0 +1,149 @@
+package com.baskettecase.ragui.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SemanticAnswerCacheTest {
+
+    private final PipelineExecutor executor = new PipelineExecutor(false);
+    private final StubEmbeddingModel embeddings = new StubEmbeddingModel();
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void hitsOnTheSameQueryWithinTheSameMode() {
+        SemanticAnswerCache cache = cache(100, 2_000);
+        SemanticAnswerCache.Lookup miss = cache.lookup("RAG_ONLY", "stream", "what is pgvector");
+        assertNotNull(miss);
+        assertFalse(miss.isHit());
+        cache.put(miss, "An extension for Postgres");
+
+        SemanticAnswerCache.Lookup hit = cache.lookup("RAG_ONLY", "stream", "what is pgvector");
+        assertTrue(hit.isHit());
+        assertEquals("An extension for Postgres", hit.answer);
+        assertFalse(cache.lookup("PURE_LLM", "stream", "what is pgvector").isHit());
+        assertFalse(cache.lookup("RAG_ONLY", "stream", "something unrelated").isHit());
+    }
+
+    @Test
+    void variantsOfTheSameQueryAreKeptApart() {
+        SemanticAnswerCache cache = cache(100, 2_000);
+        cache.put(cache.lookup("RAG_ONLY", "stream", "what is pgvector"), "An extension for Postgres");
+        assertFalse(cache.lookup("RAG_ONLY", "stream:in 20 words", "what is pgvector").isHit());
+        assertFalse(cache.lookup("RAG_ONLY", "chat", "what is pgvector").isHit());
+        assertTrue(cache.lookup("RAG_ONLY", "stream", "what is pgvector").isHit());
+    }
+
+    @Test
+    void staysWithinMaxEntries() {
+        SemanticAnswerCache cache = cache(3, 2_000);
+        for (int i = 0; i < 50; i++) {
+            SemanticAnswerCache.Lookup miss = cache.lookup("RAG_ONLY", "stream", "query " + i);
+            cache.put(miss, "answer " + i);
+        }
+        assertTrue(cache.size() <= 3, "size " + cache.size());
+        int hits = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.lookup("RAG_ONLY", "stream", "query " + i).isHit()) hits++;
+        }
+        assertTrue(hits <= 3, "evicted entries are still indexed: " + hits + " hits");
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void slowEmbeddingIsAMissAfterTheEmbedTimeout() {
+        SemanticAnswerCache cache = cache(100, 100);
+        embeddings.delayMillis = 5_000;
+        long start = System.nanoTime();
+        assertNull(cache.lookup("RAG_ONLY", "stream", "what is pgvector"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000, "lookup waited past its timeout");
+    }
+
+    @Test
+    void skipsTheEmbeddingOnceTheRequestDeadlineHasPassed() throws Exception {
+        SemanticAnswerCache cache = cache(100, 2_000);
+        RequestContext context = new RequestContext(1);
+        Thread.sleep(5);
+        assertNull(context.call(() -> cache.lookup("RAG_ONLY", "stream", "what is pgvector")));
+        assertEquals(0, embeddings.calls.get());
+    }
+
+    @Test
+    void waitForAnEmbeddingSlotCountsAgainstTheEmbedTimeout() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        LlmAdmissionGate gate = new LlmAdmissionGate(registry, true, 32, 10_000, 8, 8, 4, 1);
+        SemanticAnswerCache cache = cache(registry, gate, 100, 100);
+        LlmAdmissionGate.Permit busy = gate.acquire(PipelineMetrics.EMBEDDING, Long.MAX_VALUE);
+        try {
+            long start = System.nanoTime();
+            assertNull(cache.lookup("RAG_ONLY", "stream", "what is pgvector"));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000, "lookup queued for the full admission wait");
+            assertEquals(0, embeddings.calls.get());
+        } finally {
+            busy.release();
+        }
+    }
+
+    private SemanticAnswerCache cache(int maxEntries, long embedTimeoutMs) {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        LlmAdmissionGate gate = new LlmAdmissionGate(registry, true, 32, 10_000, 8, 8, 4, 8);
+        return cache(registry, gate, maxEntries, embedTimeoutMs);
+    }
+
+    private SemanticAnswerCache cache(MeterRegistry registry, LlmAdmissionGate gate, int maxEntries, long embedTimeoutMs) {
+        return new SemanticAnswerCache(embeddings, registry, executor, gate, true, 0.95, maxEntries, 60, embedTimeoutMs);
+    }
+
+    /** Deterministic embeddings: identical text gives an identical vector, different text an unrelated one. */
+    private static final class StubEmbeddingModel implements EmbeddingModel {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile long delayMillis;
+
+        @Override
+        public float[] embed(String text) {
+            calls.incrementAndGet();
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted", e);
+                }
+            }
+            java.util.Random random = new java.util.Random(text.hashCode());
+            float[] vector = new float[64];
+            for (int i = 0; i < vector.length; i++) vector[i] = (float) random.nextGaussian();
+            return vector;
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.baskettecase.ragui.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThinkTagFilterTest {
+
+    @Test
+    void tagsSplitAcrossChunksAreStripped() {
+        assertEquals("The answer.", filter("<thi", "nk>reasoning</th", "ink>The answer."));
+        assertEquals("The answer.", filter("<", "t", "h", "i", "n", "k", ">", "reasoning", "<", "/", "think", ">", "The answer."));
+    }
+
+    @Test
+    void everySplitPointGivesTheSameOutput() {
+        String stream = "Before <think>step 1 < step 2</think> after.";
+        for (int i = 0; i <= stream.length(); i++) {
+            assertEquals("Before  after.", filter(stream.substring(0, i), stream.substring(i)), "split at " + i);
+        }
+    }
+
+    @Test
+    void textBeforeAndAfterTheBlockIsKept() {
+        assertEquals("Intro  and the answer.", filter("Intro <think>why</think> and the answer."));
+    }
+
+    @Test
+    void leadingWhitespaceBeforeTheAnswerIsDropped() {
+        assertEquals("Answer.", filter("<think>why</think>\n\n", "  Answer."));
+    }
+
+    @Test
+    void streamEndingInsideAnUnclosedBlockDiscardsTheReasoning() {
+        List<String> out = new ArrayList<>();
+        ThinkTagFilter filter = new ThinkTagFilter(out::add);
+        filter.accept("<think>still reasoning when the token limit hit</th");
+        filter.flush();
+        assertTrue(out.isEmpty(), out.toString());
+        assertFalse(filter.hasAnswer());
+    }
+
+    @Test
+    void literalLessThanIsNotHeldAsATag() {
+        assertEquals("a < b and x <= y", filter("a <", " b and x <", "= y"));
+        // A held-back "<" that the stream ends on is still sent
+        assertEquals("a <", filter("a <"));
+        assertEquals("use <thinking> tags", filter("use <thin", "king> tags"));
+    }
+
+    @Test
+    void strayClosingTagIsDropped() {
+        assertEquals("reasoning The answer.", filter("reasoning</think> The answer."));
+    }
+
+    @Test
+    void heldBackTextIsSentOnceTheNextChunkDecidesIt() {
+        List<String> out = new ArrayList<>();
+        ThinkTagFilter filter = new ThinkTagFilter(out::add);
+        filter.accept("Hello <th");
+        assertEquals(List.of("Hello "), out);
+        filter.accept("ere");
+        assertEquals(List.of("Hello ", "<there"), out);
+        assertTrue(filter.hasAnswer());
+    }
+
+    private static String filter(String... chunks) {
+        StringBuilder out = new StringBuilder();
+        ThinkTagFilter filter = new ThinkTagFilter(out::append);
+        for (String chunk : chunks) filter.accept(chunk);
+        filter.flush();
+        return out.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.BenchmarkSupport;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Counts and truncates a 6k-token RAG context the way formatDocumentsToContext and
+ * validateAndAdjustPrompt do, next to a full encode and the old chars/4 estimate.
+ */
+@Tag("benchmark")
+class TokenCounterBenchmark {
+
+    private static final int TARGET_TOKENS = 6_000;
+
+    @Test
+    void countSixThousandTokenContext() throws Exception {
+        TokenCounter counter = new TokenCounter();
+        Encoding encoding = Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+        String context = buildContext(counter);
+        System.out.printf("[benchmark] context: %d chars, %d tokens, chars/4 estimate %d%n",
+            context.length(), counter.count(context), (int) Math.ceil(context.length() / 4.0));
+
+        BenchmarkSupport.Result count = BenchmarkSupport.measure("TokenCounter.count, 6k tokens", 200, 1_000,
+            () -> counter.count(context)).print();
+        BenchmarkSupport.measure("encodeOrdinary().size(), 6k tokens", 200, 1_000,
+            () -> encoding.encodeOrdinary(context).size()).print();
+        BenchmarkSupport.measure("TokenCounter.truncate to 4k, 6k tokens", 200, 1_000,
+            () -> counter.truncate(context, 4_000)).print();
+        BenchmarkSupport.measure("chars/4 estimate (before)", 200, 1_000,
+            () -> (int) Math.ceil(context.length() / 4.0)).print();
+
+        // An LLM call takes seconds; counting must stay far below that
+        assertTrue(count.percentile(50) < TimeUnit.MILLISECONDS.toNanos(50), "counting a 6k-token context is too slow");
+    }
+
+    private static String buildContext(TokenCounter counter) {
+        String[] paragraphs = {
+            "Document 1: pgvector adds a vector column type to Postgres and supports HNSW and IVFFlat indexes "
+                + "for approximate nearest-neighbour search over embeddings. Distance operators include <->, <#> and <=>.\n\n",
+            "Document 2: Spring AI's VectorStore abstraction wraps similarity search with a threshold and top-K; "
+                + "the embedding model turns the query into a 1536-dimension vector before the search runs.\n\n",
+            "Document 3: Configuration values such as ragui.vectorstore.limiter.max-limit=64 and timeouts of 180s "
+                + "are read at startup; Größe, café and naïve appear in multilingual corpora too.\n\n",
+        };
+        StringBuilder context = new StringBuilder();
+        int i = 0;
+        while (counter.count(context.toString()) < TARGET_TOKENS) {
+            context.append(paragraphs[i++ % paragraphs.length]);
+        }
+        return context.toString();
+    }
+}
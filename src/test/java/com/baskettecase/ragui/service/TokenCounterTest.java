@@ -0,0 +1,66 @@
+package com.baskettecase.ragui.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenCounterTest {
+
+    private static final String[] TEXTS = {
+        "The quick brown fox jumps over the lazy dog. Internationalization and tokenization are merged words.",
+        "Grüße aus Köln – naïve café façade, déjà vu.",
+        "日本語のテキストはマルチバイト文字でエンコードされます。",
+        "Emoji 👩‍💻🚀 and 𝔘𝔫𝔦𝔠𝔬𝔡𝔢 outside the BMP 😀😀😀 need surrogate pairs.",
+        "    indented code();\n\tif (x != null) { return x; }\n\n",
+    };
+
+    private final TokenCounter counter = new TokenCounter();
+    private final Encoding encoding = Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    @Test
+    void countMatchesTheEncoder() {
+        for (String text : TEXTS) {
+            assertEquals(encoding.encodeOrdinary(text).size(), counter.count(text), text);
+        }
+        assertEquals(0, counter.count(""));
+        assertEquals(0, counter.count(null));
+    }
+
+    @Test
+    void truncateCutsOnlyAtTokenBoundaries() {
+        for (String text : TEXTS) {
+            IntArrayList tokens = encoding.encodeOrdinary(text);
+            for (int limit = 1; limit <= tokens.size() + 1; limit++) {
+                String prefix = counter.truncate(text, limit);
+                assertTrue(text.startsWith(prefix), "not a prefix at limit " + limit);
+                assertFalse(!prefix.isEmpty() && Character.isHighSurrogate(prefix.charAt(prefix.length() - 1)),
+                    "cut through a surrogate pair at limit " + limit + ": " + prefix);
+
+                // The prefix must encode to exactly the leading tokens of the full text:
+                // no half of a merged token and no partial UTF-8 sequence at the end
+                IntArrayList prefixTokens = encoding.encodeOrdinary(prefix);
+                assertTrue(prefixTokens.size() <= limit, "over budget at limit " + limit);
+                for (int i = 0; i < prefixTokens.size(); i++) {
+                    assertEquals(tokens.get(i), prefixTokens.get(i), "token " + i + " differs at limit " + limit + ": " + prefix);
+                }
+            }
+            assertSame(text, counter.truncate(text, tokens.size()));
+        }
+    }
+
+    @Test
+    void truncateToZeroOrLessIsEmpty() {
+        assertEquals("", counter.truncate("some text", 0));
+        assertEquals("", counter.truncate("some text", -3));
+        assertEquals("", counter.truncate("", 5));
+        assertNull(counter.truncate(null, 5));
+    }
+}
@@ -0,0 +1,150 @@
+package com.baskettecase.ragui.service;
+
+import com.baskettecase.ragui.BenchmarkSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorSearchLimiterTest {
+
+    private static final long BASE_MILLIS = 20;
+    private static final int CAPACITY = 4;
+    private static final int CLIENTS = 32;
+    private static final long RUN_MILLIS = 2_500;
+
+    record Run(double searchesPerSecond, BenchmarkSupport.Result searchLatency, int shed) {}
+
+    @Test
+    void keepsThroughputAndBoundsP99WhenTheStoreIsOverloaded() throws Exception {
+        Run unlimited = overload("search latency, no limit", limiter(false));
+        VectorSearchLimiter adaptive = limiter(true);
+        Run limited = overload("search latency, adaptive limit", adaptive);
+        System.out.printf("[overload] unlimited %.0f searches/s, limited %.0f searches/s (limit %.1f, shed %d)%n",
+            unlimited.searchesPerSecond(), limited.searchesPerSecond(), adaptive.currentLimit(), limited.shed());
+        unlimited.searchLatency().print();
+        limited.searchLatency().print();
+
+        double capacityPerSecond = CAPACITY * 1_000.0 / BASE_MILLIS;
+        assertTrue(limited.searchesPerSecond() >= 0.5 * capacityPerSecond,
+            "throughput collapsed under the limiter: " + limited.searchesPerSecond());
+        assertTrue(limited.searchesPerSecond() > unlimited.searchesPerSecond(),
+            "the limiter should beat an unlimited pile-up");
+        assertTrue(limited.searchLatency().percentile(99) < TimeUnit.MILLISECONDS.toNanos(8 * BASE_MILLIS),
+            "search p99 not bounded: " + BenchmarkSupport.format(limited.searchLatency().percentile(99)));
+        assertTrue(adaptive.currentLimit() < CLIENTS, "limit did not back off: " + adaptive.currentLimit());
+        assertEquals(0, adaptive.inFlight());
+        assertEquals(0, adaptive.queueDepth());
+    }
+
+    @Test
+    void shedsWhenTheQueueIsFull() throws Exception {
+        VectorSearchLimiter limiter = new VectorSearchLimiter(new SimpleMeterRegistry(), true, 1, 1, 1, 2.0, 0.9, 200, 0, 2_000);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = Thread.ofVirtual().start(() -> limiter.execute(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertEquals(1, limiter.inFlight());
+        VectorStoreOverloadedException shed = assertThrows(VectorStoreOverloadedException.class, () -> limiter.execute(() -> null));
+        assertTrue(shed.getRetryAfterSeconds() >= 1);
+        release.countDown();
+        holder.join();
+        assertEquals(0, limiter.inFlight());
+    }
+
+    private static VectorSearchLimiter limiter(boolean enabled) {
+        return new VectorSearchLimiter(new SimpleMeterRegistry(), enabled, 8, 2, 64, 2.0, 0.9, 50, 64, 2_000);
+    }
+
+    /**
+     * A few searches without load, so the limiter learns the no-load baseline as it would while traffic
+     * ramps up, then {@link #CLIENTS} callers search back to back for {@link #RUN_MILLIS}.
+     */
+    private static Run overload(String name, VectorSearchLimiter limiter) throws InterruptedException {
+        SlowVectorStore store = new SlowVectorStore();
+        SearchRequest warmup = SearchRequest.builder().query("warmup").topK(5).build();
+        for (int i = 0; i < 10; i++) {
+            limiter.execute(() -> store.similaritySearch(warmup));
+        }
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicInteger shed = new AtomicInteger();
+        long endNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+        Thread[] clients = new Thread[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = Thread.ofVirtual().start(() -> {
+                SearchRequest request = SearchRequest.builder().query("what is pgvector").topK(5).build();
+                while (System.nanoTime() < endNanos) {
+                    try {
+                        limiter.execute(() -> {
+                            long start = System.nanoTime();
+                            List<Document> docs = store.similaritySearch(request);
+                            latencies.add(System.nanoTime() - start);
+                            return docs;
+                        });
+                    } catch (VectorStoreOverloadedException e) {
+                        shed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (Thread client : clients) client.join();
+        long[] samples = latencies.stream().mapToLong(Long::longValue).toArray();
+        return new Run(samples.length * 1_000.0 / RUN_MILLIS, BenchmarkSupport.of(name, samples), shed.get());
+    }
+
+    /**
+     * Stand-in for a CPU-bound pgvector: up to {@link #CAPACITY} concurrent searches take the
+     * no-load latency, beyond that latency grows with the square of the overload, so a pile-up
+     * lowers throughput rather than just queueing.
+     */
+    static final class SlowVectorStore implements VectorStore {
+        private final AtomicInteger running = new AtomicInteger();
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            int concurrent = running.incrementAndGet();
+            try {
+                double overload = Math.max(1.0, (double) concurrent / CAPACITY);
+                Thread.sleep((long) (BASE_MILLIS * overload * overload));
+                return List.of(new Document("pgvector stores embeddings"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return List.of();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void add(List<Document> documents) {
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+    }
+}